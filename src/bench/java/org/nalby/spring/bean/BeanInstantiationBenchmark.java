@@ -0,0 +1,94 @@
+package org.nalby.spring.bean;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Cost of creating one bean through a resolved constructor and three setters, per
+ * instantiation strategy.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BeanInstantiationBenchmark {
+
+	public static class SampleBean {
+		private final String name;
+		private final int size;
+		private long count;
+		private boolean enabled;
+		private String label;
+
+		public SampleBean(String name, int size) {
+			this.name = name;
+			this.size = size;
+		}
+
+		public void setCount(long count) {
+			this.count = count;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public void setLabel(String label) {
+			this.label = label;
+		}
+
+		@Override
+		public String toString() {
+			return name + size + count + enabled + label;
+		}
+	}
+
+	@Param({"REFLECTION", "METHOD_HANDLE"})
+	public InstantiationStrategy strategy;
+
+	private XmlBeanDefinition definition;
+
+	private static Element argElement(Document document, String tag, String key, String keyValue, String value) {
+		Element element = document.createElement(tag);
+		element.setAttribute(key, keyValue);
+		element.setAttribute("value", value);
+		return element;
+	}
+
+	@Setup
+	public void setUp() throws Exception {
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		Element bean = document.createElement("bean");
+		bean.setAttribute("id", "sample");
+		bean.setAttribute("class", SampleBean.class.getName());
+		bean.appendChild(argElement(document, "constructor-arg", "index", "0", "name"));
+		bean.appendChild(argElement(document, "constructor-arg", "index", "1", "16"));
+		bean.appendChild(argElement(document, "property", "name", "count", "1024"));
+		bean.appendChild(argElement(document, "property", "name", "enabled", "true"));
+		bean.appendChild(argElement(document, "property", "name", "label", "label"));
+		this.definition = XmlBeanDefinition.parseXmlBeanElement(bean);
+		this.definition.setInstantiationStrategy(this.strategy);
+	}
+
+	@Benchmark
+	public Object createBean() {
+		return this.definition.injectProperties(this.definition.createBean());
+	}
+}
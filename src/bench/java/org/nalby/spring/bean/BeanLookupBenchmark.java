@@ -0,0 +1,64 @@
+package org.nalby.spring.bean;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * getBean(id) from eight threads sharing one handler over {@link SyntheticBeans}, each
+ * thread walking the ids from a different offset.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class BeanLookupBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Context {
+
+		@Param({"1000"})
+		public int size;
+
+		XmlBeansHandler handler;
+
+		String[] ids;
+
+		@Setup
+		public void setUp() {
+			SyntheticBeans beans = new SyntheticBeans(this.size, 8, 3);
+			this.handler = XmlBeansHandler.fromReader(new StaxBeanDefinitionReader(new ByteArrayInputStream(beans.toXml())));
+			this.handler.createBeans();
+			this.ids = new String[this.size];
+			for (int i = 0; i < this.size; i++) {
+				this.ids[i] = SyntheticBeans.id(i);
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next = (int) (Thread.currentThread().getId() * 7919);
+	}
+
+	@Benchmark
+	public Object getBean(Context context, Cursor cursor) {
+		String[] ids = context.ids;
+		int index = (cursor.next++ & Integer.MAX_VALUE) % ids.length;
+		return context.handler.getBean(ids[index]);
+	}
+}
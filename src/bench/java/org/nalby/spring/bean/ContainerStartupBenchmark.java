@@ -0,0 +1,99 @@
+package org.nalby.spring.bean;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Element;
+
+/**
+ * Startup cost over {@link SyntheticBeans}: reading and creating all beans, reading
+ * definitions with classes validated on one thread or on a pool, and parsing a single
+ * <bean> element. Classes are loaded by the first invocation, so the pool only shows the
+ * validation part of what it saves on a real first start.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ContainerStartupBenchmark {
+
+	@Param({"100", "1000", "5000"})
+	public int size;
+
+	@Param({"8"})
+	public int depth;
+
+	@Param({"3"})
+	public int fanOut;
+
+	private byte[] xml;
+
+	private Element[] elements;
+
+	private int next;
+
+	private ForkJoinPool pool;
+
+	@Setup
+	public void setUp() throws Exception {
+		SyntheticBeans beans = new SyntheticBeans(this.size, this.depth, this.fanOut);
+		this.xml = beans.toXml();
+		List<String> beanElements = beans.beanElements();
+		this.elements = new Element[beanElements.size()];
+		for (int i = 0; i < this.elements.length; i++) {
+			this.elements[i] = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+					.parse(new ByteArrayInputStream(beanElements.get(i).getBytes("UTF-8"))).getDocumentElement();
+		}
+		this.pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.pool.shutdown();
+	}
+
+	@Benchmark
+	public XmlBeansHandler createBeans() {
+		XmlBeansHandler handler = XmlBeansHandler.fromReader(new StaxBeanDefinitionReader(new ByteArrayInputStream(this.xml)));
+		handler.createBeans();
+		return handler;
+	}
+
+	@Benchmark
+	public List<XmlBeanDefinition> readDefinitions() {
+		return new StaxBeanDefinitionReader(new ByteArrayInputStream(this.xml)).readBeanDefinitions();
+	}
+
+	@Benchmark
+	public List<XmlBeanDefinition> readDefinitionsInParallel() {
+		StaxBeanDefinitionReader reader = new StaxBeanDefinitionReader(new ByteArrayInputStream(this.xml));
+		reader.setExecutor(this.pool);
+		return reader.readBeanDefinitions();
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public XmlBeanDefinition parseXmlBeanElement() {
+		Element element = this.elements[this.next];
+		this.next = this.next + 1 == this.elements.length ? 0 : this.next + 1;
+		return XmlBeanDefinition.parseXmlBeanElement(element);
+	}
+}
@@ -0,0 +1,97 @@
+package org.nalby.spring.bean;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of getting a bean with a constructor reference and two literal properties, per
+ * scope. The singleton is the baseline, the request scope pays for a new scope per request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScopedBeanBenchmark {
+
+	public static class Dependency {
+	}
+
+	public static class ScopedBean {
+		private final Dependency dependency;
+		private int size;
+		private String label;
+
+		public ScopedBean(Dependency dependency) {
+			this.dependency = dependency;
+		}
+
+		public void setSize(int size) {
+			this.size = size;
+		}
+
+		public void setLabel(String label) {
+			this.label = label;
+		}
+
+		@Override
+		public String toString() {
+			return dependency + label + size;
+		}
+	}
+
+	@Param({"REFLECTION", "METHOD_HANDLE"})
+	public InstantiationStrategy strategy;
+
+	private XmlBeansHandler handler;
+
+	private static String bean(String id, String scope) {
+		return "<bean id=\"" + id + "\" class=\"" + ScopedBean.class.getName() + "\" scope=\"" + scope + "\">"
+				+ "<constructor-arg index=\"0\" ref=\"dependency\"/>"
+				+ "<property name=\"size\" value=\"16\"/><property name=\"label\" value=\"label\"/></bean>";
+	}
+
+	@Setup
+	public void setUp() {
+		String xml = "<beans>" + bean("singleton", "singleton") + bean("prototype", "prototype") + bean("request", "request")
+				+ "<bean id=\"dependency\" class=\"" + Dependency.class.getName() + "\"/></beans>";
+		this.handler = XmlBeansHandler.fromReader(new StaxBeanDefinitionReader(
+				new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))));
+		this.handler.setInstantiationStrategy(this.strategy);
+		this.handler.createBeans();
+	}
+
+	@Benchmark
+	public Object singleton() {
+		return this.handler.getBean("singleton");
+	}
+
+	@Benchmark
+	public Object prototype() {
+		return this.handler.getBean("prototype");
+	}
+
+	@Benchmark
+	public Object request() {
+		RequestScope previous = new RequestScope().bind();
+		try {
+			return this.handler.getBean("request");
+		} finally {
+			RequestScope.restore(previous);
+		}
+	}
+}
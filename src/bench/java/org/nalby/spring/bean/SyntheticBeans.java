@@ -0,0 +1,135 @@
+package org.nalby.spring.bean;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates bean xml of a given size, depth and fan-out. Beans are spread over 'depth'
+ * levels, a bean of level n refers to 'fanOut' beans of level n - 1, one through its
+ * constructor and the others through properties, and beans are declared in a shuffled
+ * order so that creating them requires sorting.
+ */
+public final class SyntheticBeans {
+
+	public static final int MAX_FAN_OUT = 4;
+
+	public static class SyntheticBean {
+		private final SyntheticBean first;
+		private SyntheticBean second;
+		private SyntheticBean third;
+		private SyntheticBean fourth;
+		private String name;
+		private int size;
+
+		public SyntheticBean() {
+			this(null);
+		}
+
+		public SyntheticBean(SyntheticBean first) {
+			this.first = first;
+		}
+
+		public void setSecond(SyntheticBean second) {
+			this.second = second;
+		}
+
+		public void setThird(SyntheticBean third) {
+			this.third = third;
+		}
+
+		public void setFourth(SyntheticBean fourth) {
+			this.fourth = fourth;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public void setSize(int size) {
+			this.size = size;
+		}
+
+		@Override
+		public String toString() {
+			return name + size + (first != null) + (second != null) + (third != null) + (fourth != null);
+		}
+	}
+
+	private static final String[] PROPERTIES = {"second", "third", "fourth"};
+
+	private final int size;
+
+	private final int depth;
+
+	private final int fanOut;
+
+	public SyntheticBeans(int size, int depth, int fanOut) {
+		if (size < depth || depth < 1 || fanOut < 0 || fanOut > MAX_FAN_OUT) {
+			throw new IllegalArgumentException("Bad shape: " + size + " beans, depth " + depth + ", fan-out " + fanOut);
+		}
+		this.size = size;
+		this.depth = depth;
+		this.fanOut = fanOut;
+	}
+
+	/**
+	 * @param index a bean index, less than the size.
+	 * @return the id of the bean.
+	 */
+	public static String id(int index) {
+		return "bean" + index;
+	}
+
+	private int levelOf(int index) {
+		return index * this.depth / this.size;
+	}
+
+	private int firstOfLevel(int level) {
+		return (level * this.size + this.depth - 1) / this.depth;
+	}
+
+	/**
+	 * @return the <bean> elements, in declaration order.
+	 */
+	public List<String> beanElements() {
+		Random random = new Random(42);
+		List<String> beans = new ArrayList<String>(this.size);
+		for (int i = 0; i < this.size; i++) {
+			StringBuilder bean = new StringBuilder();
+			bean.append("<bean id=\"").append(id(i)).append("\" class=\"").append(SyntheticBean.class.getName()).append("\">");
+			int level = levelOf(i);
+			if (level > 0) {
+				int from = firstOfLevel(level - 1);
+				int count = firstOfLevel(level) - from;
+				for (int j = 0; j < this.fanOut; j++) {
+					String ref = id(from + random.nextInt(count));
+					if (j == 0) {
+						bean.append("<constructor-arg index=\"0\" ref=\"").append(ref).append("\"/>");
+					} else {
+						bean.append("<property name=\"").append(PROPERTIES[j - 1]).append("\" ref=\"").append(ref).append("\"/>");
+					}
+				}
+			}
+			bean.append("<property name=\"name\" value=\"").append(id(i)).append("\"/>");
+			bean.append("<property name=\"size\" value=\"").append(i).append("\"/>");
+			bean.append("</bean>");
+			beans.add(bean.toString());
+		}
+		Collections.shuffle(beans, random);
+		return beans;
+	}
+
+	/**
+	 * @return the whole document.
+	 */
+	public byte[] toXml() {
+		StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<beans>\n");
+		for (String bean : beanElements()) {
+			xml.append(bean).append('\n');
+		}
+		return xml.append("</beans>\n").toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
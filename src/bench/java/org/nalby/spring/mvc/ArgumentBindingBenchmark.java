@@ -0,0 +1,117 @@
+package org.nalby.spring.mvc;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+import org.nalby.spring.util.ValueConverters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Binding and calling a five parameter action: compiled binders against looking up
+ * annotations and converters by reflection on every call. With -prof gc the compiled
+ * binders should allocate only the boxed values, here the id and the result.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ArgumentBindingBenchmark {
+
+	public static class Controller {
+		public long find(@PathVariable("id") long id, @RequestParam("q") String query,
+				@RequestParam(value = "limit", defaultValue = "10") int limit,
+				@RequestHeader("X-Tenant") String tenant, HttpServletRequest request) {
+			return id + query.length() + limit + tenant.length();
+		}
+	}
+
+	private HandlerMethod action;
+
+	private Method method;
+
+	private Controller controller;
+
+	private HttpServletRequest request;
+
+	private HttpServletResponse response;
+
+	private String[] segments;
+
+	@Setup
+	public void setUp() throws Exception {
+		this.controller = new Controller();
+		Route route = new Route();
+		route.setPath("/items/{id}");
+		route.setController(this.controller);
+		route.setAction("find");
+		this.segments = Router.split("/items/123456");
+		this.action = new Router(Arrays.asList(route)).match("/items/123456").bindingFor("GET").getAction();
+		this.method = Controller.class.getMethod("find", long.class, String.class, int.class, String.class, HttpServletRequest.class);
+		final Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put("q", "books");
+		parameters.put("limit", "20");
+		final Map<String, String> headers = new HashMap<String, String>();
+		headers.put("X-Tenant", "acme");
+		this.request = new HttpServletRequestWrapper(new FakeHttp.Request("GET", "/items/123456").proxy()) {
+			@Override
+			public String getParameter(String name) {
+				return parameters.get(name);
+			}
+
+			@Override
+			public String getHeader(String name) {
+				return headers.get(name);
+			}
+		};
+		this.response = new FakeHttp.Response().proxy();
+	}
+
+	@Benchmark
+	public Object compiled() throws Exception {
+		return this.action.invoke(this.request, this.response, this.segments);
+	}
+
+	@Benchmark
+	public Object reflective() throws Exception {
+		Class<?>[] types = this.method.getParameterTypes();
+		Annotation[][] annotations = this.method.getParameterAnnotations();
+		Object[] arguments = new Object[types.length];
+		for (int i = 0; i < types.length; i++) {
+			String text = null;
+			for (Annotation annotation : annotations[i]) {
+				if (annotation instanceof PathVariable) {
+					text = this.segments[1];
+				} else if (annotation instanceof RequestParam) {
+					RequestParam param = (RequestParam) annotation;
+					text = this.request.getParameter(param.value());
+					if (text == null) {
+						text = param.defaultValue();
+					}
+				} else if (annotation instanceof RequestHeader) {
+					text = this.request.getHeader(((RequestHeader) annotation).value());
+				}
+			}
+			arguments[i] = text == null ? this.request : ValueConverters.convert(text, types[i]);
+		}
+		return this.method.invoke(this.controller, arguments);
+	}
+}
@@ -0,0 +1,105 @@
+package org.nalby.spring.mvc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups per second against thousands of routes mixing literal, '{var}' and '**' segments,
+ * the cost should barely change with the number of routes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RouterBenchmark {
+
+	private static final RequestHandler HANDLER = new RequestHandler() {
+		@Override
+		public void handle(HttpServletRequest request, HttpServletResponse response, Map<String, String> pathVariables) {
+		}
+	};
+
+	@Param({"100", "1000", "10000"})
+	public int routes;
+
+	private Router router;
+
+	private String[] paths;
+
+	private int next;
+
+	private static Route route(String method, String path) {
+		Route route = new Route();
+		route.setMethod(method);
+		route.setPath(path);
+		route.setHandler(HANDLER);
+		return route;
+	}
+
+	@Setup
+	public void setUp() {
+		List<Route> list = new ArrayList<Route>();
+		for (int i = 0; i < this.routes; i++) {
+			switch (i % 4) {
+			case 0:
+				list.add(route("GET", "/api/v1/resource" + i));
+				break;
+			case 1:
+				list.add(route("GET,POST", "/api/v1/resource" + i + "/{id}"));
+				break;
+			case 2:
+				list.add(route("GET", "/api/v1/resource" + i + "/{id}/items/{item}"));
+				break;
+			default:
+				list.add(route("", "/static/bundle" + i + "/**"));
+			}
+		}
+		this.router = new Router(list);
+		Random random = new Random(42);
+		this.paths = new String[1024];
+		for (int i = 0; i < this.paths.length; i++) {
+			int n = random.nextInt(this.routes);
+			switch (n % 4) {
+			case 0:
+				this.paths[i] = "/api/v1/resource" + n;
+				break;
+			case 1:
+				this.paths[i] = "/api/v1/resource" + n + "/" + random.nextInt(1000);
+				break;
+			case 2:
+				this.paths[i] = "/api/v1/resource" + n + "/" + random.nextInt(1000) + "/items/" + random.nextInt(1000);
+				break;
+			default:
+				this.paths[i] = "/static/bundle" + n + "/css/site.css";
+			}
+		}
+	}
+
+	@Benchmark
+	public Object match() {
+		String path = this.paths[this.next++ & (this.paths.length - 1)];
+		Router.Match match = this.router.match(path);
+		Router.Binding binding = match.bindingFor("GET");
+		return match.pathVariables(binding);
+	}
+}
@@ -1,9 +1,9 @@
 package org.nalby.spring.bean;
 
 import java.lang.reflect.Modifier;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.Set;
 
 public abstract class AbstractBeanDefinition implements BeanDefinition {
 
@@ -11,44 +11,91 @@ public abstract class AbstractBeanDefinition implements BeanDefinition {
 	String id = null;
 
 	Class<?> clazz = null;
-	Map<String, BeanArg> propertyArgs;
-	
-	Map<String, BeanArg> ctorArgs;
-	// Beans this bean depends on.
-	List<String> dependentBeanNames;
 
-	// Used to store beans this bean depends on.
-	Map<String, BeanDefinition> dependentBeans;
+	// Constructor arguments by position.
+	final BeanArg[] ctorArgs;
 
-	// The bean instance, singleton only.
-	Object bean;
+	// Properties to set and their arguments, in declaration order.
+	final String[] propertyNames;
+	final BeanArg[] propertyArgs;
 
-	static Map<Class<?>, Class<?>> primitiveTypeConverter = new HashMap<Class<?>, Class<?>>();
+	// All beans this bean refers to, in declaration order. Once frozen, each name is the id
+	// of the referred definition itself, so that an id is held once however often referred to.
+	final String[] referencedBeanNames;
 
-	static {
-		primitiveTypeConverter.put(boolean.class, Boolean.class);
-		primitiveTypeConverter.put(short.class, Short.class);
-		primitiveTypeConverter.put(int.class, Integer.class);
-		primitiveTypeConverter.put(long.class, Long.class);
-		primitiveTypeConverter.put(float.class, Float.class);
-		primitiveTypeConverter.put(double.class, Double.class);
-		primitiveTypeConverter.put(char.class, Character.class);
-		primitiveTypeConverter.put(byte.class, Byte.class);
-	}
+	// Definitions of the referenced beans at the positions of their names, null until they
+	// are created. Dropped once the bean is a created singleton and frozen.
+	BeanDefinition[] referencedBeans;
+
+	// Referenced beans not created yet.
+	int unresolvedReferences;
+
+	// The bean instance, singleton only, published once its properties are injected.
+	volatile Object bean;
+
+	// Guards the creation of this bean only, so beans do not wait for unrelated ones.
+	private final Object creationLock = new Object();
 
-	AbstractBeanDefinition(List<String> dependentBeanNames, Map<String, BeanArg> ctorArgs,
+	// Whether the bean is created on first request instead of at startup.
+	boolean lazyInit;
+
+	BeanScope scope = BeanScope.SINGLETON;
+
+	// Memoizes methods of the bean behind a proxy, null if none is.
+	MethodCaching methodCaching;
+
+	// Where the time of reading and creating this bean went.
+	final BeanTimings timings = new BeanTimings();
+
+	/**
+	 * @param referencedBeanNames beans referred to, in declaration order.
+	 * @param ctorArgs constructor arguments indexed by their positions, without gaps.
+	 * @param propertyArgs property arguments indexed by property names, in declaration order.
+	 */
+	AbstractBeanDefinition(Set<String> referencedBeanNames, Map<String, BeanArg> ctorArgs,
 			Map<String, BeanArg> propertyArgs, String id, Class<?> clazz) {
 		this.clazz = clazz;
 		this.id = id;
-		this.ctorArgs = ctorArgs;
-		this.propertyArgs = propertyArgs;
-		this.dependentBeanNames = dependentBeanNames;
-		this.dependentBeans = new HashMap<String, BeanDefinition>();
+		this.ctorArgs = new BeanArg[ctorArgs.size()];
+		for (int i = 0; i < this.ctorArgs.length; i++) {
+			this.ctorArgs[i] = ctorArgs.get(String.valueOf(i));
+		}
+		this.propertyNames = propertyArgs.keySet().toArray(new String[propertyArgs.size()]);
+		this.propertyArgs = propertyArgs.values().toArray(new BeanArg[propertyArgs.size()]);
+		this.referencedBeanNames = referencedBeanNames.toArray(new String[referencedBeanNames.size()]);
+		this.referencedBeans = new BeanDefinition[this.referencedBeanNames.length];
+		this.unresolvedReferences = this.referencedBeanNames.length;
+	}
+
+	/**
+	 * @param name the id of a bean.
+	 * @return the position of the bean among the referenced ones, -1 if not referenced.
+	 */
+	int referenceIndex(String name) {
+		for (int i = 0; i < this.referencedBeanNames.length; i++) {
+			if (this.referencedBeanNames[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param name the id of a bean.
+	 * @return the definition of the bean if referenced and created, null otherwise.
+	 */
+	BeanDefinition referencedBean(String name) {
+		int index = referenceIndex(name);
+		return index < 0 ? null : this.referencedBeans[index];
 	}
 
 	public String getId() {
 		return id;
 	}
+
+	public Class<?> getBeanClass() {
+		return clazz;
+	}
 	
 	static void assertClassAcceptable(Class<?> clazz) {
 		if (clazz.isArray() || clazz.isInterface() || clazz.isAnnotation()
@@ -58,32 +105,174 @@ public abstract class AbstractBeanDefinition implements BeanDefinition {
 		}
 	}
 
-	abstract Object injectProperties();
+	/**
+	 * Inject properties into a newly created instance.
+	 * @param instance the instance returned by {@link #createBean()}.
+	 * @return the instance.
+	 */
+	abstract Object injectProperties(Object instance);
 
+	/**
+	 * Create a new instance without publishing it.
+	 * @return the instance.
+	 */
 	abstract Object createBean();
 
 	/**
-	 * Instantiate the bean.
+	 * Validate the definition against the beans it refers to without creating the bean,
+	 * to be called once all of them are known.
+	 * @throws UnresolvedBeanDependencyException if the bean could not be created with them.
+	 */
+	abstract void validate();
+
+	/**
+	 * Drop what only creating the bean needs, called once a singleton is created.
+	 */
+	abstract void releaseCreationState();
+
+	/**
+	 * Compact the definition once the beans of a handler are created. Referenced names and
+	 * arguments share the ids of the definitions they refer to, and a created singleton drops
+	 * the definitions it refers to and what creating it needed. Lazy and non singleton beans
+	 * keep them to create instances later.
+	 * @param registry the created definitions, this one among them.
+	 */
+	void freeze(BeanRegistry<?> registry) {
+		for (int i = 0; i < this.referencedBeanNames.length; i++) {
+			AbstractBeanDefinition referred = registry.get(this.referencedBeanNames[i]);
+			if (referred != null) {
+				this.referencedBeanNames[i] = referred.id;
+			}
+		}
+		for (BeanArg arg : this.ctorArgs) {
+			shareReference(arg, registry);
+		}
+		for (BeanArg arg : this.propertyArgs) {
+			shareReference(arg, registry);
+		}
+		if (this.scope == BeanScope.SINGLETON && this.bean != null && this.referencedBeans != null) {
+			this.referencedBeans = null;
+			releaseCreationState();
+		}
+	}
+
+	private static void shareReference(BeanArg arg, BeanRegistry<?> registry) {
+		if (arg.isReference()) {
+			AbstractBeanDefinition referred = registry.get(arg.getValue());
+			if (referred != null) {
+				arg.shareValue(referred.id);
+			}
+		}
+	}
+
+	/**
+	 * Get the bean of this definition's scope. A singleton is created exactly once even if
+	 * requested from several threads, and once created, is returned with a single volatile read.
 	 * @throws UnresolvedBeanDependencyException if the bean has unresolved dependencies.
 	 * @throws InvalidBeanConfigException if the bean is not properly configured.
+	 * @throws IllegalStateException if the bean is request scoped and no request is served.
 	 */
 	public Object getBean() {
+		Object instance = this.bean;
+		if (instance != null) {
+			return instance;
+		}
 		if (this.hasUnresolvedDependency()) {
 			throw new UnresolvedBeanDependencyException(
 					"Bean " + id + " can not be created because unresolved dependencies.");
 		}
-		if (this.bean != null) {
-			return this.bean;
+		if (this.scope == BeanScope.PROTOTYPE) {
+			return newInstance();
+		}
+		if (this.scope == BeanScope.REQUEST) {
+			return RequestScope.current(this.id).getBean(this);
+		}
+		// Dependencies are locked after their dependents, the graph is acyclic so this can not deadlock.
+		synchronized (this.creationLock) {
+			instance = this.bean;
+			if (instance == null) {
+				instance = createSingleton();
+				this.bean = instance;
+			}
+			return instance;
 		}
-		createBean();
-		return injectProperties();
+	}
+
+	/*
+	 * Create the singleton, recording the time of each step as singletons are mostly
+	 * created at startup.
+	 */
+	private Object createSingleton() {
+		Object event = StartupEvents.beginBeanCreation();
+		long start = System.nanoTime();
+		Object instance = createBean();
+		long created = System.nanoTime();
+		instance = expose(injectProperties(instance));
+		this.timings.injectNanos = System.nanoTime() - created;
+		this.timings.instantiateNanos = created - start;
+		StartupEvents.commitBeanCreation(event, this);
+		return instance;
+	}
+
+	/**
+	 * Create and inject a new instance regardless of the scope.
+	 * @return the instance.
+	 */
+	Object newInstance() {
+		return expose(injectProperties(createBean()));
+	}
+
+	/*
+	 * The instance as seen by others, its memoizing proxy if methods are cached.
+	 */
+	private Object expose(Object instance) {
+		return this.methodCaching == null ? instance : this.methodCaching.proxy(instance);
+	}
+
+	/**
+	 * @param type a type the bean is referred to or looked up by.
+	 * @return true if the beans of this definition are instances of the type, only its
+	 * interfaces if it is a memoizing proxy.
+	 */
+	boolean exposes(Class<?> type) {
+		return this.methodCaching == null ? type.isAssignableFrom(this.clazz) : this.methodCaching.exposes(type);
+	}
+
+	/**
+	 * @param other another definition.
+	 * @return true if both define the same bean the same way, so that the bean of one can
+	 * stand for the bean of the other.
+	 */
+	boolean sameDefinitionAs(AbstractBeanDefinition other) {
+		return this.id.equals(other.id) && this.clazz == other.clazz && this.lazyInit == other.lazyInit
+				&& this.scope == other.scope && (this.methodCaching == null ? other.methodCaching == null : this.methodCaching.sameAs(other.methodCaching))
+				&& Arrays.equals(this.ctorArgs, other.ctorArgs)
+				&& Arrays.equals(this.propertyNames, other.propertyNames) && Arrays.equals(this.propertyArgs, other.propertyArgs);
+	}
+
+	/**
+	 * @return true if the bean is created on first request instead of at startup.
+	 */
+	public boolean isLazyInit() {
+		return lazyInit;
+	}
+
+	public BeanScope getScope() {
+		return scope;
+	}
+
+	/**
+	 * @return true if the bean is a singleton created at startup, other beans are only validated.
+	 */
+	boolean isCreatedAtStartup() {
+		return this.scope == BeanScope.SINGLETON && !this.lazyInit;
 	}
 
 	/**
 	 * @return if this bean definition has unresolved dependencies.
 	 */
 	public boolean hasUnresolvedDependency() {
-		return !this.dependentBeanNames.isEmpty();
+		return this.unresolvedReferences > 0;
 	}
 
 	/**
@@ -92,8 +281,22 @@ public abstract class AbstractBeanDefinition implements BeanDefinition {
 	 * @param createdBean the bean created.
 	 */
 	public void onOtherBeanCreated(BeanDefinition createdBean) {
-		while (this.dependentBeanNames.remove(createdBean.getId()));
-		this.dependentBeans.put(createdBean.getId(), createdBean);
+		if (this.referencedBeans == null) {
+			// Frozen, all references were resolved before.
+			return;
+		}
+		if (this.scope == BeanScope.SINGLETON && createdBean instanceof AbstractBeanDefinition
+				&& ((AbstractBeanDefinition) createdBean).getScope() == BeanScope.REQUEST) {
+			throw new InvalidBeanConfigException("Singleton bean " + this.id
+					+ " can not refer to request scoped bean " + createdBean.getId() + ".");
+		}
+		int index = referenceIndex(createdBean.getId());
+		if (index >= 0) {
+			if (this.referencedBeans[index] == null) {
+				this.unresolvedReferences--;
+			}
+			this.referencedBeans[index] = createdBean;
+		}
 	}
 
 }
@@ -0,0 +1,12 @@
+package org.nalby.spring.bean;
+
+/**
+ * To be thrown when a single bean is requested by type but several beans have the type.
+ */
+public class AmbiguousBeanException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+	public AmbiguousBeanException(String message) {
+		super(message);
+	}
+}
@@ -1,6 +1,9 @@
 package org.nalby.spring.bean;
 
+import java.lang.reflect.Array;
+
 import org.nalby.spring.util.Assert;
+import org.nalby.spring.util.ValueConverters;
 
 
 /**
@@ -12,6 +15,23 @@ public class BeanArg {
 	private String value;
 	
 	private BeanArgType type;
+
+	/*
+	 * The literal value converted to a type. Immutable, so that threads converting the value
+	 * of a published argument, as for prototype beans, see a type with its own value.
+	 */
+	private static final class Converted {
+		final Class<?> type;
+		final Object value;
+
+		Converted(Class<?> type, Object value) {
+			this.type = type;
+			this.value = value;
+		}
+	}
+
+	// The last conversion, so that a literal is converted once.
+	private volatile Converted converted;
 	
 	public BeanArg(String value, BeanArgType type) {
 		Assert.notNull(value, "Value can not be null");
@@ -28,6 +48,41 @@ public class BeanArg {
 		return type;
 	}
 	
+	/**
+	 * Convert the literal value to the given type, the result is cached until the value is
+	 * converted to another type. Arrays, the only mutable values converted, are copied so
+	 * that each caller, such as each instance of a prototype bean, gets its own.
+	 * @param type the target type.
+	 * @return the converted value, boxed if the type is primitive.
+	 * @throws IllegalArgumentException if the value can not be converted to the type.
+	 */
+	public Object getConvertedValue(Class<?> type) {
+		Converted converted = this.converted;
+		if (converted == null || converted.type != type) {
+			converted = new Converted(type, ValueConverters.convert(this.value, type));
+			this.converted = converted;
+		}
+		return type.isArray() ? copyOf(converted.value) : converted.value;
+	}
+
+	private static Object copyOf(Object array) {
+		int length = Array.getLength(array);
+		Object copy = Array.newInstance(array.getClass().getComponentType(), length);
+		System.arraycopy(array, 0, copy, 0, length);
+		return copy;
+	}
+
+	/**
+	 * Hold the given string instead of the equal value, such as the id of the referred bean,
+	 * so that equal strings are held once.
+	 * @param value a string equal to the value.
+	 */
+	void shareValue(String value) {
+		if (this.value.equals(value)) {
+			this.value = value;
+		}
+	}
+
 	/**
 	 * Test if this argument is a reference to another bean.
 	 * @return true if so, false if not.
@@ -35,4 +90,18 @@ public class BeanArg {
 	public boolean isReference() {
 		return this.type == BeanArgType.REFERENCE;
 	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof BeanArg)) {
+			return false;
+		}
+		BeanArg other = (BeanArg) obj;
+		return this.type == other.type && this.value.equals(other.value);
+	}
+
+	@Override
+	public int hashCode() {
+		return this.value.hashCode() * 31 + this.type.hashCode();
+	}
 }
@@ -0,0 +1,110 @@
+package org.nalby.spring.bean;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Reflective information of a bean class that is needed to create beans: public constructors
+ * grouped by the number of parameters and setters indexed by property name. It is computed
+ * once per class and shared by all definitions and handlers.
+ */
+final class BeanClassMetadata {
+
+	private static final ConcurrentMap<Class<?>, BeanClassMetadata> cache =
+			new ConcurrentHashMap<Class<?>, BeanClassMetadata>();
+
+	private static final Constructor<?>[] NO_CONSTRUCTORS = new Constructor<?>[0];
+
+	private final Map<Integer, Constructor<?>[]> constructors;
+
+	// Property name to the single-argument setter.
+	private final Map<String, Method> setters;
+
+	// Name of an overloaded setter, null if there is none.
+	private final String overloadedSetter;
+
+	private BeanClassMetadata(Class<?> clazz) {
+		Map<Integer, List<Constructor<?>>> arities = new HashMap<Integer, List<Constructor<?>>>();
+		for (Constructor<?> constructor : clazz.getConstructors()) {
+			Integer arity = constructor.getParameterTypes().length;
+			if (!arities.containsKey(arity)) {
+				arities.put(arity, new ArrayList<Constructor<?>>());
+			}
+			arities.get(arity).add(constructor);
+		}
+		this.constructors = new HashMap<Integer, Constructor<?>[]>();
+		for (Map.Entry<Integer, List<Constructor<?>>> entry : arities.entrySet()) {
+			this.constructors.put(entry.getKey(), entry.getValue().toArray(NO_CONSTRUCTORS));
+		}
+		Map<String, Method> setters = new HashMap<String, Method>();
+		Set<String> setterNames = new HashSet<String>();
+		String overloadedSetter = null;
+		for (Method method : clazz.getMethods()) {
+			String name = method.getName();
+			if (!name.startsWith("set")) {
+				continue;
+			}
+			if (!setterNames.add(name) && overloadedSetter == null) {
+				overloadedSetter = name;
+			}
+			if (name.length() > 3 && method.getParameterTypes().length == 1) {
+				setters.put(Character.toLowerCase(name.charAt(3)) + name.substring(4), method);
+			}
+		}
+		this.setters = Collections.unmodifiableMap(setters);
+		this.overloadedSetter = overloadedSetter;
+	}
+
+	/**
+	 * Get the metadata of a class, computing it if it is not cached yet.
+	 * @param clazz the bean class.
+	 * @return the metadata.
+	 */
+	static BeanClassMetadata forClass(Class<?> clazz) {
+		BeanClassMetadata metadata = cache.get(clazz);
+		if (metadata == null) {
+			metadata = new BeanClassMetadata(clazz);
+			BeanClassMetadata existing = cache.putIfAbsent(clazz, metadata);
+			if (existing != null) {
+				metadata = existing;
+			}
+		}
+		return metadata;
+	}
+
+	/**
+	 * @param arity the number of parameters.
+	 * @return public constructors taking the given number of parameters, in the order of
+	 * {@link Class#getConstructors()}, not to be modified.
+	 */
+	Constructor<?>[] constructorsWithArity(int arity) {
+		Constructor<?>[] result = this.constructors.get(arity);
+		return result == null ? NO_CONSTRUCTORS : result;
+	}
+
+	/**
+	 * @param property the property name.
+	 * @return the public single-argument setter of the property, or null if there is none.
+	 */
+	Method setterFor(String property) {
+		return this.setters.get(property);
+	}
+
+	/**
+	 * @throws InvalidBeanConfigException if any setter is overloaded.
+	 */
+	void assertNoOverloadedSetters() {
+		if (this.overloadedSetter != null) {
+			throw new InvalidBeanConfigException("Setter " + this.overloadedSetter + " is overloaded.");
+		}
+	}
+}
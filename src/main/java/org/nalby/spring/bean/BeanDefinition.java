@@ -8,6 +8,12 @@ public interface BeanDefinition {
 	 */
 	public String getId();
 	
+	/**
+	 * Get the class of the bean.
+	 * @return the bean class.
+	 */
+	public Class<?> getBeanClass();
+	
 	/**
 	 * Get the bean it-self.
 	 * @return the bean instance.
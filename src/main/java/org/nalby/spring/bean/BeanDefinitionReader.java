@@ -0,0 +1,17 @@
+package org.nalby.spring.bean;
+
+import java.util.List;
+
+/**
+ * Reads bean definitions from some source of <bean> elements.
+ */
+public interface BeanDefinitionReader {
+
+	/**
+	 * Read all bean definitions, each of them is validated as it is read.
+	 * @return definitions in declaration order.
+	 * @throws InvalidBeanConfigException if the source can not be read or any bean is not
+	 * configured properly.
+	 */
+	public List<XmlBeanDefinition> readBeanDefinitions();
+}
@@ -0,0 +1,322 @@
+package org.nalby.spring.bean;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.nalby.spring.util.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A compact binary copy of validated bean definitions, so that later starts do not need to
+ * parse and validate the xml again. The file holds the hash of the xml it was created from
+ * and a fingerprint of every bean class file, and is rejected when either changes.
+ * <p>
+ * Layout: magic, version, source hash, the class table (name and fingerprint of each class),
+ * then the definitions in topological order, each with its id, class index, lazy-init flag,
+ * scope, memoized methods and arguments.
+ * References between arguments form the dependency graph, and since definitions are stored
+ * after the beans they refer to, sorting them again takes a single pass.
+ */
+public final class BeanDefinitionSnapshot implements BeanDefinitionReader {
+
+	private static final int MAGIC = 0x4e424453;
+
+	private static final int VERSION = 4;
+
+	private static final Logger logger = LoggerFactory.getLogger(BeanDefinitionSnapshot.class);
+
+	private final ByteBuffer buffer;
+
+	private final Class<?>[] classes;
+
+	private BeanDefinitionSnapshot(ByteBuffer buffer, Class<?>[] classes) {
+		this.buffer = buffer;
+		this.classes = classes;
+	}
+
+	/**
+	 * Compute the hash identifying the content of a source file.
+	 * @param source the file.
+	 * @return the SHA-256 of the file, in hex.
+	 * @throws IOException if the file can not be read.
+	 */
+	public static String hash(File source) throws IOException {
+		Assert.notNull(source, "Source can not be null.");
+		return hash(Collections.singletonList(source));
+	}
+
+	/**
+	 * Compute the hash identifying the contents of several source files, such as the files
+	 * listed by {@link XmlFilesBeanDefinitionReader#listFiles(List)}. Files are named
+	 * relative to the directory of the first one, so that the same files hash the same
+	 * wherever they are, such as under src/main/resources at build time and under
+	 * WEB-INF/classes once deployed.
+	 * @param sources the files.
+	 * @return the SHA-256 of the files, in hex, the same as {@link #hash(File)} for one file.
+	 * @throws IOException if a file can not be read.
+	 */
+	public static String hash(List<File> sources) throws IOException {
+		Assert.notNull(sources, "Sources can not be null.");
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] bytes = new byte[8192];
+			Path base = sources.isEmpty() ? null : sources.get(0).getAbsoluteFile().toPath().normalize().getParent();
+			for (File source : sources) {
+				if (sources.size() > 1) {
+					// Moving beans between files changes the hash too.
+					String name = base.relativize(source.getAbsoluteFile().toPath().normalize()).toString();
+					digest.update(name.replace(File.separatorChar, '/').getBytes(StandardCharsets.UTF_8));
+				}
+				InputStream inputStream = new FileInputStream(source);
+				try {
+					int n;
+					while ((n = inputStream.read(bytes)) > 0) {
+						digest.update(bytes, 0, n);
+					}
+				} finally {
+					inputStream.close();
+				}
+			}
+			StringBuilder builder = new StringBuilder();
+			for (byte b : digest.digest()) {
+				builder.append(String.format("%02x", b));
+			}
+			return builder.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static ClassLoader classLoader() {
+		ClassLoader classLoader = XmlBeanDefinition.class.getClassLoader();
+		return classLoader == null ? ClassLoader.getSystemClassLoader() : classLoader;
+	}
+
+	/*
+	 * Identify the class file a class is loaded from, so that a recompiled or relocated class
+	 * invalidates the snapshot.
+	 */
+	private static String fingerprint(String className) throws IOException {
+		URL url = classLoader().getResource(className.replace('.', '/') + ".class");
+		if (url == null) {
+			return "";
+		}
+		URLConnection connection = url.openConnection();
+		try {
+			return url.toExternalForm() + "#" + connection.getLastModified() + "#" + connection.getContentLengthLong();
+		} finally {
+			// Release the file handle of plain files, jar files stay cached by the jdk.
+			if (!"jar".equals(url.getProtocol())) {
+				connection.getInputStream().close();
+			}
+		}
+	}
+
+	/**
+	 * Open a snapshot if it is up to date.
+	 * @param file the snapshot file.
+	 * @param sourceHash the {@link #hash(File)} of the xml the beans are defined in.
+	 * @return the snapshot, or null if the file does not exist, is corrupted, or was written
+	 * for another source or other classes.
+	 */
+	public static BeanDefinitionSnapshot open(File file, String sourceHash) {
+		Assert.notNull(file, "File can not be null.");
+		Assert.notEmptyText(sourceHash, "Source hash can not be empty.");
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			ByteBuffer buffer = map(file);
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || !sourceHash.equals(readString(buffer))) {
+				logger.info("Snapshot {} is out of date.", file);
+				return null;
+			}
+			Class<?>[] classes = new Class<?>[buffer.getInt()];
+			for (int i = 0; i < classes.length; i++) {
+				String className = readString(buffer);
+				if (!fingerprint(className).equals(readString(buffer))) {
+					logger.info("Class {} changed since snapshot {} was written.", className, file);
+					return null;
+				}
+				classes[i] = Class.forName(className, false, classLoader());
+			}
+			return new BeanDefinitionSnapshot(buffer, classes);
+		} catch (IOException e) {
+			logger.warn("Failed to read snapshot " + file, e);
+		} catch (ClassNotFoundException e) {
+			logger.info("Snapshot {} refers to a missing class.", file);
+		} catch (BufferUnderflowException e) {
+			logger.warn("Snapshot {} is truncated.", file);
+		} catch (IllegalArgumentException e) {
+			logger.warn("Snapshot {} is corrupted.", file);
+		}
+		return null;
+	}
+
+	private static ByteBuffer map(File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			// The mapping stays valid after the channel is closed.
+			randomAccessFile.close();
+		}
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining()) {
+			throw new IllegalArgumentException("Bad string length " + length);
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static Map<String, BeanArg> readArgs(ByteBuffer buffer, Map<String, BeanArg> args) {
+		int count = buffer.getInt();
+		for (int i = 0; i < count; i++) {
+			String key = readString(buffer);
+			BeanArgType type = buffer.get() == 0 ? BeanArgType.VALUE : BeanArgType.REFERENCE;
+			args.put(key, new BeanArg(readString(buffer), type));
+		}
+		return args;
+	}
+
+	/**
+	 * Restore the definitions, without parsing xml or validating ids again.
+	 * @return definitions in topological order.
+	 * @throws InvalidBeanConfigException if the snapshot is corrupted or a definition does
+	 * not fit its class any more.
+	 */
+	@Override
+	public List<XmlBeanDefinition> readBeanDefinitions() {
+		ByteBuffer buffer = this.buffer.duplicate();
+		try {
+			int count = buffer.getInt();
+			List<XmlBeanDefinition> definitions = new ArrayList<XmlBeanDefinition>(count);
+			for (int i = 0; i < count; i++) {
+				String id = readString(buffer);
+				Class<?> clazz = this.classes[buffer.getInt()];
+				boolean lazyInit = buffer.get() != 0;
+				BeanScope scope = BeanScope.values()[buffer.get()];
+				MethodCaching methodCaching = null;
+				if (buffer.get() != 0) {
+					String methods = readString(buffer);
+					int size = buffer.getInt();
+					methodCaching = MethodCaching.create(methods, size, buffer.getLong(), clazz);
+				}
+				Map<String, BeanArg> ctorArgs = readArgs(buffer, new HashMap<String, BeanArg>());
+				Map<String, BeanArg> propertyArgs = readArgs(buffer, new LinkedHashMap<String, BeanArg>());
+				definitions.add(XmlBeanDefinition.restore(id, clazz, ctorArgs, propertyArgs, lazyInit, scope, methodCaching));
+			}
+			return definitions;
+		} catch (InvalidBeanConfigException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			throw new InvalidBeanConfigException("Corrupted snapshot.", e);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/*
+	 * Write arguments keyed by names, or by positions if names is null.
+	 */
+	private static void writeArgs(DataOutputStream out, String[] names, BeanArg[] args) throws IOException {
+		out.writeInt(args.length);
+		for (int i = 0; i < args.length; i++) {
+			writeString(out, names == null ? String.valueOf(i) : names[i]);
+			out.writeByte(args[i].isReference() ? 1 : 0);
+			writeString(out, args[i].getValue());
+		}
+	}
+
+	/**
+	 * Write the definitions of beans created by a handler, replacing the file atomically.
+	 * @param file the snapshot file.
+	 * @param sourceHash the {@link #hash(File)} of the xml the beans were read from.
+	 * @param handler a handler whose beans have been created.
+	 * @throws IOException if the file can not be written.
+	 */
+	public static void write(File file, String sourceHash, XmlBeansHandler handler) throws IOException {
+		Assert.notNull(file, "File can not be null.");
+		Assert.notEmptyText(sourceHash, "Source hash can not be empty.");
+		Assert.notNull(handler, "Handler can not be null.");
+		List<XmlBeanDefinition> definitions = handler.getCreatedDefinitions();
+		Map<Class<?>, Integer> classIndexes = new LinkedHashMap<Class<?>, Integer>();
+		for (XmlBeanDefinition definition : definitions) {
+			if (!classIndexes.containsKey(definition.clazz)) {
+				classIndexes.put(definition.clazz, classIndexes.size());
+			}
+		}
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Can not create directory " + parent);
+		}
+		File temp = File.createTempFile(file.getName(), ".tmp", parent);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				writeString(out, sourceHash);
+				out.writeInt(classIndexes.size());
+				for (Class<?> clazz : classIndexes.keySet()) {
+					writeString(out, clazz.getName());
+					writeString(out, fingerprint(clazz.getName()));
+				}
+				out.writeInt(definitions.size());
+				for (XmlBeanDefinition definition : definitions) {
+					writeString(out, definition.getId());
+					out.writeInt(classIndexes.get(definition.clazz));
+					out.writeByte(definition.isLazyInit() ? 1 : 0);
+					out.writeByte(definition.getScope().ordinal());
+					MethodCaching methodCaching = definition.methodCaching;
+					out.writeByte(methodCaching == null ? 0 : 1);
+					if (methodCaching != null) {
+						writeString(out, methodCaching.getMethods());
+						out.writeInt(methodCaching.getSize());
+						out.writeLong(methodCaching.getTtlNanos());
+					}
+					writeArgs(out, null, definition.ctorArgs);
+					writeArgs(out, definition.propertyNames, definition.propertyArgs);
+				}
+			} finally {
+				out.close();
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			temp.delete();
+		}
+	}
+}
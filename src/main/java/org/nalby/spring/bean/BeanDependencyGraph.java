@@ -0,0 +1,207 @@
+package org.nalby.spring.bean;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.nalby.spring.util.Assert;
+
+/**
+ * The dependency graph among bean definitions, built once from the references of each
+ * definition. Beans are numbered by their declaration order, edges point from a bean to
+ * the beans depending on it, and a topological order is computed by removing beans whose
+ * indegree drops to zero, so building the graph costs O(beans + references).
+ */
+class BeanDependencyGraph<T extends AbstractBeanDefinition> {
+
+	private final List<T> definitions;
+
+	private final Map<String, Integer> indexes;
+
+	// dependents[i] holds the indexes of beans that refer to bean i.
+	private final int[][] dependents;
+
+	// indegrees[i] is the number of distinct beans bean i refers to.
+	private final int[] indegrees;
+
+	private final int[] order;
+
+	/**
+	 * Build the graph.
+	 * @param definitions bean definitions in declaration order.
+	 * @throws InvalidBeanConfigException if a bean refers to an undefined bean, or the
+	 * references form a cycle.
+	 */
+	BeanDependencyGraph(List<T> definitions) {
+		Assert.notNull(definitions, "Definitions can not be null.");
+		this.definitions = new ArrayList<T>(definitions);
+		this.indexes = new HashMap<String, Integer>();
+		for (int i = 0; i < this.definitions.size(); i++) {
+			if (this.indexes.put(this.definitions.get(i).getId(), i) != null) {
+				throw new InvalidBeanConfigException("Duplcated bean name found: " + this.definitions.get(i).getId());
+			}
+		}
+		this.indegrees = new int[this.definitions.size()];
+		this.dependents = buildDependents();
+		this.order = sort();
+	}
+
+	private int[][] buildDependents() {
+		int[] counts = new int[this.definitions.size()];
+		int[][] references = new int[this.definitions.size()][];
+		for (int i = 0; i < this.definitions.size(); i++) {
+			AbstractBeanDefinition definition = this.definitions.get(i);
+			references[i] = new int[definition.referencedBeanNames.length];
+			int n = 0;
+			for (String name : definition.referencedBeanNames) {
+				Integer index = this.indexes.get(name);
+				if (index == null) {
+					throw new InvalidBeanConfigException("Bean " + definition.getId() + " refers to undefined bean " + name + ".");
+				}
+				references[i][n++] = index;
+				counts[index]++;
+			}
+			this.indegrees[i] = n;
+		}
+		int[][] result = new int[this.definitions.size()][];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = new int[counts[i]];
+			counts[i] = 0;
+		}
+		for (int i = 0; i < references.length; i++) {
+			for (int dependency : references[i]) {
+				result[dependency][counts[dependency]++] = i;
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Kahn's algorithm, beans become ready in declaration order so that the result is
+	 * deterministic.
+	 */
+	private int[] sort() {
+		int[] remaining = this.indegrees.clone();
+		int[] queue = new int[remaining.length];
+		int head = 0, tail = 0;
+		for (int i = 0; i < remaining.length; i++) {
+			if (remaining[i] == 0) {
+				queue[tail++] = i;
+			}
+		}
+		while (head < tail) {
+			int current = queue[head++];
+			for (int dependent : this.dependents[current]) {
+				if (--remaining[dependent] == 0) {
+					queue[tail++] = dependent;
+				}
+			}
+		}
+		if (tail != remaining.length) {
+			throw new InvalidBeanConfigException("Circular dependency found: " + describeCycle(remaining) + ".");
+		}
+		return queue;
+	}
+
+	/*
+	 * Every bean left with a positive indegree is on or behind a cycle, so walking the
+	 * references of such beans always ends up revisiting one of them.
+	 */
+	private String describeCycle(int[] remaining) {
+		int start = 0;
+		while (remaining[start] == 0) {
+			start++;
+		}
+		Map<Integer, Integer> visited = new HashMap<Integer, Integer>();
+		List<Integer> path = new ArrayList<Integer>();
+		int current = start;
+		while (!visited.containsKey(current)) {
+			visited.put(current, path.size());
+			path.add(current);
+			current = nextUnresolvedReference(current, remaining);
+		}
+		StringBuilder builder = new StringBuilder();
+		for (int i = visited.get(current); i < path.size(); i++) {
+			builder.append(this.definitions.get(path.get(i)).getId()).append(" -> ");
+		}
+		return builder.append(this.definitions.get(current).getId()).toString();
+	}
+
+	private int nextUnresolvedReference(int index, int[] remaining) {
+		for (String name : this.definitions.get(index).referencedBeanNames) {
+			int reference = this.indexes.get(name);
+			if (remaining[reference] > 0) {
+				return reference;
+			}
+		}
+		throw new IllegalStateException("Bean " + this.definitions.get(index).getId() + " is not on a cycle.");
+	}
+
+	/**
+	 * @return all definitions ordered so that every bean comes after the beans it refers to.
+	 */
+	List<T> topologicalOrder() {
+		List<T> result = new ArrayList<T>(this.order.length);
+		for (int index : this.order) {
+			result.add(this.definitions.get(index));
+		}
+		return result;
+	}
+
+	/**
+	 * @return declaration indexes of all beans, ordered as {@link #topologicalOrder()}.
+	 */
+	int[] topologicalIndexes() {
+		return this.order.clone();
+	}
+
+	/**
+	 * @param definition a definition of this graph.
+	 * @return definitions that refer to the given one.
+	 */
+	List<T> dependentsOf(T definition) {
+		Integer index = this.indexes.get(definition.getId());
+		Assert.notNull(index, "Bean " + definition.getId() + " is not in the graph.");
+		if (this.dependents[index].length == 0) {
+			return Collections.emptyList();
+		}
+		List<T> result = new ArrayList<T>(this.dependents[index].length);
+		for (int dependent : this.dependents[index]) {
+			result.add(this.definitions.get(dependent));
+		}
+		return result;
+	}
+
+	/**
+	 * @return the number of beans in this graph.
+	 */
+	int size() {
+		return this.definitions.size();
+	}
+
+	/**
+	 * @param index the declaration index of a bean.
+	 * @return the definition of the bean.
+	 */
+	T get(int index) {
+		return this.definitions.get(index);
+	}
+
+	/**
+	 * @param index the declaration index of a bean.
+	 * @return the number of distinct beans the bean refers to.
+	 */
+	int referenceCount(int index) {
+		return this.indegrees[index];
+	}
+
+	/**
+	 * @param index the declaration index of a bean.
+	 * @return declaration indexes of beans that refer to the bean, not to be modified.
+	 */
+	int[] dependentIndexes(int index) {
+		return this.dependents[index];
+	}
+}
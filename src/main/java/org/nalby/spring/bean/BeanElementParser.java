@@ -0,0 +1,94 @@
+package org.nalby.spring.bean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The second phase of reading definitions: turns the <bean> elements collected by a reader
+ * into definitions, loading and validating their classes in chunks on an executor since that
+ * dominates reading big contexts.
+ * <p>
+ * Results do not depend on scheduling: definitions keep declaration order, and when some
+ * beans are invalid the first of them in declaration order is reported. Chunks no worker has
+ * started yet are parsed by the calling thread while it waits, so parsing does not deadlock
+ * when called from a task of the same bounded pool.
+ */
+final class BeanElementParser {
+
+	/*
+	 * Beans per task, enough to amortize scheduling against loading a class.
+	 */
+	static final int CHUNK_SIZE = 8;
+
+	private BeanElementParser() {
+	}
+
+	/**
+	 * Parse <bean> elements.
+	 * @param elements the elements, in declaration order.
+	 * @param defaultLazyInit whether beans are lazy if their elements do not tell.
+	 * @param executor the executor, or null to parse on the calling thread.
+	 * @return the definitions, in declaration order.
+	 * @throws InvalidBeanConfigException of the first invalid bean.
+	 */
+	static List<XmlBeanDefinition> parse(List<XmlElement> elements, boolean defaultLazyInit, Executor executor) {
+		List<XmlBeanDefinition> definitions = new ArrayList<XmlBeanDefinition>(elements.size());
+		if (executor == null || elements.size() <= CHUNK_SIZE) {
+			for (XmlElement element : elements) {
+				definitions.add(XmlBeanDefinition.parseBeanElement(element, defaultLazyInit));
+			}
+			return definitions;
+		}
+		List<FutureTask<List<XmlBeanDefinition>>> tasks = new ArrayList<FutureTask<List<XmlBeanDefinition>>>();
+		for (int start = 0; start < elements.size(); start += CHUNK_SIZE) {
+			FutureTask<List<XmlBeanDefinition>> task = newTask(
+					elements.subList(start, Math.min(start + CHUNK_SIZE, elements.size())), defaultLazyInit);
+			tasks.add(task);
+			executor.execute(task);
+		}
+		try {
+			for (FutureTask<List<XmlBeanDefinition>> task : tasks) {
+				definitions.addAll(await(task));
+			}
+		} finally {
+			// Nothing left to do after a failure.
+			for (FutureTask<List<XmlBeanDefinition>> task : tasks) {
+				task.cancel(false);
+			}
+		}
+		return definitions;
+	}
+
+	private static FutureTask<List<XmlBeanDefinition>> newTask(final List<XmlElement> chunk, final boolean defaultLazyInit) {
+		return new FutureTask<List<XmlBeanDefinition>>(new Callable<List<XmlBeanDefinition>>() {
+			@Override
+			public List<XmlBeanDefinition> call() throws Exception {
+				List<XmlBeanDefinition> definitions = new ArrayList<XmlBeanDefinition>(chunk.size());
+				for (XmlElement element : chunk) {
+					definitions.add(XmlBeanDefinition.parseBeanElement(element, defaultLazyInit));
+				}
+				return definitions;
+			}
+		});
+	}
+
+	private static List<XmlBeanDefinition> await(FutureTask<List<XmlBeanDefinition>> task) {
+		// Does nothing if a worker started the task already.
+		task.run();
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InvalidBeanConfigException("Interrupted while parsing beans.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof InvalidBeanConfigException) {
+				throw (InvalidBeanConfigException) e.getCause();
+			}
+			throw new InvalidBeanConfigException(e.getCause());
+		}
+	}
+}
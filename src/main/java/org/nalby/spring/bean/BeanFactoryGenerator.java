@@ -0,0 +1,288 @@
+package org.nalby.spring.bean;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.nalby.spring.util.Assert;
+import org.nalby.spring.util.ValueConverters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates at build time the source of a {@link BeanDefinitionReader} whose definitions
+ * create beans by calling their constructors and setters directly. The xml is read and
+ * validated as at runtime, constructors and setters resolved against the beans referred to,
+ * so the generated reader neither parses nor reflects, and beans are created the same way.
+ * <p>
+ * Run as a build step, see the 'aot' profile of the pom:
+ * <pre>
+ * java org.nalby.spring.bean.BeanFactoryGenerator &lt;locations&gt; &lt;output dir&gt; [class name]
+ * </pre>
+ * Locations are comma separated, as the contextConfigLocation of the servlet. Bean classes,
+ * their enclosing classes, constructors and setters must be public.
+ * <p>
+ * The generated class holds the {@link BeanDefinitionSnapshot#hash(List)} of the xml it was
+ * generated from in a {@value #SOURCE_HASH_FIELD} constant, so that the servlet can tell it
+ * is stale once the xml changed.
+ */
+public final class BeanFactoryGenerator {
+
+	/**
+	 * The class generated unless told otherwise, which the servlet looks for.
+	 */
+	public static final String DEFAULT_CLASS_NAME = "org.nalby.spring.generated.GeneratedBeans";
+
+	/**
+	 * The public static String field of generated classes holding the hash of their xml.
+	 */
+	public static final String SOURCE_HASH_FIELD = "SOURCE_HASH";
+
+	// Beans per generated method, keeping methods far below the size limit of the jvm.
+	private static final int BEANS_PER_METHOD = 200;
+
+	private static final Logger logger = LoggerFactory.getLogger(BeanFactoryGenerator.class);
+
+	private final String className;
+
+	/**
+	 * @param className the fully qualified name of the class to generate.
+	 */
+	public BeanFactoryGenerator(String className) {
+		Assert.notEmptyText(className, "Class name can not be empty.");
+		this.className = className;
+	}
+
+	/*
+	 * Validate definitions the way XmlBeansHandler does without creating beans, resolving the
+	 * constructor of each against the beans it refers to.
+	 */
+	private static List<XmlBeanDefinition> validate(List<XmlBeanDefinition> definitions) {
+		BeanDependencyGraph<XmlBeanDefinition> graph = new BeanDependencyGraph<XmlBeanDefinition>(definitions);
+		List<XmlBeanDefinition> ordered = new ArrayList<XmlBeanDefinition>(graph.size());
+		for (XmlBeanDefinition definition : graph.topologicalOrder()) {
+			definition.validate();
+			for (XmlBeanDefinition dependent : graph.dependentsOf(definition)) {
+				dependent.onOtherBeanCreated(definition);
+			}
+			ordered.add(definition);
+		}
+		return ordered;
+	}
+
+	private static void assertAccessible(Class<?> type, String id) {
+		for (Class<?> c = type; c != null; c = c.getEnclosingClass()) {
+			if (!Modifier.isPublic(c.getModifiers()) || c.getCanonicalName() == null) {
+				throw new InvalidBeanConfigException("Class " + type.getName() + " of bean " + id + " must be public to be created by generated code.");
+			}
+		}
+	}
+
+	/**
+	 * Read, validate and generate.
+	 * @param reader the reader of the definitions.
+	 * @return the source of the class, without the hash of its xml.
+	 * @throws InvalidBeanConfigException if any bean is not configured properly, or can not
+	 * be created from another package.
+	 */
+	public String generate(BeanDefinitionReader reader) {
+		return generate(reader, null);
+	}
+
+	/**
+	 * Read, validate and generate.
+	 * @param reader the reader of the definitions.
+	 * @param sourceHash the {@link BeanDefinitionSnapshot#hash(List)} of the xml the reader
+	 * reads, null if unknown, in which case the class is always taken as stale.
+	 * @return the source of the class.
+	 * @throws InvalidBeanConfigException if any bean is not configured properly, or can not
+	 * be created from another package.
+	 */
+	public String generate(BeanDefinitionReader reader, String sourceHash) {
+		Assert.notNull(reader, "Reader can not be null.");
+		List<XmlBeanDefinition> definitions = reader.readBeanDefinitions();
+		Set<String> ids = new HashSet<String>();
+		for (XmlBeanDefinition definition : definitions) {
+			if (!ids.add(definition.getId())) {
+				throw new InvalidBeanConfigException("Duplcated bean name found: " + definition.getId());
+			}
+		}
+		List<XmlBeanDefinition> ordered = validate(definitions);
+		int dot = this.className.lastIndexOf('.');
+		StringBuilder out = new StringBuilder();
+		if (dot > 0) {
+			out.append("package ").append(this.className.substring(0, dot)).append(";\n\n");
+		}
+		out.append("import java.util.ArrayList;\n");
+		out.append("import java.util.List;\n\n");
+		out.append("import org.nalby.spring.bean.BeanArg;\n");
+		out.append("import org.nalby.spring.bean.BeanArgType;\n");
+		out.append("import org.nalby.spring.bean.BeanDefinitionReader;\n");
+		out.append("import org.nalby.spring.bean.BeanInstantiator;\n");
+		out.append("import org.nalby.spring.bean.BeanScope;\n");
+		out.append("import org.nalby.spring.bean.XmlBeanDefinition;\n\n");
+		out.append("/**\n * Generated by ").append(BeanFactoryGenerator.class.getName()).append(", do not edit.\n */\n");
+		out.append("public final class ").append(this.className.substring(dot + 1)).append(" implements BeanDefinitionReader {\n\n");
+		out.append("\tpublic static final String ").append(SOURCE_HASH_FIELD).append(" = ")
+				.append(sourceHash == null ? "null" : literal(sourceHash)).append(";\n\n");
+		out.append("\tpublic List<XmlBeanDefinition> readBeanDefinitions() {\n");
+		out.append("\t\tList<XmlBeanDefinition> definitions = new ArrayList<XmlBeanDefinition>(").append(ordered.size()).append(");\n");
+		for (int i = 0; i < ordered.size(); i += BEANS_PER_METHOD) {
+			out.append("\t\tbeans").append(i / BEANS_PER_METHOD).append("(definitions);\n");
+		}
+		out.append("\t\treturn definitions;\n\t}\n");
+		for (int i = 0; i < ordered.size(); i += BEANS_PER_METHOD) {
+			out.append("\n\tprivate static void beans").append(i / BEANS_PER_METHOD).append("(List<XmlBeanDefinition> definitions) {\n");
+			for (XmlBeanDefinition definition : ordered.subList(i, Math.min(i + BEANS_PER_METHOD, ordered.size()))) {
+				appendDefinition(out, definition);
+			}
+			out.append("\t}\n");
+		}
+		out.append("}\n");
+		return out.toString();
+	}
+
+	private static void appendDefinition(StringBuilder out, XmlBeanDefinition definition) {
+		Class<?> clazz = definition.getBeanClass();
+		assertAccessible(clazz, definition.getId());
+		String type = clazz.getCanonicalName();
+		Constructor<?> constructor = definition.getConstructor();
+		Class<?>[] ctorTypes = constructor.getParameterTypes();
+		Method[] setters = definition.getSetters();
+		out.append("\t\tdefinitions.add(XmlBeanDefinition.generated(").append(literal(definition.getId())).append(", ")
+				.append(type).append(".class,\n\t\t\t\tnew BeanArg[] {");
+		for (int i = 0; i < ctorTypes.length; i++) {
+			appendArg(out, i, definition.ctorArgs[i]);
+		}
+		out.append("}, new Class<?>[] {");
+		appendTypes(out, ctorTypes);
+		out.append("},\n\t\t\t\tnew String[] {");
+		for (int i = 0; i < definition.propertyNames.length; i++) {
+			out.append(i > 0 ? ", " : "").append(literal(definition.propertyNames[i]));
+		}
+		out.append("}, new BeanArg[] {");
+		Class<?>[] setterTypes = new Class<?>[setters.length];
+		for (int i = 0; i < setters.length; i++) {
+			setterTypes[i] = setters[i].getParameterTypes()[0];
+			appendArg(out, i, definition.propertyArgs[i]);
+		}
+		out.append("}, new Class<?>[] {");
+		appendTypes(out, setterTypes);
+		out.append("},\n\t\t\t\t").append(definition.isLazyInit()).append(", BeanScope.").append(definition.getScope().name());
+		MethodCaching methodCaching = definition.methodCaching;
+		if (methodCaching == null) {
+			out.append(", null, 0, 0L");
+		} else {
+			out.append(", ").append(literal(methodCaching.getMethods())).append(", ").append(methodCaching.getSize())
+					.append(", ").append(methodCaching.getTtlNanos()).append("L");
+		}
+		out.append(", new BeanInstantiator() {\n");
+		out.append("\t\t\t\t\tpublic Object newInstance(Object[] args) throws Throwable {\n");
+		out.append("\t\t\t\t\t\treturn new ").append(type).append("(");
+		for (int j = 0; j < ctorTypes.length; j++) {
+			out.append(j > 0 ? ", " : "").append(cast(ctorTypes[j], "args[" + j + "]"));
+		}
+		out.append(");\n\t\t\t\t\t}\n\n");
+		out.append("\t\t\t\t\tpublic void invokeSetter(int index, Object bean, Object value) throws Throwable {\n");
+		if (setters.length > 0) {
+			out.append("\t\t\t\t\t\tswitch (index) {\n");
+			for (int j = 0; j < setters.length; j++) {
+				out.append("\t\t\t\t\t\tcase ").append(j).append(":\n\t\t\t\t\t\t\t((").append(type).append(") bean).")
+						.append(setters[j].getName()).append("(").append(cast(setterTypes[j], "value")).append(");\n")
+						.append("\t\t\t\t\t\t\treturn;\n");
+			}
+			out.append("\t\t\t\t\t\tdefault:\n\t\t\t\t\t\t\tbreak;\n\t\t\t\t\t\t}\n");
+		}
+		out.append("\t\t\t\t\t\tthrow new IndexOutOfBoundsException(\"No setter \" + index);\n\t\t\t\t\t}\n\t\t\t\t}));\n");
+	}
+
+	private static void appendArg(StringBuilder out, int index, BeanArg arg) {
+		out.append(index > 0 ? ", " : "").append("new BeanArg(").append(literal(arg.getValue())).append(", BeanArgType.")
+				.append(arg.getType().name()).append(")");
+	}
+
+	private static void appendTypes(StringBuilder out, Class<?>[] types) {
+		for (int i = 0; i < types.length; i++) {
+			out.append(i > 0 ? ", " : "").append(types[i].getCanonicalName()).append(".class");
+		}
+	}
+
+	/*
+	 * Cast an Object expression to a parameter type, unboxing primitives.
+	 */
+	private static String cast(Class<?> type, String expression) {
+		if (type == Object.class) {
+			return expression;
+		}
+		if (type.isPrimitive()) {
+			String wrapper = ValueConverters.wrap(type).getName();
+			return "(" + type.getName() + ") (" + wrapper + ") " + expression;
+		}
+		return "(" + type.getCanonicalName() + ") " + expression;
+	}
+
+	/*
+	 * A java string literal, non ascii characters escaped so the source compiles whatever
+	 * the encoding of the compiler. Control characters get escape sequences, not unicode
+	 * escapes: javac translates those before lexing, so '\\u000a' would end the line.
+	 */
+	static String literal(String text) {
+		StringBuilder builder = new StringBuilder(text.length() + 2).append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\') {
+				builder.append('\\').append(c);
+			} else if (c == '\n') {
+				builder.append("\\n");
+			} else if (c == '\r') {
+				builder.append("\\r");
+			} else if (c == '\t') {
+				builder.append("\\t");
+			} else if (c < 0x20) {
+				// Three digits, so that a following digit is not taken in.
+				builder.append(String.format("\\%03o", (int) c));
+			} else if (c > 0x7e) {
+				builder.append(String.format("\\u%04x", (int) c));
+			} else {
+				builder.append(c);
+			}
+		}
+		return builder.append('"').toString();
+	}
+
+	/**
+	 * Write the source of the class under a source directory.
+	 * @param reader the reader of the definitions.
+	 * @param sourceHash the hash of the xml the reader reads, null if unknown.
+	 * @param sourceDirectory the root of the sources, the file is written in the directory of its package.
+	 * @return the file written.
+	 * @throws IOException if the file can not be written.
+	 */
+	public File write(BeanDefinitionReader reader, String sourceHash, File sourceDirectory) throws IOException {
+		String source = generate(reader, sourceHash);
+		File file = new File(sourceDirectory, this.className.replace('.', File.separatorChar) + ".java");
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2 || args.length > 3) {
+			System.err.println("Usage: BeanFactoryGenerator <locations> <output dir> [class name]");
+			System.exit(1);
+		}
+		List<File> files = XmlFilesBeanDefinitionReader.resolveLocations(new File("."), args[0]);
+		BeanFactoryGenerator generator = new BeanFactoryGenerator(args.length == 3 ? args[2] : DEFAULT_CLASS_NAME);
+		String sourceHash = BeanDefinitionSnapshot.hash(XmlFilesBeanDefinitionReader.listFiles(files));
+		File file = generator.write(new XmlFilesBeanDefinitionReader(files, null), sourceHash, new File(args[1]));
+		logger.info("Generated {} from {}.", file, files);
+	}
+}
@@ -0,0 +1,25 @@
+package org.nalby.spring.bean;
+
+/**
+ * Creates instances through a resolved constructor and invokes resolved setters. Public for
+ * the code generated by {@link BeanFactoryGenerator}, which implements it with direct calls.
+ */
+public interface BeanInstantiator {
+
+	/**
+	 * Invoke the constructor.
+	 * @param args constructor arguments.
+	 * @return the new instance.
+	 * @throws Throwable whatever the constructor throws.
+	 */
+	public Object newInstance(Object[] args) throws Throwable;
+
+	/**
+	 * Invoke a setter.
+	 * @param index the index of the setter among the setters this instantiator was created with.
+	 * @param bean the bean.
+	 * @param value the setter argument.
+	 * @throws Throwable whatever the setter throws.
+	 */
+	public void invokeSetter(int index, Object bean, Object value) throws Throwable;
+}
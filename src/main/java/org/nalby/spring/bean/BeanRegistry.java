@@ -0,0 +1,123 @@
+package org.nalby.spring.bean;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created bean definitions by id, and by every class and interface their beans are
+ * assignable to, so that a lookup by type is a single hash probe. Built once and never
+ * modified, hence safe to read from any thread once published.
+ * <p>
+ * Definitions are held in an array in creation order, their positions being dense ids,
+ * and found by id through an open addressing table of positions rather than a map holding
+ * an entry object per bean.
+ */
+final class BeanRegistry<T extends AbstractBeanDefinition> {
+
+	// Definitions in creation order, and a view of the same array.
+	private final AbstractBeanDefinition[] byPosition;
+	private final List<T> definitions;
+
+	// Positions of definitions by the hashes of their ids, -1 for free slots. At most half full.
+	private final int[] slots;
+
+	private final Map<Class<?>, List<T>> definitionsByType;
+
+	/**
+	 * @param definitions definitions of created beans, each after the beans it refers to.
+	 * @throws InvalidBeanConfigException if two definitions have the same id.
+	 */
+	BeanRegistry(Collection<T> definitions) {
+		@SuppressWarnings("unchecked")
+		T[] byPosition = definitions.toArray((T[]) new AbstractBeanDefinition[definitions.size()]);
+		int[] slots = new int[Math.max(2, Integer.highestOneBit(Math.max(1, byPosition.length)) << 2)];
+		Arrays.fill(slots, -1);
+		Map<Class<?>, List<T>> byType = new HashMap<Class<?>, List<T>>();
+		for (int i = 0; i < byPosition.length; i++) {
+			T definition = byPosition[i];
+			int slot = slotOf(slots, byPosition, definition.getId());
+			if (slots[slot] >= 0) {
+				throw new InvalidBeanConfigException("Duplcated bean name found: " + definition.getId());
+			}
+			slots[slot] = i;
+			if (definition.methodCaching != null) {
+				// A memoizing proxy is only an instance of the interfaces.
+				for (Class<?> type : definition.methodCaching.getInterfaces()) {
+					index(byType, type, definition);
+				}
+				continue;
+			}
+			for (Class<?> clazz = definition.getBeanClass(); clazz != null; clazz = clazz.getSuperclass()) {
+				index(byType, clazz, definition);
+			}
+		}
+		for (Map.Entry<Class<?>, List<T>> entry : byType.entrySet()) {
+			entry.setValue(Collections.unmodifiableList(entry.getValue()));
+		}
+		this.byPosition = byPosition;
+		this.definitions = Collections.unmodifiableList(Arrays.asList(byPosition));
+		this.slots = slots;
+		this.definitionsByType = byType;
+	}
+
+	/*
+	 * The slot holding the position of the id, or the free slot where it would go.
+	 */
+	private static int slotOf(int[] slots, AbstractBeanDefinition[] definitions, String id) {
+		int mask = slots.length - 1;
+		int hash = id.hashCode();
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (slots[slot] >= 0 && !definitions[slots[slot]].getId().equals(id)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private static <T> void index(Map<Class<?>, List<T>> byType, Class<?> type, T definition) {
+		List<T> list = byType.get(type);
+		if (list == null) {
+			list = new ArrayList<T>(1);
+			byType.put(type, list);
+		} else if (list.get(list.size() - 1) == definition) {
+			// Reached through another path of the hierarchy.
+			return;
+		}
+		list.add(definition);
+		for (Class<?> superInterface : type.getInterfaces()) {
+			index(byType, superInterface, definition);
+		}
+	}
+
+	/**
+	 * @param id the bean id.
+	 * @return the definition, null if there is no such bean.
+	 */
+	T get(String id) {
+		if (id == null) {
+			return null;
+		}
+		int position = this.slots[slotOf(this.slots, this.byPosition, id)];
+		return position < 0 ? null : this.definitions.get(position);
+	}
+
+	/**
+	 * @param type a class or interface.
+	 * @return definitions of beans assignable to the type, in creation order.
+	 */
+	List<T> getByType(Class<?> type) {
+		List<T> list = this.definitionsByType.get(type);
+		return list == null ? Collections.<T>emptyList() : list;
+	}
+
+	/**
+	 * @return all definitions, in creation order.
+	 */
+	Collection<T> getAll() {
+		return this.definitions;
+	}
+}
@@ -0,0 +1,40 @@
+package org.nalby.spring.bean;
+
+/**
+ * How long a bean lives, given by the 'scope' attribute of a <bean> element.
+ */
+public enum BeanScope {
+
+	/**
+	 * One instance shared by everyone, the default.
+	 */
+	SINGLETON,
+
+	/**
+	 * A new instance every time the bean is requested or referred to.
+	 */
+	PROTOTYPE,
+
+	/**
+	 * One instance per HTTP request, see {@link RequestScope}.
+	 */
+	REQUEST;
+
+	/**
+	 * Parse a 'scope' attribute.
+	 * @param value 'singleton', 'prototype', 'request', or empty for singleton.
+	 * @return the scope.
+	 * @throws InvalidBeanConfigException if the value is none of the above.
+	 */
+	public static BeanScope parse(String value) {
+		if (value == null || "".equals(value)) {
+			return SINGLETON;
+		}
+		for (BeanScope scope : values()) {
+			if (scope.name().toLowerCase().equals(value)) {
+				return scope;
+			}
+		}
+		throw new InvalidBeanConfigException("Invalid scope value: " + value);
+	}
+}
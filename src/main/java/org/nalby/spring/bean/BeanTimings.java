@@ -0,0 +1,25 @@
+package org.nalby.spring.bean;
+
+/**
+ * Time spent on one bean definition during startup, in nanoseconds. Each phase is written
+ * once by the thread doing it, before the definition is published to other threads.
+ */
+final class BeanTimings {
+
+	// Reading the definition, without loading its class.
+	long parseNanos;
+
+	long classLoadNanos;
+
+	// Running the constructor, including beans created for its arguments on demand.
+	long instantiateNanos;
+
+	long injectNanos;
+
+	/**
+	 * @return time spent creating the bean, 0 if it was not created.
+	 */
+	long creationNanos() {
+		return this.instantiateNanos + this.injectNanos;
+	}
+}
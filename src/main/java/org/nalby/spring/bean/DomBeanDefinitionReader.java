@@ -0,0 +1,52 @@
+package org.nalby.spring.bean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.nalby.spring.util.Assert;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Reads bean definitions from the <bean> elements under the root of a DOM document.
+ */
+public class DomBeanDefinitionReader implements BeanDefinitionReader {
+
+	private final Document document;
+
+	private Executor executor;
+
+	public DomBeanDefinitionReader(Document document) {
+		Assert.notNull(document, "Document can not be null.");
+		this.document = document;
+	}
+
+	/**
+	 * Load and validate bean classes on the given executor instead of the calling thread.
+	 * @param executor the executor, or null to validate beans on the calling thread.
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	@Override
+	public List<XmlBeanDefinition> readBeanDefinitions() {
+		List<XmlElement> elements = new ArrayList<XmlElement>();
+		Element root = this.document.getDocumentElement();
+		if (root == null) {
+			return new ArrayList<XmlBeanDefinition>();
+		}
+		boolean defaultLazyInit = XmlBeanDefinition.parseLazyInit(root.getAttribute(XmlBeansHandler.DEFAULT_LAZY_INIT_ATTRIBUTE), false);
+		NodeList nodeList = root.getChildNodes();
+		for (int i = 0; i < nodeList.getLength(); i++) {
+			Node node = nodeList.item(i);
+			if (node.getNodeType() == Node.ELEMENT_NODE && XmlBeansHandler.BEAN_ELEMENT.equalsIgnoreCase(node.getNodeName())) {
+				elements.add(XmlElement.fromDom((Element)node));
+			}
+		}
+		return BeanElementParser.parse(elements, defaultLazyInit, this.executor);
+	}
+}
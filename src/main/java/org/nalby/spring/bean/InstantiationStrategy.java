@@ -0,0 +1,56 @@
+package org.nalby.spring.bean;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+
+/**
+ * How beans are instantiated and how their setters are invoked once the constructor and
+ * setters are resolved.
+ */
+public enum InstantiationStrategy {
+
+	/**
+	 * Through {@link Constructor#newInstance(Object...)} and {@link Method#invoke(Object, Object...)}.
+	 */
+	REFLECTION {
+		@Override
+		BeanInstantiator newInstantiator(Constructor<?> constructor, Method[] setters) {
+			return new ReflectionBeanInstantiator(constructor, setters);
+		}
+	},
+
+	/**
+	 * Through method handles adapted to generic signatures, which the JIT is able to inline.
+	 */
+	METHOD_HANDLE {
+		@Override
+		BeanInstantiator newInstantiator(Constructor<?> constructor, Method[] setters) {
+			return new MethodHandleBeanInstantiator(constructor, setters);
+		}
+	};
+
+	/**
+	 * The system property to choose the default strategy, either 'reflection' or 'method_handle'.
+	 */
+	public static final String PROPERTY = "org.nalby.spring.instantiation";
+
+	/**
+	 * @return the strategy named by the {@link #PROPERTY} system property, {@link #REFLECTION}
+	 * if the property is not set.
+	 * @throws IllegalArgumentException if the property does not name a strategy.
+	 */
+	public static InstantiationStrategy getDefault() {
+		return parse(System.getProperty(PROPERTY, REFLECTION.name()));
+	}
+
+	/**
+	 * @param name the strategy name, case insensitive.
+	 * @return the strategy.
+	 * @throws IllegalArgumentException if the name does not name a strategy.
+	 */
+	public static InstantiationStrategy parse(String name) {
+		return valueOf(name.trim().toUpperCase());
+	}
+
+	abstract BeanInstantiator newInstantiator(Constructor<?> constructor, Method[] setters);
+}
@@ -13,4 +13,8 @@ public class InvalidBeanConfigException extends RuntimeException {
 	public InvalidBeanConfigException(Throwable throwable) {
 		super(throwable);
 	}
+
+	public InvalidBeanConfigException(String message, Throwable throwable) {
+		super(message, throwable);
+	}
 }
@@ -0,0 +1,456 @@
+package org.nalby.spring.bean;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.nalby.spring.util.ValueConverters;
+
+/**
+ * Memoizes interface methods of a bean, as told by the 'cache-methods', 'cache-size' and
+ * 'ttl' attributes of its &lt;bean&gt; element:
+ * <pre>
+ * &lt;bean id="users" class="..." cache-methods="lookup*,find*" cache-size="10000" ttl="30s"/&gt;
+ * </pre>
+ * Each bean is wrapped in a proxy of all interfaces of its class. Results of the methods
+ * whose names match a pattern, where '*' matches any characters, and that return a value are
+ * cached per bean and method by their arguments: up to cache-size results per method, 1000 by
+ * default, for ttl, forever by default. Other methods are called through. Since the bean is
+ * a proxy, it can only be referred to and looked up by its interfaces.
+ * <p>
+ * Methods are dispatched through tables built once per definition: the proxy looks the
+ * invoked method up by identity, then calls a method handle and uses a cache at its index.
+ * Caches are split in lock striped segments, each an LRU of its own.
+ */
+final class MethodCaching {
+
+	private static final int DEFAULT_SIZE = 1000;
+
+	private static final int MAX_STRIPES = 16;
+
+	private static final Object[] NO_ARGS = new Object[0];
+
+	private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+	// Keys of methods without arguments and of null arguments, and the cached null result.
+	private static final Object NO_ARGS_KEY = new Object();
+	private static final Object NULL = new Object();
+
+	private final String methods;
+
+	private final int size;
+
+	// Results are cached forever if 0.
+	private final long ttlNanos;
+
+	private final Class<?>[] interfaces;
+
+	// Interface methods then the methods of Object the proxy forwards, by index.
+	private final Method[] dispatched;
+	private final MethodHandle[] invokers;
+	private final boolean[] cached;
+
+	// The index proxies dispatch equals to, its argument is unwrapped if it is a proxy.
+	private final int equalsIndex;
+
+	// Indexes by the method objects proxies are invoked with, added as they are met.
+	// Replaced as a whole, never modified once published.
+	private volatile Map<Method, Integer> indexes = new IdentityHashMap<Method, Integer>();
+
+	private MethodCaching(String methods, int size, long ttlNanos, Class<?> clazz) {
+		this.methods = methods;
+		this.size = size;
+		this.ttlNanos = ttlNanos;
+		Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>();
+		for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+			collectInterfaces(c, interfaces);
+		}
+		if (interfaces.isEmpty()) {
+			throw new InvalidBeanConfigException("Class " + clazz.getName() + " implements no interface to cache methods of.");
+		}
+		this.interfaces = interfaces.toArray(new Class<?>[interfaces.size()]);
+		List<Pattern> patterns = new ArrayList<Pattern>();
+		for (String name : methods.split(",")) {
+			if (!"".equals(name.trim())) {
+				patterns.add(Pattern.compile(Pattern.quote(name.trim()).replace("*", "\\E.*\\Q")));
+			}
+		}
+		Map<String, Method> bySignature = new LinkedHashMap<String, Method>();
+		for (Class<?> type : this.interfaces) {
+			for (Method method : type.getMethods()) {
+				String signature = method.getName() + Arrays.toString(method.getParameterTypes());
+				if (!bySignature.containsKey(signature)) {
+					bySignature.put(signature, method);
+				}
+			}
+		}
+		try {
+			bySignature.put("equals", Object.class.getMethod("equals", Object.class));
+			bySignature.put("hashCode", Object.class.getMethod("hashCode"));
+			bySignature.put("toString", Object.class.getMethod("toString"));
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+		this.dispatched = bySignature.values().toArray(new Method[bySignature.size()]);
+		this.invokers = new MethodHandle[this.dispatched.length];
+		this.cached = new boolean[this.dispatched.length];
+		boolean any = false;
+		int equalsIndex = -1;
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		for (int i = 0; i < this.dispatched.length; i++) {
+			Method method = this.dispatched[i];
+			try {
+				method.setAccessible(true);
+				this.invokers[i] = lookup.unreflect(method)
+						.asSpreader(Object[].class, method.getParameterTypes().length).asType(INVOKER_TYPE);
+			} catch (Exception e) {
+				throw new InvalidBeanConfigException("Can not call " + method + " of " + clazz.getName() + ".", e);
+			}
+			if (equalsIndex < 0 && method.getName().equals("equals")
+					&& Arrays.equals(method.getParameterTypes(), new Class<?>[] {Object.class})) {
+				equalsIndex = i;
+			}
+			if (method.getDeclaringClass() != Object.class && method.getReturnType() != void.class) {
+				for (Pattern pattern : patterns) {
+					if (pattern.matcher(method.getName()).matches()) {
+						this.cached[i] = true;
+						any = true;
+						break;
+					}
+				}
+			}
+		}
+		if (!any) {
+			throw new InvalidBeanConfigException("No interface method of " + clazz.getName() + " returning a value matches " + methods + ".");
+		}
+		this.equalsIndex = equalsIndex;
+	}
+
+	private static void collectInterfaces(Class<?> type, Set<Class<?>> interfaces) {
+		for (Class<?> i : type.getInterfaces()) {
+			if (interfaces.add(i)) {
+				collectInterfaces(i, interfaces);
+			}
+		}
+	}
+
+	/**
+	 * Parse the caching attributes of a bean.
+	 * @param methods the 'cache-methods' attribute, comma separated names.
+	 * @param size the 'cache-size' attribute.
+	 * @param ttl the 'ttl' attribute, such as '30s'.
+	 * @param clazz the class of the bean.
+	 * @return the caching, null if no method is cached.
+	 * @throws InvalidBeanConfigException if an attribute is invalid, or set without methods,
+	 * or no method of the interfaces of the class can be cached.
+	 */
+	static MethodCaching parse(String methods, String size, String ttl, Class<?> clazz) {
+		boolean hasSize = size != null && !"".equals(size);
+		boolean hasTtl = ttl != null && !"".equals(ttl);
+		if (methods == null || "".equals(methods.trim())) {
+			if (hasSize || hasTtl) {
+				throw new InvalidBeanConfigException("cache-size and ttl need cache-methods.");
+			}
+			return null;
+		}
+		try {
+			int entries = hasSize ? (Integer) ValueConverters.convert(size, int.class) : DEFAULT_SIZE;
+			long ttlNanos = hasTtl ? ((Duration) ValueConverters.convert(ttl, Duration.class)).toNanos() : 0;
+			return create(methods, entries, ttlNanos, clazz);
+		} catch (IllegalArgumentException e) {
+			throw new InvalidBeanConfigException("Invalid cache-size or ttl: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @param methods comma separated names, '*' matching any characters.
+	 * @param size results cached per method, positive.
+	 * @param ttlNanos how long results are cached, 0 for ever.
+	 * @param clazz the class of the bean.
+	 * @return the caching.
+	 * @throws InvalidBeanConfigException if no method of the interfaces of the class can be cached.
+	 */
+	static MethodCaching create(String methods, int size, long ttlNanos, Class<?> clazz) {
+		if (size <= 0 || ttlNanos < 0) {
+			throw new InvalidBeanConfigException("cache-size must be positive and ttl not negative.");
+		}
+		return new MethodCaching(methods, size, ttlNanos, clazz);
+	}
+
+	String getMethods() {
+		return methods;
+	}
+
+	int getSize() {
+		return size;
+	}
+
+	long getTtlNanos() {
+		return ttlNanos;
+	}
+
+	/**
+	 * @param other another caching, or null.
+	 * @return true if both cache the same methods the same way.
+	 */
+	boolean sameAs(MethodCaching other) {
+		return other != null && this.methods.equals(other.methods) && this.size == other.size && this.ttlNanos == other.ttlNanos;
+	}
+
+	/**
+	 * @param type a type a bean may be referred to or looked up by.
+	 * @return true if the proxy of the bean is an instance of the type.
+	 */
+	boolean exposes(Class<?> type) {
+		if (type == Object.class) {
+			return true;
+		}
+		for (Class<?> i : this.interfaces) {
+			if (type.isAssignableFrom(i)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	Class<?>[] getInterfaces() {
+		return interfaces;
+	}
+
+	/**
+	 * @param bean the bean, an instance of the class.
+	 * @return the proxy memoizing the bean.
+	 */
+	Object proxy(Object bean) {
+		ClassLoader classLoader = bean.getClass().getClassLoader();
+		return Proxy.newProxyInstance(classLoader != null ? classLoader : getClass().getClassLoader(),
+				this.interfaces, new Memoizer(bean));
+	}
+
+	/*
+	 * Results cached by a proxy, all methods included.
+	 */
+	static int cachedResults(Object proxy) {
+		int results = 0;
+		for (MethodCache cache : ((Memoizer) Proxy.getInvocationHandler(proxy)).caches) {
+			if (cache != null) {
+				results += cache.size();
+			}
+		}
+		return results;
+	}
+
+	/*
+	 * The arguments of equals with a proxy argument replaced by its bean, so that a proxy
+	 * equals itself when the bean does, as in sets and as map keys.
+	 */
+	private static Object[] unwrapProxy(Object[] args) {
+		Object arg = args[0];
+		if (arg != null && Proxy.isProxyClass(arg.getClass())) {
+			InvocationHandler handler = Proxy.getInvocationHandler(arg);
+			if (handler instanceof Memoizer) {
+				return new Object[] {((Memoizer) handler).target};
+			}
+		}
+		return args;
+	}
+
+	/*
+	 * The index of a method a proxy is invoked with. A method met for the first time is
+	 * matched by signature, then found by identity.
+	 */
+	private int indexOf(Method method) {
+		Integer index = this.indexes.get(method);
+		if (index != null) {
+			return index;
+		}
+		for (int i = 0; i < this.dispatched.length; i++) {
+			Method candidate = this.dispatched[i];
+			if (candidate.getName().equals(method.getName())
+					&& Arrays.equals(candidate.getParameterTypes(), method.getParameterTypes())) {
+				synchronized (this) {
+					Map<Method, Integer> indexes = new IdentityHashMap<Method, Integer>(this.indexes);
+					indexes.put(method, i);
+					this.indexes = indexes;
+				}
+				return i;
+			}
+		}
+		throw new IllegalStateException("Unknown method " + method);
+	}
+
+	/*
+	 * The key of arguments: a constant without arguments, the argument itself if there is
+	 * one, boxed primitives included, a value comparing all arguments otherwise.
+	 */
+	private static Object keyOf(Object[] args) {
+		if (args.length == 0) {
+			return NO_ARGS_KEY;
+		}
+		if (args.length == 1) {
+			Object arg = args[0];
+			if (arg == null) {
+				return NULL;
+			}
+			return arg.getClass().isArray() ? new ArgumentsKey(args.clone()) : arg;
+		}
+		return new ArgumentsKey(args.clone());
+	}
+
+	private static final class ArgumentsKey {
+		private final Object[] args;
+		private final int hash;
+
+		ArgumentsKey(Object[] args) {
+			this.args = args;
+			this.hash = Arrays.deepHashCode(args);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof ArgumentsKey && Arrays.deepEquals(this.args, ((ArgumentsKey) obj).args);
+		}
+	}
+
+	private static final class Result {
+		final Object value;
+		final long expiresAt;
+
+		Result(Object value, long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	/*
+	 * An LRU of results, guarded by itself.
+	 */
+	@SuppressWarnings("serial")
+	private static final class Stripe extends LinkedHashMap<Object, Result> {
+		private final int capacity;
+
+		Stripe(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Object, Result> eldest) {
+			return size() > this.capacity;
+		}
+	}
+
+	/*
+	 * Results of one method of one bean, split in stripes by the hashes of their keys. The
+	 * first stripes hold one more result if the size does not divide evenly, so that they
+	 * hold size results in total.
+	 */
+	private final class MethodCache {
+		private final Stripe[] stripes;
+
+		MethodCache() {
+			int count = Math.min(MAX_STRIPES, Integer.highestOneBit(size));
+			this.stripes = new Stripe[count];
+			for (int i = 0; i < count; i++) {
+				this.stripes[i] = new Stripe(size / count + (i < size % count ? 1 : 0));
+			}
+		}
+
+		int size() {
+			int results = 0;
+			for (Stripe stripe : this.stripes) {
+				synchronized (stripe) {
+					results += stripe.size();
+				}
+			}
+			return results;
+		}
+
+		private Stripe stripeOf(Object key) {
+			int hash = key.hashCode();
+			return this.stripes[(hash ^ (hash >>> 16)) & (this.stripes.length - 1)];
+		}
+
+		/*
+		 * The live result of a key, null if there is none.
+		 */
+		Result get(Object key) {
+			Stripe stripe = stripeOf(key);
+			synchronized (stripe) {
+				Result result = stripe.get(key);
+				if (result != null && ttlNanos > 0 && System.nanoTime() - result.expiresAt >= 0) {
+					stripe.remove(key);
+					return null;
+				}
+				return result;
+			}
+		}
+
+		void put(Object key, Object value) {
+			Stripe stripe = stripeOf(key);
+			Result result = new Result(value, ttlNanos > 0 ? System.nanoTime() + ttlNanos : 0);
+			synchronized (stripe) {
+				stripe.put(key, result);
+			}
+		}
+	}
+
+	/*
+	 * Handles the invocations of a proxy.
+	 */
+	private final class Memoizer implements InvocationHandler {
+		private final Object target;
+
+		// By method index, null for methods called through.
+		private final MethodCache[] caches;
+
+		Memoizer(Object target) {
+			this.target = target;
+			this.caches = new MethodCache[dispatched.length];
+			for (int i = 0; i < this.caches.length; i++) {
+				if (cached[i]) {
+					this.caches[i] = new MethodCache();
+				}
+			}
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			int index = indexOf(method);
+			Object[] arguments = args == null ? NO_ARGS : args;
+			if (index == equalsIndex) {
+				arguments = unwrapProxy(arguments);
+			}
+			MethodCache cache = this.caches[index];
+			if (cache == null) {
+				return (Object) invokers[index].invokeExact(this.target, arguments);
+			}
+			Object key = keyOf(arguments);
+			Result result = cache.get(key);
+			if (result != null) {
+				return result.value == NULL ? null : result.value;
+			}
+			Object value = (Object) invokers[index].invokeExact(this.target, arguments);
+			cache.put(key, value == null ? NULL : value);
+			return value;
+		}
+	}
+}
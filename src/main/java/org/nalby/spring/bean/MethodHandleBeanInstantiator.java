@@ -0,0 +1,47 @@
+package org.nalby.spring.bean;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+
+/**
+ * Instantiates beans through method handles. The constructor handle takes an Object[] and
+ * setter handles take (Object, Object), so they are invoked exactly without any further
+ * adaptation per call.
+ */
+class MethodHandleBeanInstantiator implements BeanInstantiator {
+
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+	private final MethodHandle constructor;
+
+	private final MethodHandle[] setters;
+
+	MethodHandleBeanInstantiator(Constructor<?> constructor, Method[] setters) {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		try {
+			int arity = constructor.getParameterTypes().length;
+			this.constructor = lookup.unreflectConstructor(constructor)
+					.asType(MethodType.genericMethodType(arity))
+					.asSpreader(Object[].class, arity);
+			this.setters = new MethodHandle[setters.length];
+			for (int i = 0; i < setters.length; i++) {
+				this.setters[i] = lookup.unreflect(setters[i]).asType(SETTER_TYPE);
+			}
+		} catch (IllegalAccessException e) {
+			throw new InvalidBeanConfigException(e);
+		}
+	}
+
+	@Override
+	public Object newInstance(Object[] args) throws Throwable {
+		return (Object) this.constructor.invokeExact(args);
+	}
+
+	@Override
+	public void invokeSetter(int index, Object bean, Object value) throws Throwable {
+		this.setters[index].invokeExact(bean, value);
+	}
+}
@@ -0,0 +1,144 @@
+package org.nalby.spring.bean;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.nalby.spring.util.Assert;
+
+/**
+ * Creates the beans of a dependency graph on an executor. A bean is submitted as soon as
+ * all beans it refers to are created, so beans that do not depend on each other are
+ * created concurrently. Beans depending on a failed bean are skipped, hence which beans
+ * fail does not depend on scheduling and failures are reported in declaration order.
+ */
+class ParallelBeanCreator<T extends AbstractBeanDefinition> {
+
+	private final BeanDependencyGraph<T> graph;
+
+	private final Executor executor;
+
+	// Number of unresolved references of each bean.
+	private final AtomicIntegerArray remaining;
+
+	private final AtomicReferenceArray<Throwable> failures;
+
+	// Submitted tasks that have not finished yet.
+	private final AtomicInteger running;
+
+	private final CountDownLatch finished;
+
+	ParallelBeanCreator(BeanDependencyGraph<T> graph, Executor executor) {
+		Assert.notNull(graph, "Graph can not be null.");
+		Assert.notNull(executor, "Executor can not be null.");
+		this.graph = graph;
+		this.executor = executor;
+		this.remaining = new AtomicIntegerArray(graph.size());
+		this.failures = new AtomicReferenceArray<Throwable>(graph.size());
+		this.running = new AtomicInteger();
+		this.finished = new CountDownLatch(1);
+	}
+
+	/**
+	 * Create all beans and wait for them.
+	 * @throws InvalidBeanConfigException if any bean could not be created, the cause is the
+	 * failure of the first failed bean in declaration order.
+	 */
+	void createBeans() {
+		if (this.graph.size() == 0) {
+			return;
+		}
+		// Hold one extra count so that finishing early tasks do not release the latch
+		// before all roots are submitted.
+		this.running.incrementAndGet();
+		for (int i = 0; i < this.graph.size(); i++) {
+			this.remaining.set(i, this.graph.referenceCount(i));
+		}
+		for (int i = 0; i < this.graph.size(); i++) {
+			if (this.graph.referenceCount(i) == 0) {
+				submit(i);
+			}
+		}
+		taskDone();
+		try {
+			this.finished.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InvalidBeanConfigException(e);
+		}
+		reportFailures();
+	}
+
+	private void submit(final int index) {
+		this.running.incrementAndGet();
+		try {
+			this.executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					create(index);
+				}
+			});
+		} catch (Throwable e) {
+			this.failures.set(index, e);
+			taskDone();
+		}
+	}
+
+	private void create(int index) {
+		try {
+			T definition = this.graph.get(index);
+			if (definition.isCreatedAtStartup()) {
+				definition.getBean();
+			} else {
+				definition.validate();
+			}
+			for (int dependentIndex : this.graph.dependentIndexes(index)) {
+				T dependent = this.graph.get(dependentIndex);
+				synchronized (dependent) {
+					dependent.onOtherBeanCreated(definition);
+				}
+				if (this.remaining.decrementAndGet(dependentIndex) == 0) {
+					submit(dependentIndex);
+				}
+			}
+		} catch (Throwable e) {
+			this.failures.set(index, e);
+		} finally {
+			taskDone();
+		}
+	}
+
+	private void taskDone() {
+		if (this.running.decrementAndGet() == 0) {
+			this.finished.countDown();
+		}
+	}
+
+	private void reportFailures() {
+		InvalidBeanConfigException report = null;
+		StringBuilder message = new StringBuilder("Failed to create beans:");
+		for (int i = 0; i < this.graph.size(); i++) {
+			Throwable failure = this.failures.get(i);
+			if (failure != null) {
+				message.append(' ').append(this.graph.get(i).getId()).append(" (").append(failure).append(')');
+			}
+		}
+		for (int i = 0; i < this.graph.size(); i++) {
+			Throwable failure = this.failures.get(i);
+			if (failure == null) {
+				continue;
+			}
+			if (report == null) {
+				report = new InvalidBeanConfigException(message.append('.').toString(), failure);
+			} else {
+				report.addSuppressed(failure);
+			}
+		}
+		if (report != null) {
+			throw report;
+		}
+	}
+
+}
@@ -0,0 +1,38 @@
+package org.nalby.spring.bean;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Instantiates beans through core reflection.
+ */
+class ReflectionBeanInstantiator implements BeanInstantiator {
+
+	private final Constructor<?> constructor;
+
+	private final Method[] setters;
+
+	ReflectionBeanInstantiator(Constructor<?> constructor, Method[] setters) {
+		this.constructor = constructor;
+		this.setters = setters.clone();
+	}
+
+	@Override
+	public Object newInstance(Object[] args) throws Throwable {
+		try {
+			return this.constructor.newInstance(args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	@Override
+	public void invokeSetter(int index, Object bean, Object value) throws Throwable {
+		try {
+			this.setters[index].invoke(bean, value);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package org.nalby.spring.bean;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds the request scoped beans of one HTTP request. A scope is bound to the thread
+ * serving the request while it is served, and is used by one thread at a time.
+ */
+public final class RequestScope {
+
+	private static final ThreadLocal<RequestScope> current = new ThreadLocal<RequestScope>();
+
+	// Beans by id, allocated on the first request scoped bean.
+	private Map<String, Object> beans;
+
+	/**
+	 * Bind this scope to the current thread.
+	 * @return the scope bound before, to be passed to {@link #restore(RequestScope)}.
+	 */
+	public RequestScope bind() {
+		RequestScope previous = current.get();
+		current.set(this);
+		return previous;
+	}
+
+	/**
+	 * Bind back the scope returned by {@link #bind()}.
+	 * @param previous the scope, null to unbind.
+	 */
+	public static void restore(RequestScope previous) {
+		if (previous == null) {
+			current.remove();
+		} else {
+			current.set(previous);
+		}
+	}
+
+	Object getBean(AbstractBeanDefinition definition) {
+		if (this.beans == null) {
+			this.beans = new HashMap<String, Object>(4);
+		}
+		Object bean = this.beans.get(definition.getId());
+		if (bean == null) {
+			bean = definition.newInstance();
+			this.beans.put(definition.getId(), bean);
+		}
+		return bean;
+	}
+
+	/**
+	 * @param beanId the id of the bean requested, for the error message.
+	 * @return the scope bound to the current thread.
+	 * @throws IllegalStateException if no scope is bound.
+	 */
+	static RequestScope current(String beanId) {
+		RequestScope scope = current.get();
+		if (scope == null) {
+			throw new IllegalStateException("Request scoped bean " + beanId + " requested outside of a request.");
+		}
+		return scope;
+	}
+}
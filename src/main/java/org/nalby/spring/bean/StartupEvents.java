@@ -0,0 +1,107 @@
+package org.nalby.spring.bean;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder events of the container startup, to be lined up with gc and class loading
+ * in Mission Control. The jdk.jfr classes are only touched when {@link #AVAILABLE}, so the
+ * container still runs on jdks without them.
+ */
+final class StartupEvents {
+
+	static final boolean AVAILABLE = isAvailable();
+
+	private StartupEvents() {
+	}
+
+	private static boolean isAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event", false, StartupEvents.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		} catch (LinkageError e) {
+			return false;
+		}
+	}
+
+	@Name("org.nalby.spring.BeanCreation")
+	@Label("Bean Creation")
+	@Category({"Spring", "Startup"})
+	@Description("Instantiation and property injection of a singleton bean.")
+	static class BeanCreationEvent extends Event {
+		@Label("Bean Id")
+		String beanId;
+
+		@Label("Bean Class")
+		Class<?> beanClass;
+	}
+
+	@Name("org.nalby.spring.StartupPhase")
+	@Label("Startup Phase")
+	@Category({"Spring", "Startup"})
+	@Description("A phase of creating the beans of a context.")
+	static class StartupPhaseEvent extends Event {
+		@Label("Phase")
+		String phase;
+
+		@Label("Beans")
+		int beans;
+	}
+
+	/**
+	 * @return a started bean creation event, null if flight recorder is not available or
+	 * the event is disabled.
+	 */
+	static Object beginBeanCreation() {
+		if (!AVAILABLE) {
+			return null;
+		}
+		BeanCreationEvent event = new BeanCreationEvent();
+		if (!event.isEnabled()) {
+			return null;
+		}
+		event.begin();
+		return event;
+	}
+
+	static void commitBeanCreation(Object event, AbstractBeanDefinition definition) {
+		if (event == null) {
+			return;
+		}
+		BeanCreationEvent creation = (BeanCreationEvent) event;
+		creation.beanId = definition.getId();
+		creation.beanClass = definition.getBeanClass();
+		creation.commit();
+	}
+
+	/**
+	 * @return a started phase event, null if flight recorder is not available or the event
+	 * is disabled.
+	 */
+	static Object beginPhase() {
+		if (!AVAILABLE) {
+			return null;
+		}
+		StartupPhaseEvent event = new StartupPhaseEvent();
+		if (!event.isEnabled()) {
+			return null;
+		}
+		event.begin();
+		return event;
+	}
+
+	static void commitPhase(Object event, String phase, int beans) {
+		if (event == null) {
+			return;
+		}
+		StartupPhaseEvent phaseEvent = (StartupPhaseEvent) event;
+		phaseEvent.phase = phase;
+		phaseEvent.beans = beans;
+		phaseEvent.commit();
+	}
+}
@@ -0,0 +1,191 @@
+package org.nalby.spring.bean;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where the time of {@link XmlBeansHandler#createBeans()} went: wall time of each phase,
+ * time of each step summed over beans, the slowest beans, and the critical path, the chain
+ * of references whose creation times add up the most, which bounds how fast beans can be
+ * created however many threads create them.
+ */
+public final class StartupReport {
+
+	/**
+	 * Number of slowest beans reported.
+	 */
+	public static final int SLOWEST_BEANS = 10;
+
+	private final int beans;
+
+	private final Map<String, Long> phaseNanos;
+
+	private final Map<String, Long> stepNanos;
+
+	private final List<AbstractBeanDefinition> slowestBeans;
+
+	private final List<String> criticalPath;
+
+	private final long criticalPathNanos;
+
+	private StartupReport(int beans, Map<String, Long> phaseNanos, Map<String, Long> stepNanos,
+			List<AbstractBeanDefinition> slowestBeans, List<String> criticalPath, long criticalPathNanos) {
+		this.beans = beans;
+		this.phaseNanos = Collections.unmodifiableMap(phaseNanos);
+		this.stepNanos = Collections.unmodifiableMap(stepNanos);
+		this.slowestBeans = slowestBeans;
+		this.criticalPath = Collections.unmodifiableList(criticalPath);
+		this.criticalPathNanos = criticalPathNanos;
+	}
+
+	/**
+	 * Build the report of beans just created.
+	 * @param graph the graph the beans were created from.
+	 * @param phaseNanos wall time of each phase, in the order they ran.
+	 * @return the report.
+	 */
+	static StartupReport build(BeanDependencyGraph<? extends AbstractBeanDefinition> graph, Map<String, Long> phaseNanos) {
+		int size = graph.size();
+		Map<String, Long> stepNanos = new LinkedHashMap<String, Long>();
+		long classLoad = 0, parse = 0, instantiate = 0, inject = 0;
+		List<AbstractBeanDefinition> definitions = new ArrayList<AbstractBeanDefinition>(size);
+		for (int i = 0; i < size; i++) {
+			BeanTimings timings = graph.get(i).timings;
+			classLoad += timings.classLoadNanos;
+			parse += timings.parseNanos;
+			instantiate += timings.instantiateNanos;
+			inject += timings.injectNanos;
+			definitions.add(graph.get(i));
+		}
+		stepNanos.put("class loading", classLoad);
+		stepNanos.put("parsing", parse);
+		stepNanos.put("instantiation", instantiate);
+		stepNanos.put("injection", inject);
+		Collections.sort(definitions, new Comparator<AbstractBeanDefinition>() {
+			@Override
+			public int compare(AbstractBeanDefinition o1, AbstractBeanDefinition o2) {
+				return Long.compare(o2.timings.creationNanos(), o1.timings.creationNanos());
+			}
+		});
+		List<AbstractBeanDefinition> slowest = new ArrayList<AbstractBeanDefinition>();
+		for (AbstractBeanDefinition definition : definitions) {
+			if (slowest.size() == SLOWEST_BEANS || definition.timings.creationNanos() == 0) {
+				break;
+			}
+			slowest.add(definition);
+		}
+		// finish[i] is the longest chain of creation times ending with bean i, beans are
+		// visited after the beans they refer to.
+		long[] finish = new long[size];
+		int[] previous = new int[size];
+		int last = -1;
+		for (int index : graph.topologicalIndexes()) {
+			finish[index] += graph.get(index).timings.creationNanos();
+			if (last < 0 || finish[index] > finish[last]) {
+				last = index;
+			}
+			for (int dependent : graph.dependentIndexes(index)) {
+				if (finish[index] > finish[dependent]) {
+					finish[dependent] = finish[index];
+					previous[dependent] = index + 1;
+				}
+			}
+		}
+		LinkedList<String> path = new LinkedList<String>();
+		for (int index = last; index >= 0; index = previous[index] - 1) {
+			path.addFirst(graph.get(index).getId());
+		}
+		return new StartupReport(size, phaseNanos, stepNanos, slowest, path, last < 0 ? 0 : finish[last]);
+	}
+
+	/**
+	 * @return the number of beans.
+	 */
+	public int getBeanCount() {
+		return beans;
+	}
+
+	/**
+	 * @return wall time of each phase in nanoseconds, such as 'read', 'sort' and 'create'.
+	 */
+	public Map<String, Long> getPhaseNanos() {
+		return phaseNanos;
+	}
+
+	/**
+	 * @return time of each step summed over beans in nanoseconds, which exceeds wall time
+	 * when beans are created in parallel.
+	 */
+	public Map<String, Long> getStepNanos() {
+		return stepNanos;
+	}
+
+	/**
+	 * @return ids of the beans that took the longest to create, slowest first.
+	 */
+	public List<String> getSlowestBeans() {
+		List<String> ids = new ArrayList<String>(this.slowestBeans.size());
+		for (AbstractBeanDefinition definition : this.slowestBeans) {
+			ids.add(definition.getId());
+		}
+		return ids;
+	}
+
+	/**
+	 * @return ids of the beans on the critical path, each referred to by the next one.
+	 */
+	public List<String> getCriticalPath() {
+		return criticalPath;
+	}
+
+	/**
+	 * @return the creation time of the beans on the critical path, in nanoseconds.
+	 */
+	public long getCriticalPathNanos() {
+		return criticalPathNanos;
+	}
+
+	private static String millis(long nanos) {
+		return String.format("%.1f ms", nanos / 1000000.0);
+	}
+
+	private static void appendTimes(StringBuilder builder, Map<String, Long> nanos) {
+		String separator = "";
+		for (Map.Entry<String, Long> entry : nanos.entrySet()) {
+			builder.append(separator).append(entry.getKey()).append(' ').append(millis(entry.getValue()));
+			separator = ", ";
+		}
+	}
+
+	@Override
+	public String toString() {
+		long total = 0;
+		for (long nanos : this.phaseNanos.values()) {
+			total += nanos;
+		}
+		StringBuilder builder = new StringBuilder();
+		builder.append("Created ").append(this.beans).append(" beans in ").append(millis(total)).append(" (");
+		appendTimes(builder, this.phaseNanos);
+		builder.append(").\nSummed over beans: ");
+		appendTimes(builder, this.stepNanos);
+		builder.append(".\nSlowest beans:");
+		for (AbstractBeanDefinition definition : this.slowestBeans) {
+			BeanTimings timings = definition.timings;
+			builder.append("\n  ").append(definition.getId()).append(' ').append(millis(timings.creationNanos()))
+				.append(" (instantiation ").append(millis(timings.instantiateNanos))
+				.append(", injection ").append(millis(timings.injectNanos)).append(')');
+		}
+		builder.append("\nCritical path ").append(millis(this.criticalPathNanos)).append(": ");
+		String separator = "";
+		for (String id : this.criticalPath) {
+			builder.append(separator).append(id);
+			separator = " -> ";
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,136 @@
+package org.nalby.spring.bean;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.nalby.spring.util.Assert;
+
+/**
+ * Reads bean definitions by streaming the xml with an {@link XMLStreamReader}. Only the
+ * <bean> elements are kept in memory rather than the whole document, then they are turned
+ * into definitions, on the executor if one is set. Beans are validated the same way as
+ * {@link XmlBeanDefinition#parseXmlBeanElement(org.w3c.dom.Element)} does.
+ */
+public class StaxBeanDefinitionReader implements BeanDefinitionReader {
+
+	private final InputStream inputStream;
+
+	private final List<String> imports = new ArrayList<String>();
+
+	private Executor executor;
+
+	/**
+	 * @param inputStream the xml, not closed by this reader.
+	 */
+	public StaxBeanDefinitionReader(InputStream inputStream) {
+		Assert.notNull(inputStream, "Input stream can not be null.");
+		this.inputStream = inputStream;
+	}
+
+	/**
+	 * Load and validate bean classes on the given executor instead of the calling thread.
+	 * @param executor the executor, or null to validate beans on the calling thread.
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	static XMLInputFactory newInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+		return factory;
+	}
+
+	@Override
+	public List<XmlBeanDefinition> readBeanDefinitions() {
+		List<XmlElement> elements = new ArrayList<XmlElement>();
+		boolean defaultLazyInit = false;
+		XMLStreamReader reader = null;
+		try {
+			reader = newInputFactory().createXMLStreamReader(this.inputStream);
+			int depth = 0;
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.END_ELEMENT) {
+					depth--;
+				} else if (event == XMLStreamConstants.START_ELEMENT) {
+					depth++;
+					if (depth == 1) {
+						defaultLazyInit = XmlBeanDefinition.parseLazyInit(
+								reader.getAttributeValue(null, XmlBeansHandler.DEFAULT_LAZY_INIT_ATTRIBUTE), false);
+					}
+					// Beans are children of the root element.
+					if (depth == 2 && XmlBeansHandler.BEAN_ELEMENT.equalsIgnoreCase(reader.getLocalName())) {
+						elements.add(readElement(reader));
+						depth--;
+					} else if (depth == 2 && XmlBeansHandler.IMPORT_ELEMENT.equalsIgnoreCase(reader.getLocalName())) {
+						this.imports.add(readImport(reader));
+					}
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new InvalidBeanConfigException(e);
+		} finally {
+			close(reader);
+		}
+		return BeanElementParser.parse(elements, defaultLazyInit, this.executor);
+	}
+
+	/**
+	 * @return the resource attributes of the <import> elements read by
+	 * {@link #readBeanDefinitions()}, in declaration order. Imports are not followed by this
+	 * reader, see {@link XmlFilesBeanDefinitionReader}.
+	 */
+	public List<String> getImports() {
+		return imports;
+	}
+
+	/*
+	 * The resource of the current <import> element.
+	 */
+	static String readImport(XMLStreamReader reader) {
+		String resource = reader.getAttributeValue(null, XmlBeansHandler.RESOURCE_ATTRIBUTE);
+		if (resource == null || "".equals(resource.trim())) {
+			throw new InvalidBeanConfigException("Import element without resource.");
+		}
+		return resource.trim();
+	}
+
+	/*
+	 * Read the current element and its descendants, the reader is left at the end of the element.
+	 */
+	private static XmlElement readElement(XMLStreamReader reader) throws XMLStreamException {
+		XmlElement element = new XmlElement(reader.getLocalName());
+		for (int i = 0; i < reader.getAttributeCount(); i++) {
+			element.setAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+		}
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				element.addChild(readElement(reader));
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				break;
+			}
+		}
+		return element;
+	}
+
+	private static void close(XMLStreamReader reader) {
+		if (reader == null) {
+			return;
+		}
+		try {
+			reader.close();
+		} catch (XMLStreamException e) {
+			// Ignore, the stream itself is closed by its owner.
+		}
+	}
+}
@@ -2,24 +2,24 @@ package org.nalby.spring.bean;
 
 
 import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.nalby.spring.util.Assert;
+import org.nalby.spring.util.ValueConverters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /**
  * Class to describe a bean including id, class, and dependent beans or values.
- * Currently it can only create a singleton bean and is not thread-safe.
+ * A singleton is created once even if requested from several threads at the same time,
+ * prototype and request scoped beans reuse the constructor and setters resolved at startup.
  */
 public class XmlBeanDefinition extends AbstractBeanDefinition {
 	/**
@@ -33,114 +33,298 @@ public class XmlBeanDefinition extends AbstractBeanDefinition {
 
 	private static final Logger logger = LoggerFactory.getLogger(XmlBeanDefinition.class);
 	
-	private XmlBeanDefinition(List<String> dependentBeanNames, Map<String, BeanArg> ctorArgs,
+	/*
+	 * How to build one argument of the constructor or a setter, resolved once.
+	 */
+	private static class ArgumentPlan {
+		final BeanArg arg;
+		final Class<?> type;
+		// Position of the referred bean among the referenced ones, -1 for literals.
+		final int reference;
+
+		ArgumentPlan(BeanArg arg, Class<?> type, int reference) {
+			this.arg = arg;
+			this.type = type;
+			this.reference = reference;
+		}
+	}
+
+	private static final Object[] NO_ARGS = new Object[0];
+
+	// Null for definitions of generated code, whose constructor and setters are resolved, and
+	// once the creation state is released.
+	private BeanClassMetadata metadata;
+
+	// The constructor to create the bean and its arguments, null until resolved.
+	private Constructor<?> constructor;
+	private ArgumentPlan[] constructorArgs;
+
+	// Setters to invoke after construction, in the order properties are declared. Null for
+	// definitions of generated code.
+	private Method[] setters;
+	private ArgumentPlan[] setterArgs;
+
+	private InstantiationStrategy instantiationStrategy = InstantiationStrategy.getDefault();
+
+	// Built from the resolved constructor and setters, null until the first creation, or
+	// until validated for beans that are not singletons.
+	private BeanInstantiator instantiator;
+
+	// The instantiator of generated code calling the constructor and setters directly, used
+	// whatever the strategy. Null for definitions read from xml.
+	private BeanInstantiator generatedInstantiator;
+
+	private XmlBeanDefinition(Set<String> dependentBeanNames, Map<String, BeanArg> ctorArgs,
 			Map<String, BeanArg> propertyArgs, String id, Class<?> clazz) {
 		super(dependentBeanNames, ctorArgs, propertyArgs, id, clazz);
+		this.metadata = BeanClassMetadata.forClass(clazz);
+		this.metadata.assertNoOverloadedSetters();
+		this.setters = new Method[this.propertyArgs.length];
+		this.setterArgs = new ArgumentPlan[this.propertyArgs.length];
+		resolveSetters();
+		resolveConstructor();
+	}
+
+	private XmlBeanDefinition(Set<String> dependentBeanNames, Map<String, BeanArg> ctorArgs, Map<String, BeanArg> propertyArgs,
+			String id, Class<?> clazz, Class<?>[] ctorTypes, Class<?>[] propertyTypes, BeanInstantiator instantiator) {
+		super(dependentBeanNames, ctorArgs, propertyArgs, id, clazz);
+		this.constructorArgs = new ArgumentPlan[ctorTypes.length];
+		for (int i = 0; i < ctorTypes.length; i++) {
+			this.constructorArgs[i] = planConverted(this.ctorArgs[i], ctorTypes[i]);
+		}
+		this.setterArgs = new ArgumentPlan[propertyTypes.length];
+		for (int i = 0; i < propertyTypes.length; i++) {
+			this.setterArgs[i] = planConverted(this.propertyArgs[i], propertyTypes[i]);
+		}
+		this.generatedInstantiator = instantiator;
 	}
 
-	private static String parseId(Element element) {
+	private static String parseId(XmlElement element) {
 		String id = element.getAttribute("id");
 		Assert.notEmptyText(id, "bean id can not be null");
 		Assert.textMatchsRegex(id, "[a-zA-Z][0-9a-zA-Z]+");
 		return id;
 	}
-	
+
+	private void resolveSetters() {
+		for (int i = 0; i < this.propertyNames.length; i++) {
+			Method setter = this.metadata.setterFor(this.propertyNames[i]);
+			if (setter == null) {
+				throw new InvalidBeanConfigException("No setter for property: " + this.propertyNames[i]);
+			}
+			ArgumentPlan plan = planArgument(this.propertyArgs[i], setter.getParameterTypes()[0]);
+			if (plan == null) {
+				throw new InvalidBeanConfigException("Value of property " + this.propertyNames[i] + " is not acceptable.");
+			}
+			this.setters[i] = setter;
+			this.setterArgs[i] = plan;
+		}
+	}
+
 	/*
-	 * Get the nth constructor argument value.
+	 * Choose the first public constructor whose parameters accept all constructor arguments.
+	 * While beans referred to by constructor arguments are unknown, only make sure that some
+	 * constructor accepts the literal arguments, the constructor is chosen once they are known.
 	 */
-	private Object getNthConstructorArg(int n, Class<?> nthArgType) throws Exception {
-		BeanArg arg = this.ctorArgs.get(String.valueOf(n));
-		return buildArgmentValue(arg, nthArgType);
-	}
-	
-	@Override
-	Object createBean() {
-		try {
-			Constructor<?>[] beanConstructors = this.clazz.getConstructors();
-			if (beanConstructors.length == 0 && this.dependentBeans.isEmpty()) {
-				this.bean = this.clazz.newInstance();
-			}
-			for (Constructor<?> beanConstructor : beanConstructors) {
-				Class<?>[] constructorParamTypes = beanConstructor.getParameterTypes();
-				if (constructorParamTypes.length != this.ctorArgs.size()) {
-					continue;
+	private void resolveConstructor() {
+		if (this.constructorArgs != null || this.metadata == null) {
+			return;
+		}
+		for (Constructor<?> candidate : this.metadata.constructorsWithArity(this.ctorArgs.length)) {
+			Class<?>[] paramTypes = candidate.getParameterTypes();
+			ArgumentPlan[] plans = new ArgumentPlan[paramTypes.length];
+			for (int i = 0; i < paramTypes.length && plans != null; i++) {
+				plans[i] = planArgument(this.ctorArgs[i], paramTypes[i]);
+				if (plans[i] == null) {
+					plans = null;
 				}
-				try {
-					Object[] params = new Object[constructorParamTypes.length];
-					for (int i = 0; i < constructorParamTypes.length; i++) {
-						params[i] = getNthConstructorArg(i, constructorParamTypes[i]);
-					}
-					this.bean = beanConstructor.newInstance(params);
-					if (this.bean != null) {
-						return this.bean;
-					}
-				} catch (Throwable e) {
-					// Ignore it since constructors, which have arguments of the same number, may be overloaded.
+			}
+			if (plans != null) {
+				if (hasUnknownConstructorReference()) {
+					return;
 				}
+				this.constructorArgs = plans;
+				this.constructor = candidate;
+				return;
 			}
-		} catch (Throwable e) {
-			logger.error("Got an expection while creating the bean of " + this.id, e);
-			throw new InvalidBeanConfigException(e.getMessage());
 		}
 		throw new UnresolvedBeanDependencyException("Can not find appropriate constructor.");
 	}
-	
-	
-	private Object buildArgmentValue(BeanArg arg, Class<?> argType) throws NoSuchMethodException, SecurityException, InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+
+	private boolean hasUnknownConstructorReference() {
+		for (BeanArg arg : this.ctorArgs) {
+			if (arg.isReference() && referencedBean(arg.getValue()) == null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Plan how to build an argument of the given type, return null if the argument is not
+	 * acceptable to the type.
+	 */
+	private ArgumentPlan planArgument(BeanArg arg, Class<?> argType) {
 		if (arg.isReference()) {
-			if (!this.dependentBeans.containsKey(arg.getValue())) {
-				throw new InvalidBeanConfigException("Argument " + arg.getValue() + " is configured as a ref, but the refered bean can not be found.");
+			BeanDefinition referred = referencedBean(arg.getValue());
+			if (referred != null && !((AbstractBeanDefinition) referred).exposes(ValueConverters.wrap(argType))) {
+				return null;
 			}
-			// The argument refers to another bean.
-			BeanDefinition beanArgDefinition = this.dependentBeans.get(arg.getValue());
-			return beanArgDefinition.getBean();
+			return plan(arg, argType);
 		}
-		// The argument refers to a String.
-		if (argType == String.class) {
-			return arg.getValue();
+		if (!ValueConverters.canConvert(argType)) {
+			return null;
 		}
-		if (!primitiveTypeConverter.containsKey(argType)) {
-			// The argument is neither a bean, nor a string, nor a primitive type.
-			throw new InvalidBeanConfigException("th constructor argument is not recognised:" + argType.getSimpleName());
+		try {
+			// Convert now so that bad literals are found while parsing.
+			arg.getConvertedValue(argType);
+			return plan(arg, argType);
+		} catch (IllegalArgumentException e) {
+			// The literal can not be converted to this type.
+			return null;
 		}
-		// The argument refers to a primitive type.
-		Class<?> argClass = primitiveTypeConverter.get(argType);
-		Constructor<?> argConstructor = argClass.getConstructor(String.class);
-		return argConstructor.newInstance(arg.getValue());
 	}
 
-	@Override
-	Object injectProperties() {
-		for (Method method : this.clazz.getMethods()) {
-			String methodName = method.getName();
-			if (!methodName.startsWith("set")) {
-				continue;
+	private ArgumentPlan plan(BeanArg arg, Class<?> argType) {
+		return new ArgumentPlan(arg, argType, arg.isReference() ? referenceIndex(arg.getValue()) : -1);
+	}
+
+	/*
+	 * Plan an argument of a resolved type, converting a literal now as planArgument does, so
+	 * that it is converted before the definition is published rather than by the first
+	 * threads creating the bean.
+	 */
+	private ArgumentPlan planConverted(BeanArg arg, Class<?> argType) {
+		if (!arg.isReference()) {
+			try {
+				arg.getConvertedValue(argType);
+			} catch (IllegalArgumentException e) {
+				throw new InvalidBeanConfigException("Can not convert " + arg.getValue() + " to " + argType.getName() + ".", e);
 			}
-			String property = methodName.replaceFirst("set", "");
-			property = property.substring(0, 1).toLowerCase() + property.substring(1);
-			if (!this.propertyArgs.containsKey(property)) {
-				continue;
+		}
+		return plan(arg, argType);
+	}
+
+	/*
+	 * The value of an argument for one instance. Plans are shared by all instances of
+	 * prototype and request beans, so literals are converted once but mutable values, arrays,
+	 * are copied for each instance.
+	 */
+	private Object buildArgmentValue(ArgumentPlan plan) {
+		if (plan.reference < 0) {
+			return plan.arg.getConvertedValue(plan.type);
+		}
+		// The argument refers to another bean.
+		BeanDefinition beanArgDefinition = this.referencedBeans[plan.reference];
+		if (beanArgDefinition == null) {
+			throw new InvalidBeanConfigException("Argument " + plan.arg.getValue() + " is configured as a ref, but the refered bean can not be found.");
+		}
+		return beanArgDefinition.getBean();
+	}
+
+	@Override
+	void validate() {
+		resolveConstructor();
+		if (this.scope != BeanScope.SINGLETON && this.instantiator == null) {
+			// Built before the definition is shared, so creating instances only reads it.
+			this.instantiator = newInstantiator();
+		}
+	}
+
+	private BeanInstantiator newInstantiator() {
+		if (this.generatedInstantiator != null) {
+			return this.generatedInstantiator;
+		}
+		return this.instantiationStrategy.newInstantiator(this.constructor, this.setters);
+	}
+
+	@Override
+	void releaseCreationState() {
+		this.metadata = null;
+		this.constructor = null;
+		this.constructorArgs = null;
+		this.setters = null;
+		this.setterArgs = null;
+		this.instantiator = null;
+		this.generatedInstantiator = null;
+	}
+
+	/**
+	 * @return the resolved constructor, null until resolved or for definitions of generated code.
+	 */
+	Constructor<?> getConstructor() {
+		return constructor;
+	}
+
+	/**
+	 * @return setters in the order properties are declared, null for definitions of generated code.
+	 */
+	Method[] getSetters() {
+		return setters;
+	}
+
+	/**
+	 * Choose how the bean is instantiated, must be called before the bean is created.
+	 * @param instantiationStrategy the strategy.
+	 */
+	public void setInstantiationStrategy(InstantiationStrategy instantiationStrategy) {
+		Assert.notNull(instantiationStrategy, "Strategy can not be null.");
+		this.instantiationStrategy = instantiationStrategy;
+		this.instantiator = null;
+	}
+
+	@Override
+	Object createBean() {
+		resolveConstructor();
+		try {
+			if (this.instantiator == null) {
+				this.instantiator = newInstantiator();
 			}
-			Class<?>[] paramTypes = method.getParameterTypes();
-			if (paramTypes.length != 1) {
-				continue;
+			Object[] params = this.constructorArgs.length == 0 ? NO_ARGS : new Object[this.constructorArgs.length];
+			for (int i = 0; i < params.length; i++) {
+				params[i] = buildArgmentValue(this.constructorArgs[i]);
 			}
-			Object argValue;
+			return this.instantiator.newInstance(params);
+		} catch (InvalidBeanConfigException e) {
+			throw e;
+		} catch (Throwable e) {
+			logger.error("Got an expection while creating the bean of " + this.id, e);
+			throw new InvalidBeanConfigException(e);
+		}
+	}
+
+	@Override
+	Object injectProperties(Object instance) {
+		for (int i = 0; i < this.setterArgs.length; i++) {
 			try {
-				argValue = buildArgmentValue(this.propertyArgs.get(property), paramTypes[0]);
-				method.invoke(this.bean, argValue);
-				this.propertyArgs.remove(property);
+				this.instantiator.invokeSetter(i, instance, buildArgmentValue(this.setterArgs[i]));
+			} catch (InvalidBeanConfigException e) {
+				throw e;
 			} catch (Throwable e) {
 				throw new InvalidBeanConfigException("Failed to invoke setter.");
 			}
 		}
-		for (String property: this.propertyArgs.keySet()) {
-			throw new InvalidBeanConfigException("No setter for property: " + property);
-		}
-		return this.bean;
+		return instance;
 	}
 	
-	private static Class<?> parseClass(Element element) throws ClassNotFoundException {
+	/**
+	 * Parse a 'lazy-init' or 'default-lazy-init' attribute.
+	 * @param value the attribute value, 'true', 'false', 'default' or empty.
+	 * @param defaultValue the value to use for 'default' or empty.
+	 * @return whether the bean is lazy.
+	 * @throws InvalidBeanConfigException if the value is none of the above.
+	 */
+	static boolean parseLazyInit(String value, boolean defaultValue) {
+		if (value == null || "".equals(value) || "default".equals(value)) {
+			return defaultValue;
+		}
+		if ("true".equals(value) || "false".equals(value)) {
+			return Boolean.parseBoolean(value);
+		}
+		throw new InvalidBeanConfigException("Invalid lazy-init value: " + value);
+	}
+
+	private static Class<?> parseClass(XmlElement element) throws ClassNotFoundException {
 		String className = element.getAttribute("class");
 		Class<?> clazz = Class.forName(className);
 		assertClassAcceptable(clazz);
@@ -148,7 +332,7 @@ public class XmlBeanDefinition extends AbstractBeanDefinition {
 	}
 	
 
-	private static BeanArg parseBeanArg(Element element, List<String> depedentBeanNames) {
+	private static BeanArg parseBeanArg(XmlElement element, Set<String> depedentBeanNames) {
 		String value = element.getAttribute("value");
 		BeanArgType type = BeanArgType.VALUE;
 		if (value == null || "".equals(value)) {
@@ -185,17 +369,11 @@ public class XmlBeanDefinition extends AbstractBeanDefinition {
 	 * @param beanElement the <bean> element.
 	 * @param ctorArgs the map to hold constructor arguments. Indexed by the 'index' attribute of the <constructor-arg> element.
 	 * @param propertyArgs the map to hold property arguments. Indexed by the 'name' attribute of the <property> element
-	 * @return A String List that contains the names of all dependent beans.
+	 * @return A String Set that contains the names of all dependent beans, in declaration order.
 	 */
-	private static List<String> parseBeanArgs(Element beanElement, Map<String, BeanArg> ctorArgs, Map<String, BeanArg> propertyArgs) {
-		List<String> dependentBeanNames = new LinkedList<String>();
-		NodeList nodeList = beanElement.getChildNodes();
-		for (int i = 0; i < nodeList.getLength(); i++) {
-			Node node = nodeList.item(i);
-			if (node.getNodeType() != Node.ELEMENT_NODE) {
-				continue;
-			}
-			Element e = (Element) node;
+	private static Set<String> parseBeanArgs(XmlElement beanElement, Map<String, BeanArg> ctorArgs, Map<String, BeanArg> propertyArgs) {
+		Set<String> dependentBeanNames = new LinkedHashSet<String>();
+		for (XmlElement e : beanElement.getChildren()) {
 			if (CONSTRUCTOR_ARG_ELEMENT.equals(e.getTagName())) {
 				String index = e.getAttribute("index");
 				Assert.notEmptyText(index, "Index of constructor argument can not be empty.");
@@ -218,21 +396,6 @@ public class XmlBeanDefinition extends AbstractBeanDefinition {
 		return dependentBeanNames;
 	}
 	
-	private static void assertNoOverloadedSetters(Class<?> clazz) {
-		Method[] methods = clazz.getMethods();
-		Map<String, Boolean> setters = new HashMap<String, Boolean>();
-		for (Method method: methods) {
-			String name = method.getName();
-			if (!name.startsWith("set")) {
-				continue;
-			}
-			if (setters.containsKey(name)) {
-				throw new InvalidBeanConfigException("Setter " + name + " is overloaded.");
-			}
-			setters.put(name, true);
-		}
-	}
-	
 	/**
 	 * Parse a <bean> element and return the definition based on the element.
 	 * @param element the <bean> element.
@@ -241,21 +404,135 @@ public class XmlBeanDefinition extends AbstractBeanDefinition {
 	 * the element is not a <bean> element.
 	 */
 	public static XmlBeanDefinition parseXmlBeanElement(Element element) {
+		Assert.notNull(element, "Element can not be null.");
+		return parseBeanElement(XmlElement.fromDom(element), false);
+	}
+
+	/**
+	 * Parse a <bean> element regardless of how it was read.
+	 * @param element the <bean> element.
+	 * @param defaultLazyInit whether the bean is lazy if the element does not tell, usually the
+	 * 'default-lazy-init' attribute of the root element.
+	 * @return a bean definition according to the element.
+	 * @throws InvalidBeanConfigException if the <bean> element is not configured properly or
+	 * the element is not a <bean> element.
+	 */
+	static XmlBeanDefinition parseBeanElement(XmlElement element, boolean defaultLazyInit) {
 		Assert.notNull(element, "Element can not be null.");
 		try {
 			if (!"bean".equals(element.getTagName())) {
 				throw new InvalidBeanConfigException("Not a bean element.");
 			}
+			long start = System.nanoTime();
 			String id = parseId(element);
 			Class<?> clazz = parseClass(element);
-			assertNoOverloadedSetters(clazz);
+			long classLoadNanos = System.nanoTime() - start;
 			Map<String, BeanArg> ctorArgs = new HashMap<String, BeanArg>();
-			Map<String, BeanArg> propertyArgs = new HashMap<String, BeanArg>();
-			List<String> dependentBeanNames = parseBeanArgs(element, ctorArgs, propertyArgs);
-			return new XmlBeanDefinition(dependentBeanNames, ctorArgs, propertyArgs, id, clazz);
+			Map<String, BeanArg> propertyArgs = new LinkedHashMap<String, BeanArg>();
+			Set<String> dependentBeanNames = parseBeanArgs(element, ctorArgs, propertyArgs);
+			XmlBeanDefinition definition = new XmlBeanDefinition(dependentBeanNames, ctorArgs, propertyArgs, id, clazz);
+			definition.lazyInit = parseLazyInit(element.getAttribute("lazy-init"), defaultLazyInit);
+			definition.scope = BeanScope.parse(element.getAttribute("scope"));
+			definition.methodCaching = MethodCaching.parse(element.getAttribute("cache-methods"),
+					element.getAttribute("cache-size"), element.getAttribute("ttl"), clazz);
+			definition.timings.classLoadNanos = classLoadNanos;
+			definition.timings.parseNanos = System.nanoTime() - start - classLoadNanos;
+			return definition;
 		} catch (Throwable e) {
 			logger.error("Failed parse bean element:", e);
 			throw new InvalidBeanConfigException(e);
 		}
 	}
+
+	/**
+	 * Create a definition from arguments that were validated before, such as the ones restored
+	 * from a snapshot. The class is still checked, and the constructor and setters resolved.
+	 * @param id the bean id.
+	 * @param clazz the bean class.
+	 * @param ctorArgs constructor arguments indexed by their positions.
+	 * @param propertyArgs property arguments indexed by property names.
+	 * @param lazyInit whether the bean is lazy.
+	 * @param scope the bean scope.
+	 * @param methodCaching the memoized methods, null if none is.
+	 * @return the definition.
+	 * @throws InvalidBeanConfigException if the definition does not fit the class.
+	 */
+	static XmlBeanDefinition restore(String id, Class<?> clazz, Map<String, BeanArg> ctorArgs,
+			Map<String, BeanArg> propertyArgs, boolean lazyInit, BeanScope scope, MethodCaching methodCaching) {
+		try {
+			long start = System.nanoTime();
+			assertClassAcceptable(clazz);
+			validateConstructorArgs(ctorArgs);
+			Set<String> dependentBeanNames = new LinkedHashSet<String>();
+			for (int i = 0; i < ctorArgs.size(); i++) {
+				BeanArg arg = ctorArgs.get(String.valueOf(i));
+				if (arg.isReference()) {
+					dependentBeanNames.add(arg.getValue());
+				}
+			}
+			for (BeanArg arg : propertyArgs.values()) {
+				if (arg.isReference()) {
+					dependentBeanNames.add(arg.getValue());
+				}
+			}
+			XmlBeanDefinition definition = new XmlBeanDefinition(dependentBeanNames, ctorArgs, propertyArgs, id, clazz);
+			definition.lazyInit = lazyInit;
+			definition.scope = scope;
+			definition.methodCaching = methodCaching;
+			definition.timings.parseNanos = System.nanoTime() - start;
+			return definition;
+		} catch (InvalidBeanConfigException e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new InvalidBeanConfigException(e);
+		}
+	}
+
+	/**
+	 * Create a definition for code generated by {@link BeanFactoryGenerator}, which validated
+	 * the definition and resolved its constructor and setters at build time. Nothing is looked
+	 * up by reflection, the bean is created by the given instantiator.
+	 * @param id the bean id.
+	 * @param clazz the bean class.
+	 * @param ctorArgs constructor arguments in order.
+	 * @param ctorTypes parameter types of the constructor.
+	 * @param properties names of the properties to set, in order.
+	 * @param propertyArgs their arguments.
+	 * @param propertyTypes parameter types of their setters.
+	 * @param lazyInit whether the bean is lazy.
+	 * @param scope the bean scope.
+	 * @param cacheMethods the 'cache-methods' attribute, null if no method is memoized.
+	 * @param cacheSize results cached per memoized method.
+	 * @param cacheTtlNanos how long results are cached, 0 for ever.
+	 * @param instantiator calls the constructor and setters.
+	 * @return the definition.
+	 */
+	public static XmlBeanDefinition generated(String id, Class<?> clazz, BeanArg[] ctorArgs, Class<?>[] ctorTypes,
+			String[] properties, BeanArg[] propertyArgs, Class<?>[] propertyTypes, boolean lazyInit, BeanScope scope,
+			String cacheMethods, int cacheSize, long cacheTtlNanos, BeanInstantiator instantiator) {
+		Assert.notNull(instantiator, "Instantiator can not be null.");
+		Map<String, BeanArg> ctorArgMap = new HashMap<String, BeanArg>();
+		Set<String> dependentBeanNames = new LinkedHashSet<String>();
+		for (int i = 0; i < ctorArgs.length; i++) {
+			ctorArgMap.put(String.valueOf(i), ctorArgs[i]);
+			if (ctorArgs[i].isReference()) {
+				dependentBeanNames.add(ctorArgs[i].getValue());
+			}
+		}
+		Map<String, BeanArg> propertyArgMap = new LinkedHashMap<String, BeanArg>();
+		for (int i = 0; i < propertyArgs.length; i++) {
+			propertyArgMap.put(properties[i], propertyArgs[i]);
+			if (propertyArgs[i].isReference()) {
+				dependentBeanNames.add(propertyArgs[i].getValue());
+			}
+		}
+		XmlBeanDefinition definition = new XmlBeanDefinition(dependentBeanNames, ctorArgMap, propertyArgMap, id, clazz,
+				ctorTypes, propertyTypes, instantiator);
+		definition.lazyInit = lazyInit;
+		definition.scope = scope;
+		if (cacheMethods != null) {
+			definition.methodCaching = MethodCaching.create(cacheMethods, cacheSize, cacheTtlNanos, clazz);
+		}
+		return definition;
+	}
 }
@@ -1,115 +1,267 @@
 package org.nalby.spring.bean;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 
 import org.nalby.spring.util.Assert;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /**
  * Mainly to scan a document(xml file) and create beans defined inside the file.
- *
+ * Once {@link #createBeans()} returns, {@link #getBean(String)} can be called from any thread.
  */
 public class XmlBeansHandler {
 	
-	private Map<String, XmlBeanDefinition> createdBeans;
+	/*
+	 * Created beans, in the order they were created, and indexed by type. Replaced as a whole
+	 * once all beans are created, so readers need neither a lock nor a concurrent map.
+	 */
+	private volatile BeanRegistry<XmlBeanDefinition> registry;
 	
-	/* Beans wait to create. */
+	/* Beans wait to create, in declaration order. */
 	private Map<String, XmlBeanDefinition> pendingBeans;
 	
-	private Document document;
+	private BeanDefinitionReader reader;
+
+	/* Executor to create beans on, beans are created on the calling thread if null. */
+	private Executor executor;
+
+	private InstantiationStrategy instantiationStrategy = InstantiationStrategy.getDefault();
+
+	private volatile StartupReport startupReport;
+
+	private List<String> rebuiltBeans = Collections.emptyList();
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 	
 	public static final String BEAN_ELEMENT = "bean";
+
+	/**
+	 * Element including the beans of another file, named by its resource attribute.
+	 */
+	public static final String IMPORT_ELEMENT = "import";
+
+	public static final String RESOURCE_ATTRIBUTE = "resource";
+
+	/**
+	 * Attribute of the root element, whether beans are lazy unless they tell otherwise.
+	 */
+	public static final String DEFAULT_LAZY_INIT_ATTRIBUTE = "default-lazy-init";
 	
 
 	public XmlBeansHandler(Document document) {
-		Assert.notNull(document, "Document can not be null.");
-		this.document = document;
-		this.pendingBeans = new HashMap<String, XmlBeanDefinition>();
-		this.createdBeans = new HashMap<String, XmlBeanDefinition>();
+		this(new DomBeanDefinitionReader(document));
+	}
+
+	private XmlBeansHandler(BeanDefinitionReader reader) {
+		Assert.notNull(reader, "Reader can not be null.");
+		this.reader = reader;
+		this.pendingBeans = new LinkedHashMap<String, XmlBeanDefinition>();
+		this.registry = new BeanRegistry<XmlBeanDefinition>(Collections.<XmlBeanDefinition>emptyList());
 	}
 	
+	/**
+	 * Create a handler for beans read by the given reader, such as a
+	 * {@link StaxBeanDefinitionReader} to avoid loading the whole document.
+	 * @param reader the reader.
+	 * @return the handler.
+	 */
+	public static XmlBeansHandler fromReader(BeanDefinitionReader reader) {
+		return new XmlBeansHandler(reader);
+	}
+
 	/*
-	 * Find all bean definitions in this.document and mark them as pending, throws an
+	 * Read all bean definitions and mark them as pending, throws an
 	 * InvalidBeanConfigException if duplicated beans are found.
 	 */
-	private void scanBeanDefinitionsInDocument() {
-		Element root = this.document.getDocumentElement();
-		NodeList nodeList = root.getChildNodes();
-		for (int i = 0; i < nodeList.getLength(); i++) {
-			Node node = nodeList.item(i);
-			if (node.getNodeType() == Node.ELEMENT_NODE && BEAN_ELEMENT.equalsIgnoreCase(node.getNodeName())) {
-				XmlBeanDefinition beanDefinition = XmlBeanDefinition.parseXmlBeanElement((Element)node);
-				if (this.pendingBeans.containsKey(beanDefinition.getId())) {
-					throw new InvalidBeanConfigException("Duplcated bean name found: " + beanDefinition.getId());
-				}
-				this.pendingBeans.put(beanDefinition.getId(), beanDefinition);
+	private void scanBeanDefinitions() {
+		for (XmlBeanDefinition beanDefinition : this.reader.readBeanDefinitions()) {
+			beanDefinition.setInstantiationStrategy(this.instantiationStrategy);
+			if (this.pendingBeans.containsKey(beanDefinition.getId())) {
+				throw new InvalidBeanConfigException("Duplcated bean name found: " + beanDefinition.getId());
 			}
+			this.pendingBeans.put(beanDefinition.getId(), beanDefinition);
 		}
+		// Definitions hold all they need, drop the reader and whatever document it parsed.
+		this.reader = null;
 	}
 
 	/*
-	 * Notify all depending beans of the creation of dependent beans.
+	 * Create beans in topological order, notifying only the beans that refer to
+	 * the one just created. Lazy and non singleton beans are only validated, they
+	 * are created when requested or referred to by a bean being created.
 	 */
-	private void notifyBeansCreation(List<XmlBeanDefinition> createdBeans) {
-		for (XmlBeanDefinition beanDefinition: createdBeans) {
-			for (XmlBeanDefinition pendingBean: this.pendingBeans.values()) {
-				pendingBean.onOtherBeanCreated(beanDefinition);
+	private void initBeans(BeanDependencyGraph<XmlBeanDefinition> graph) {
+		List<XmlBeanDefinition> created = new ArrayList<XmlBeanDefinition>(this.registry.getAll());
+		if (this.executor != null) {
+			new ParallelBeanCreator<XmlBeanDefinition>(graph, this.executor).createBeans();
+			for (XmlBeanDefinition beanDefinition: graph.topologicalOrder()) {
+				this.pendingBeans.remove(beanDefinition.getId());
+				created.add(beanDefinition);
 			}
-			this.createdBeans.put(beanDefinition.getId(), beanDefinition);
+			publish(created);
+			return;
 		}
-	}
-	
-	private void initBeans() {
-		boolean hasBeanCreated = false;
-		List<XmlBeanDefinition> createdBeans = new LinkedList<XmlBeanDefinition>();
-		do {
-			hasBeanCreated = false;
-			Iterator<Map.Entry<String, XmlBeanDefinition>> iterator = this.pendingBeans.entrySet().iterator();
-			while (iterator.hasNext()) {
-				Map.Entry<String, XmlBeanDefinition> entry = iterator.next();
-				XmlBeanDefinition beanDefinition = entry.getValue();
-				if (!beanDefinition.hasUnresolvedDependency()) {
-					createdBeans.add(beanDefinition);
-					iterator.remove();
-					hasBeanCreated = true;
-				}
+		for (XmlBeanDefinition beanDefinition: graph.topologicalOrder()) {
+			if (beanDefinition.isCreatedAtStartup()) {
+				beanDefinition.getBean();
+			} else {
+				beanDefinition.validate();
 			}
-			if (hasBeanCreated) {
-				notifyBeansCreation(createdBeans);
-				createdBeans.clear();
+			for (XmlBeanDefinition dependent: graph.dependentsOf(beanDefinition)) {
+				dependent.onOtherBeanCreated(beanDefinition);
 			}
-		} while(hasBeanCreated);
-		if (!this.pendingBeans.isEmpty()) {
-			throw new InvalidBeanConfigException("Not all beans could be created due to unresolved dependencies.");
+			this.pendingBeans.remove(beanDefinition.getId());
+			created.add(beanDefinition);
+		}
+		publish(created);
+	}
+
+	/*
+	 * Freeze the created definitions so that they hold only what serving beans needs, then
+	 * publish them.
+	 */
+	private void publish(List<XmlBeanDefinition> created) {
+		BeanRegistry<XmlBeanDefinition> registry = new BeanRegistry<XmlBeanDefinition>(created);
+		for (XmlBeanDefinition definition : registry.getAll()) {
+			definition.freeze(registry);
 		}
+		this.pendingBeans = Collections.emptyMap();
+		this.registry = registry;
 	}
 
 
 	/**
-	 * Resolve relations among bean definitions and create beans accordingly.
+	 * Create beans on the given executor instead of the calling thread. A bean is submitted
+	 * as soon as all beans it refers to are created, the executor is not shut down.
+	 * @param executor the executor, or null to create beans one by one on the calling thread.
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Choose how beans are instantiated, {@link InstantiationStrategy#getDefault()} if not set.
+	 * @param instantiationStrategy the strategy.
+	 */
+	public void setInstantiationStrategy(InstantiationStrategy instantiationStrategy) {
+		Assert.notNull(instantiationStrategy, "Strategy can not be null.");
+		this.instantiationStrategy = instantiationStrategy;
+	}
+
+	/**
+	 * Resolve relations among bean definitions and create beans accordingly, then log
+	 * a {@link StartupReport}.
 	 */
 	public void createBeans() {
 		try {
-			scanBeanDefinitionsInDocument();
-			initBeans();
+			Map<String, Long> phaseNanos = new LinkedHashMap<String, Long>();
+			Object event = StartupEvents.beginPhase();
+			long start = System.nanoTime();
+			scanBeanDefinitions();
+			long read = System.nanoTime();
+			StartupEvents.commitPhase(event, "read", this.pendingBeans.size());
+			phaseNanos.put("read", read - start);
+			event = StartupEvents.beginPhase();
+			BeanDependencyGraph<XmlBeanDefinition> graph =
+					new BeanDependencyGraph<XmlBeanDefinition>(new ArrayList<XmlBeanDefinition>(this.pendingBeans.values()));
+			long sorted = System.nanoTime();
+			StartupEvents.commitPhase(event, "sort", graph.size());
+			phaseNanos.put("sort", sorted - read);
+			event = StartupEvents.beginPhase();
+			initBeans(graph);
+			StartupEvents.commitPhase(event, "create", graph.size());
+			phaseNanos.put("create", System.nanoTime() - sorted);
+			this.startupReport = StartupReport.build(graph, phaseNanos);
+			logger.info("{}", this.startupReport);
 		} catch (Exception e) {
 			logger.error("Failed to create beans:", e);
 			throw new InvalidBeanConfigException(e);
 		} 
 	}
 	
+	/**
+	 * Read the definitions again and create a handler sharing the beans whose definitions did
+	 * not change. Beans that changed, were added, or refer to such beans directly or not are
+	 * created anew, the others are kept as they are. This handler is not modified, so that
+	 * users of it keep seeing consistent beans until they switch to the returned handler.
+	 * @param reader the reader of the new definitions.
+	 * @return the new handler, with beans created.
+	 * @throws InvalidBeanConfigException if the new definitions are invalid or some bean
+	 * could not be created, in which case this handler is still usable.
+	 */
+	public XmlBeansHandler reload(BeanDefinitionReader reader) {
+		XmlBeansHandler reloaded = new XmlBeansHandler(reader);
+		reloaded.instantiationStrategy = this.instantiationStrategy;
+		try {
+			reloaded.scanBeanDefinitions();
+			List<XmlBeanDefinition> definitions = new ArrayList<XmlBeanDefinition>(reloaded.pendingBeans.values());
+			// Validates references of the new definitions and finds who depends on whom.
+			BeanDependencyGraph<XmlBeanDefinition> graph = new BeanDependencyGraph<XmlBeanDefinition>(definitions);
+			BeanRegistry<XmlBeanDefinition> current = this.registry;
+			boolean[] dirty = new boolean[graph.size()];
+			int[] queue = new int[graph.size()];
+			int tail = 0;
+			for (int i = 0; i < graph.size(); i++) {
+				XmlBeanDefinition existing = current.get(graph.get(i).getId());
+				if (existing == null || !existing.sameDefinitionAs(graph.get(i))) {
+					dirty[i] = true;
+					queue[tail++] = i;
+				}
+			}
+			for (int head = 0; head < tail; head++) {
+				for (int dependent : graph.dependentIndexes(queue[head])) {
+					if (!dirty[dependent]) {
+						dirty[dependent] = true;
+						queue[tail++] = dependent;
+					}
+				}
+			}
+			List<XmlBeanDefinition> merged = new ArrayList<XmlBeanDefinition>(graph.size());
+			List<String> rebuilt = new ArrayList<String>(tail);
+			for (int i = 0; i < graph.size(); i++) {
+				if (dirty[i]) {
+					merged.add(graph.get(i));
+					rebuilt.add(graph.get(i).getId());
+				} else {
+					merged.add(current.get(graph.get(i).getId()));
+				}
+			}
+			// Kept beans are created already and only depend on kept beans.
+			reloaded.initBeans(new BeanDependencyGraph<XmlBeanDefinition>(merged));
+			reloaded.rebuiltBeans = Collections.unmodifiableList(rebuilt);
+			logger.info("Reloaded beans, rebuilt {} of {}: {}", rebuilt.size(), merged.size(), rebuilt);
+			return reloaded;
+		} catch (InvalidBeanConfigException e) {
+			throw e;
+		} catch (Exception e) {
+			logger.error("Failed to reload beans:", e);
+			throw new InvalidBeanConfigException(e);
+		}
+	}
+
+	/**
+	 * @return ids of beans created anew by the {@link #reload(BeanDefinitionReader)} that
+	 * returned this handler, empty for a handler that was not reloaded.
+	 */
+	public List<String> getRebuiltBeans() {
+		return rebuiltBeans;
+	}
+
+	/**
+	 * @return the report of the last {@link #createBeans()}, null if beans are not created.
+	 */
+	public StartupReport getStartupReport() {
+		return startupReport;
+	}
+
 	/**
 	 * Get the bean by bean id.
 	 * @param id the bean id.
@@ -118,11 +270,54 @@ public class XmlBeansHandler {
 	 */
 	public Object getBean(String id) {
 		Assert.notEmptyText(id, "Bean name can not be empty.");
-		if (!this.createdBeans.containsKey(id)) {
+		XmlBeanDefinition beanDefinition = this.registry.get(id);
+		return beanDefinition == null ? null : beanDefinition.getBean();
+	}
+
+	/**
+	 * Get the only bean whose class is assignable to the given type.
+	 * @param type the type.
+	 * @return null if no bean has the type, the bean otherwise.
+	 * @throws AmbiguousBeanException if several beans have the type.
+	 * @throws NullPointerException if the type is null.
+	 */
+	public <T> T getBean(Class<T> type) {
+		Assert.notNull(type, "Type can not be null.");
+		List<XmlBeanDefinition> definitions = this.registry.getByType(type);
+		if (definitions.isEmpty()) {
 			return null;
 		}
-		XmlBeanDefinition beanDefinition = this.createdBeans.get(id);
-		return beanDefinition.getBean();
+		if (definitions.size() > 1) {
+			StringBuilder ids = new StringBuilder();
+			for (XmlBeanDefinition definition : definitions) {
+				ids.append(ids.length() == 0 ? "" : ", ").append(definition.getId());
+			}
+			throw new AmbiguousBeanException("Expected one bean of " + type.getName() + " but found " + definitions.size() + ": " + ids + ".");
+		}
+		return type.cast(definitions.get(0).getBean());
+	}
+
+	/**
+	 * Get the beans whose classes are assignable to the given type.
+	 * @param type the type.
+	 * @return beans by id, each comes after the beans it refers to.
+	 * @throws NullPointerException if the type is null.
+	 */
+	public <T> Map<String, T> getBeansOfType(Class<T> type) {
+		Assert.notNull(type, "Type can not be null.");
+		List<XmlBeanDefinition> definitions = this.registry.getByType(type);
+		Map<String, T> beans = new LinkedHashMap<String, T>(definitions.size() * 2);
+		for (XmlBeanDefinition beanDefinition : definitions) {
+			beans.put(beanDefinition.getId(), type.cast(beanDefinition.getBean()));
+		}
+		return beans;
+	}
+
+	/**
+	 * @return definitions of created beans, each comes after the beans it refers to.
+	 */
+	List<XmlBeanDefinition> getCreatedDefinitions() {
+		return new ArrayList<XmlBeanDefinition>(this.registry.getAll());
 	}
 
 }
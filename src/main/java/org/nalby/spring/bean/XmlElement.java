@@ -0,0 +1,82 @@
+package org.nalby.spring.bean;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.nalby.spring.util.Assert;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * A minimal, parser independent copy of an xml element with its attributes and child
+ * elements, big enough to hold one <bean> element while the rest of the file is streamed.
+ */
+final class XmlElement {
+
+	private final String tagName;
+
+	private final Map<String, String> attributes;
+
+	private final List<XmlElement> children;
+
+	XmlElement(String tagName) {
+		Assert.notEmptyText(tagName, "Tag name can not be empty.");
+		this.tagName = tagName;
+		this.attributes = new HashMap<String, String>();
+		this.children = new ArrayList<XmlElement>();
+	}
+
+	/**
+	 * Copy a DOM element and its descendant elements.
+	 * @param element the DOM element.
+	 * @return the copy.
+	 */
+	static XmlElement fromDom(Element element) {
+		XmlElement result = new XmlElement(element.getTagName());
+		NamedNodeMap attributes = element.getAttributes();
+		for (int i = 0; i < attributes.getLength(); i++) {
+			Attr attr = (Attr) attributes.item(i);
+			result.setAttribute(attr.getName(), attr.getValue());
+		}
+		NodeList nodeList = element.getChildNodes();
+		for (int i = 0; i < nodeList.getLength(); i++) {
+			Node node = nodeList.item(i);
+			if (node.getNodeType() == Node.ELEMENT_NODE) {
+				result.addChild(fromDom((Element) node));
+			}
+		}
+		return result;
+	}
+
+	String getTagName() {
+		return this.tagName;
+	}
+
+	/**
+	 * @param name the attribute name.
+	 * @return the attribute value, an empty string if there is no such attribute, the same
+	 * as {@link Element#getAttribute(String)}.
+	 */
+	String getAttribute(String name) {
+		String value = this.attributes.get(name);
+		return value == null ? "" : value;
+	}
+
+	void setAttribute(String name, String value) {
+		this.attributes.put(name, value);
+	}
+
+	List<XmlElement> getChildren() {
+		return Collections.unmodifiableList(this.children);
+	}
+
+	void addChild(XmlElement child) {
+		this.children.add(child);
+	}
+}
@@ -0,0 +1,287 @@
+package org.nalby.spring.bean;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.nalby.spring.util.Assert;
+
+/**
+ * Reads bean definitions from several xml files and the files they include with
+ * <import resource="..."/>, where the resource is relative to the importing file and may
+ * hold wildcards like locations of {@link #resolveLocations(File, String)}.
+ * <p>
+ * Files are parsed and their beans validated on the given executor, beans of a file in
+ * parallel too as {@link StaxBeanDefinitionReader#setExecutor(Executor)} does, a file being submitted
+ * as soon as the file importing it is parsed, so reading takes about as long as the
+ * slowest chain of imports rather than all files together. Definitions are returned in a
+ * deterministic order whatever the order files finish in: files in the order they are
+ * listed and imported, beans in declaration order.
+ */
+public class XmlFilesBeanDefinitionReader implements BeanDefinitionReader {
+
+	private final List<File> files;
+
+	private final Executor executor;
+
+	private List<File> readFiles = Collections.emptyList();
+
+	/*
+	 * Definitions and imports of one file.
+	 */
+	private static final class ParsedFile {
+		final File file;
+		final FutureTask<List<XmlBeanDefinition>> task;
+		// Written by the task, read once it is done.
+		List<String> imports;
+
+		ParsedFile(final File file, final Executor executor) {
+			this.file = file;
+			this.task = new FutureTask<List<XmlBeanDefinition>>(new Callable<List<XmlBeanDefinition>>() {
+				@Override
+				public List<XmlBeanDefinition> call() throws Exception {
+					InputStream inputStream = new FileInputStream(file);
+					try {
+						StaxBeanDefinitionReader reader = new StaxBeanDefinitionReader(inputStream);
+						reader.setExecutor(executor);
+						List<XmlBeanDefinition> definitions = reader.readBeanDefinitions();
+						imports = reader.getImports();
+						return definitions;
+					} finally {
+						inputStream.close();
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * @param files the files, in the order their beans are declared.
+	 * @param executor the executor to parse files on, files are parsed on the calling
+	 * thread if null.
+	 */
+	public XmlFilesBeanDefinitionReader(List<File> files, Executor executor) {
+		Assert.notNull(files, "Files can not be null.");
+		this.files = new ArrayList<File>(files);
+		this.executor = executor;
+	}
+
+	/**
+	 * Resolve a comma separated list of locations, such as 'beans.xml, modules/*.xml'.
+	 * The file name of a location may hold '*' and '?' wildcards, matching files are sorted
+	 * by name. A location without wildcards is kept even if the file does not exist, so that
+	 * reading it reports the missing file.
+	 * @param baseDirectory the directory relative locations are resolved against.
+	 * @param locations the locations.
+	 * @return the files.
+	 * @throws InvalidBeanConfigException if a location is empty or a directory can not be listed.
+	 */
+	public static List<File> resolveLocations(File baseDirectory, String locations) {
+		Assert.notNull(baseDirectory, "Base directory can not be null.");
+		Assert.notEmptyText(locations, "Locations can not be empty.");
+		List<File> resolved = new ArrayList<File>();
+		for (String location : locations.split(",")) {
+			location = location.trim();
+			if ("".equals(location)) {
+				throw new InvalidBeanConfigException("Empty location in: " + locations);
+			}
+			File file = new File(location);
+			if (!file.isAbsolute()) {
+				file = new File(baseDirectory, location);
+			}
+			if (file.getName().indexOf('*') < 0 && file.getName().indexOf('?') < 0) {
+				resolved.add(file);
+				continue;
+			}
+			List<File> matches = new ArrayList<File>();
+			Path directory = file.getParentFile().toPath();
+			try {
+				DirectoryStream<Path> stream = Files.newDirectoryStream(directory, file.getName());
+				try {
+					for (Path path : stream) {
+						if (Files.isRegularFile(path)) {
+							matches.add(path.toFile());
+						}
+					}
+				} finally {
+					stream.close();
+				}
+			} catch (IOException e) {
+				throw new InvalidBeanConfigException("Failed to list " + directory + ".", e);
+			}
+			Collections.sort(matches);
+			resolved.addAll(matches);
+		}
+		return resolved;
+	}
+
+	private static File canonical(File file) {
+		try {
+			return file.getCanonicalFile();
+		} catch (IOException e) {
+			return file.getAbsoluteFile();
+		}
+	}
+
+	private static List<File> resolveImports(File file, List<String> imports) {
+		List<File> files = new ArrayList<File>();
+		File directory = canonical(file).getParentFile();
+		for (String resource : imports) {
+			files.addAll(resolveLocations(directory, resource));
+		}
+		return files;
+	}
+
+	/*
+	 * Add a file to parse unless it is parsed already.
+	 */
+	private void submit(File file, List<ParsedFile> parsedFiles, Map<File, Integer> indexes) {
+		File key = canonical(file);
+		if (indexes.containsKey(key)) {
+			return;
+		}
+		ParsedFile parsedFile = new ParsedFile(key, this.executor);
+		indexes.put(key, parsedFiles.size());
+		parsedFiles.add(parsedFile);
+		if (this.executor != null) {
+			this.executor.execute(parsedFile.task);
+		}
+	}
+
+	@Override
+	public List<XmlBeanDefinition> readBeanDefinitions() {
+		List<ParsedFile> parsedFiles = new ArrayList<ParsedFile>();
+		Map<File, Integer> indexes = new HashMap<File, Integer>();
+		for (File file : this.files) {
+			submit(file, parsedFiles, indexes);
+		}
+		// Files are collected in discovery order, so a file's failure is reported before
+		// failures of the files it imports whichever finishes first.
+		for (int i = 0; i < parsedFiles.size(); i++) {
+			ParsedFile parsedFile = parsedFiles.get(i);
+			await(parsedFile);
+			for (File imported : resolveImports(parsedFile.file, parsedFile.imports)) {
+				submit(imported, parsedFiles, indexes);
+			}
+		}
+		List<XmlBeanDefinition> definitions = new ArrayList<XmlBeanDefinition>();
+		Map<String, File> declaringFiles = new HashMap<String, File>();
+		List<File> read = new ArrayList<File>(parsedFiles.size());
+		for (ParsedFile parsedFile : parsedFiles) {
+			for (XmlBeanDefinition definition : await(parsedFile)) {
+				File existing = declaringFiles.put(definition.getId(), parsedFile.file);
+				if (existing != null) {
+					throw new InvalidBeanConfigException("Duplcated bean name found: " + definition.getId()
+							+ ", in " + existing + " and " + parsedFile.file + ".");
+				}
+				definitions.add(definition);
+			}
+			read.add(parsedFile.file);
+		}
+		this.readFiles = Collections.unmodifiableList(read);
+		return definitions;
+	}
+
+	private static List<XmlBeanDefinition> await(ParsedFile parsedFile) {
+		if (!parsedFile.task.isDone() && !Thread.currentThread().isInterrupted()) {
+			// Runs the task here if no worker picked it up yet, or when there is no executor.
+			parsedFile.task.run();
+		}
+		try {
+			return parsedFile.task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InvalidBeanConfigException("Interrupted while reading " + parsedFile.file, e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof InvalidBeanConfigException) {
+				throw new InvalidBeanConfigException("Invalid beans in " + parsedFile.file + ": " + cause.getMessage(), cause);
+			}
+			throw new InvalidBeanConfigException("Failed to read " + parsedFile.file + ".", cause);
+		}
+	}
+
+	/**
+	 * @return the files read by the last {@link #readBeanDefinitions()}, including imported
+	 * ones, each once.
+	 */
+	public List<File> getReadFiles() {
+		return readFiles;
+	}
+
+	/**
+	 * List the given files and the files they import, without validating beans, such as to
+	 * tell whether any of them changed before reading them.
+	 * @param files the files.
+	 * @return the files and their imports, each once, in the order they would be read.
+	 * @throws InvalidBeanConfigException if a file can not be parsed.
+	 */
+	public static List<File> listFiles(List<File> files) {
+		Assert.notNull(files, "Files can not be null.");
+		List<File> listed = new ArrayList<File>();
+		Set<File> seen = new HashSet<File>();
+		for (File file : files) {
+			if (seen.add(canonical(file))) {
+				listed.add(canonical(file));
+			}
+		}
+		for (int i = 0; i < listed.size(); i++) {
+			for (File imported : resolveImports(listed.get(i), readImports(listed.get(i)))) {
+				if (seen.add(canonical(imported))) {
+					listed.add(canonical(imported));
+				}
+			}
+		}
+		return listed;
+	}
+
+	private static List<String> readImports(File file) {
+		List<String> imports = new ArrayList<String>();
+		XMLStreamReader reader = null;
+		try {
+			InputStream inputStream = new FileInputStream(file);
+			try {
+				reader = StaxBeanDefinitionReader.newInputFactory().createXMLStreamReader(inputStream);
+				int depth = 0;
+				while (reader.hasNext()) {
+					int event = reader.next();
+					if (event == XMLStreamConstants.START_ELEMENT) {
+						depth++;
+						if (depth == 2 && XmlBeansHandler.IMPORT_ELEMENT.equalsIgnoreCase(reader.getLocalName())) {
+							imports.add(StaxBeanDefinitionReader.readImport(reader));
+						}
+					} else if (event == XMLStreamConstants.END_ELEMENT) {
+						depth--;
+					}
+				}
+				reader.close();
+			} finally {
+				inputStream.close();
+			}
+		} catch (IOException e) {
+			throw new InvalidBeanConfigException("Failed to read " + file + ".", e);
+		} catch (XMLStreamException e) {
+			throw new InvalidBeanConfigException("Failed to read " + file + ".", e);
+		}
+		return imports;
+	}
+}
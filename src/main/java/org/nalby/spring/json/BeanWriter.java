@@ -0,0 +1,223 @@
+package org.nalby.spring.json;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Writes an object as the json object of its getters, sorted by property name. Getters are
+ * looked up once and bound to method handles, primitive getters to handles returning the
+ * primitive so that writing a property neither reflects nor boxes.
+ */
+final class BeanWriter extends ValueWriter {
+
+	private abstract static class Property {
+		final String name;
+		final byte[] encodedName;
+
+		Property(String name) {
+			this.name = name;
+			this.encodedName = JsonOutput.encodeName(name);
+		}
+
+		abstract void writeValue(Object bean, JsonOutput out) throws Throwable;
+	}
+
+	private static final class LongProperty extends Property {
+		private final MethodHandle getter;
+
+		LongProperty(String name, MethodHandle getter) {
+			super(name);
+			this.getter = getter.asType(MethodType.methodType(long.class, Object.class));
+		}
+
+		@Override
+		void writeValue(Object bean, JsonOutput out) throws Throwable {
+			out.writeLong((long) this.getter.invokeExact(bean));
+		}
+	}
+
+	private static final class DoubleProperty extends Property {
+		private final MethodHandle getter;
+
+		DoubleProperty(String name, MethodHandle getter) {
+			super(name);
+			this.getter = getter.asType(MethodType.methodType(double.class, Object.class));
+		}
+
+		@Override
+		void writeValue(Object bean, JsonOutput out) throws Throwable {
+			out.writeDouble((double) this.getter.invokeExact(bean));
+		}
+	}
+
+	private static final class FloatProperty extends Property {
+		private final MethodHandle getter;
+
+		FloatProperty(String name, MethodHandle getter) {
+			super(name);
+			this.getter = getter.asType(MethodType.methodType(float.class, Object.class));
+		}
+
+		@Override
+		void writeValue(Object bean, JsonOutput out) throws Throwable {
+			out.writeFloat((float) this.getter.invokeExact(bean));
+		}
+	}
+
+	private static final class BooleanProperty extends Property {
+		private final MethodHandle getter;
+
+		BooleanProperty(String name, MethodHandle getter) {
+			super(name);
+			this.getter = getter.asType(MethodType.methodType(boolean.class, Object.class));
+		}
+
+		@Override
+		void writeValue(Object bean, JsonOutput out) throws Throwable {
+			out.writeBoolean((boolean) this.getter.invokeExact(bean));
+		}
+	}
+
+	private static final class ObjectProperty extends Property {
+		private final MethodHandle getter;
+		// The declared type if no subclass can be returned, null otherwise.
+		private final Class<?> exactType;
+		// The writer of the exact type, looked up on first use since types may refer to
+		// each other. Racing threads look up the same writer.
+		private ValueWriter writer;
+
+		ObjectProperty(String name, MethodHandle getter, Class<?> exactType) {
+			super(name);
+			this.getter = getter.asType(MethodType.methodType(Object.class, Object.class));
+			this.exactType = exactType;
+		}
+
+		@Override
+		void writeValue(Object bean, JsonOutput out) throws Throwable {
+			Object value = (Object) this.getter.invokeExact(bean);
+			if (value == null) {
+				out.writeNull();
+			} else if (this.exactType != null) {
+				ValueWriter writer = this.writer;
+				if (writer == null) {
+					writer = JsonWriter.writerFor(this.exactType);
+					this.writer = writer;
+				}
+				writer.write(value, out);
+			} else {
+				JsonWriter.writeValue(value, out);
+			}
+		}
+	}
+
+	private final Class<?> type;
+
+	private final Property[] properties;
+
+	BeanWriter(Class<?> type) {
+		this.type = type;
+		List<Property> properties = new ArrayList<Property>();
+		for (Method method : type.getMethods()) {
+			String name = propertyName(method);
+			if (name != null) {
+				properties.add(newProperty(name, method));
+			}
+		}
+		Collections.sort(properties, new Comparator<Property>() {
+			@Override
+			public int compare(Property o1, Property o2) {
+				return o1.name.compareTo(o2.name);
+			}
+		});
+		this.properties = properties.toArray(new Property[properties.size()]);
+	}
+
+	/*
+	 * The property name of a getter, null if the method is not one.
+	 */
+	private static String propertyName(Method method) {
+		if (Modifier.isStatic(method.getModifiers()) || method.isBridge() || method.getParameterTypes().length != 0
+				|| method.getReturnType() == void.class || method.getDeclaringClass() == Object.class) {
+			return null;
+		}
+		String name = method.getName();
+		String property;
+		if (name.startsWith("get") && name.length() > 3) {
+			property = name.substring(3);
+		} else if (name.startsWith("is") && name.length() > 2 && method.getReturnType() == boolean.class) {
+			property = name.substring(2);
+		} else {
+			return null;
+		}
+		// Like java.beans.Introspector, 'getURL' is 'URL' and 'getName' is 'name'.
+		if (property.length() > 1 && Character.isUpperCase(property.charAt(1))) {
+			return property;
+		}
+		return Character.toLowerCase(property.charAt(0)) + property.substring(1);
+	}
+
+	private static MethodHandle unreflect(Method method) {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		try {
+			return lookup.unreflect(method);
+		} catch (IllegalAccessException e) {
+			// Public methods of classes that are not public, such as nested classes.
+			method.setAccessible(true);
+			try {
+				return lookup.unreflect(method);
+			} catch (IllegalAccessException again) {
+				throw new IllegalArgumentException("Can not access " + method, again);
+			}
+		}
+	}
+
+	private static Property newProperty(String name, Method method) {
+		MethodHandle getter = unreflect(method);
+		Class<?> returnType = method.getReturnType();
+		if (returnType == int.class || returnType == long.class || returnType == short.class || returnType == byte.class) {
+			return new LongProperty(name, getter);
+		} else if (returnType == double.class) {
+			return new DoubleProperty(name, getter);
+		} else if (returnType == float.class) {
+			return new FloatProperty(name, getter);
+		} else if (returnType == boolean.class) {
+			return new BooleanProperty(name, getter);
+		} else if (returnType == char.class) {
+			return new ObjectProperty(name, getter, Character.class);
+		}
+		boolean exact = Modifier.isFinal(returnType.getModifiers()) && !returnType.isArray();
+		return new ObjectProperty(name, getter, exact ? returnType : null);
+	}
+
+	@Override
+	void write(Object value, JsonOutput out) throws IOException {
+		out.enter('{');
+		for (int i = 0; i < this.properties.length; i++) {
+			if (i > 0) {
+				out.writeByte(',');
+			}
+			Property property = this.properties[i];
+			out.writeBytes(property.encodedName);
+			try {
+				property.writeValue(value, out);
+			} catch (IOException e) {
+				throw e;
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new IllegalStateException("Failed to get " + this.type.getName() + "." + property.name, e);
+			}
+		}
+		out.exit('}');
+	}
+}
@@ -0,0 +1,279 @@
+package org.nalby.spring.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Encodes json tokens as UTF-8 into a buffer taken from a pool, and writes the buffer to the
+ * target stream each time it fills up, flushing the stream so that the container sends a
+ * chunk instead of holding the whole response. Memory per response is one buffer however
+ * big the document is.
+ */
+final class JsonOutput {
+
+	static final int BUFFER_SIZE = 8192;
+
+	/*
+	 * Deeper documents are most likely cycles between objects.
+	 */
+	static final int MAX_DEPTH = 256;
+
+	// Buffers kept for later responses, more are allocated and dropped under load.
+	private static final BlockingQueue<byte[]> pool = new ArrayBlockingQueue<byte[]>(64);
+
+	private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+	// Escapes of ascii characters, null for characters written as they are.
+	private static final byte[][] ESCAPES = new byte[128][];
+
+	static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+
+	static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+
+	static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+
+	static {
+		for (int c = 0; c < 0x20; c++) {
+			ESCAPES[c] = new byte[] {'\\', 'u', '0', '0', HEX[c >> 4], HEX[c & 0xf]};
+		}
+		ESCAPES['"'] = new byte[] {'\\', '"'};
+		ESCAPES['\\'] = new byte[] {'\\', '\\'};
+		ESCAPES['\n'] = new byte[] {'\\', 'n'};
+		ESCAPES['\r'] = new byte[] {'\\', 'r'};
+		ESCAPES['\t'] = new byte[] {'\\', 't'};
+		ESCAPES['\b'] = new byte[] {'\\', 'b'};
+		ESCAPES['\f'] = new byte[] {'\\', 'f'};
+	}
+
+	private final OutputStream out;
+
+	private byte[] buffer;
+
+	private int position;
+
+	private int depth;
+
+	JsonOutput(OutputStream out) {
+		this.out = out;
+		byte[] pooled = pool.poll();
+		this.buffer = pooled != null ? pooled : new byte[BUFFER_SIZE];
+	}
+
+	/**
+	 * Encode a property name followed by ':', to be written with {@link #writeBytes(byte[])}.
+	 * @param name the name.
+	 * @return the encoded name.
+	 */
+	static byte[] encodeName(String name) {
+		StringBuilder builder = new StringBuilder(name.length() + 3);
+		builder.append('"');
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c < 0x80 && ESCAPES[c] != null) {
+				builder.append(new String(ESCAPES[c], StandardCharsets.US_ASCII));
+			} else {
+				builder.append(c);
+			}
+		}
+		return builder.append("\":").toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private void ensure(int bytes) throws IOException {
+		if (this.position > this.buffer.length - bytes) {
+			flushBuffer();
+		}
+	}
+
+	/*
+	 * Write the buffer out as one chunk.
+	 */
+	private void flushBuffer() throws IOException {
+		this.out.write(this.buffer, 0, this.position);
+		this.out.flush();
+		this.position = 0;
+	}
+
+	void writeByte(int b) throws IOException {
+		if (this.position == this.buffer.length) {
+			flushBuffer();
+		}
+		this.buffer[this.position++] = (byte) b;
+	}
+
+	void writeBytes(byte[] bytes) throws IOException {
+		if (bytes.length > this.buffer.length - this.position) {
+			flushBuffer();
+			if (bytes.length > this.buffer.length) {
+				this.out.write(bytes);
+				return;
+			}
+		}
+		System.arraycopy(bytes, 0, this.buffer, this.position, bytes.length);
+		this.position += bytes.length;
+	}
+
+	void writeNull() throws IOException {
+		writeBytes(NULL);
+	}
+
+	void writeBoolean(boolean value) throws IOException {
+		writeBytes(value ? TRUE : FALSE);
+	}
+
+	void writeLong(long value) throws IOException {
+		if (value == Long.MIN_VALUE) {
+			writeAscii("-9223372036854775808");
+			return;
+		}
+		ensure(20);
+		if (value < 0) {
+			this.buffer[this.position++] = '-';
+			value = -value;
+		}
+		int end = this.position + digits(value);
+		int index = end;
+		do {
+			this.buffer[--index] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+		this.position = end;
+	}
+
+	private static int digits(long value) {
+		int digits = 1;
+		for (long bound = 10; digits < 19 && value >= bound; bound *= 10) {
+			digits++;
+		}
+		return digits;
+	}
+
+	/*
+	 * Json has no NaN nor infinities, they are written as null.
+	 */
+	void writeDouble(double value) throws IOException {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			writeNull();
+		} else if (value == (long) value && Math.abs(value) < 1e15) {
+			writeLong((long) value);
+		} else {
+			writeAscii(Double.toString(value));
+		}
+	}
+
+	/*
+	 * Floats are formatted as floats, widening them to double would write digits the float
+	 * does not hold, such as 0.10000000149011612 for 0.1f.
+	 */
+	void writeFloat(float value) throws IOException {
+		if (Float.isNaN(value) || Float.isInfinite(value)) {
+			writeNull();
+		} else if (value == (long) value && Math.abs(value) < 1e15f) {
+			writeLong((long) value);
+		} else {
+			writeAscii(Float.toString(value));
+		}
+	}
+
+	/*
+	 * Write text known to need no escaping, such as a number. Text longer than the room left,
+	 * such as a big number, is written in chunks of the buffer.
+	 */
+	void writeAscii(String text) throws IOException {
+		int length = text.length();
+		for (int i = 0; i < length; ) {
+			if (this.position == this.buffer.length) {
+				flushBuffer();
+			}
+			int end = Math.min(length, i + this.buffer.length - this.position);
+			while (i < end) {
+				this.buffer[this.position++] = (byte) text.charAt(i++);
+			}
+		}
+	}
+
+	void writeString(CharSequence text) throws IOException {
+		writeByte('"');
+		int length = text.length();
+		for (int i = 0; i < length; i++) {
+			// Room for the longest encoding of a character, an escaped surrogate.
+			ensure(6);
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				byte[] escape = ESCAPES[c];
+				if (escape == null) {
+					this.buffer[this.position++] = (byte) c;
+				} else {
+					System.arraycopy(escape, 0, this.buffer, this.position, escape.length);
+					this.position += escape.length;
+				}
+			} else if (c < 0x800) {
+				this.buffer[this.position++] = (byte) (0xc0 | c >> 6);
+				this.buffer[this.position++] = (byte) (0x80 | c & 0x3f);
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, text.charAt(++i));
+				this.buffer[this.position++] = (byte) (0xf0 | codePoint >> 18);
+				this.buffer[this.position++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+				this.buffer[this.position++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+				this.buffer[this.position++] = (byte) (0x80 | codePoint & 0x3f);
+			} else if (Character.isSurrogate(c)) {
+				// A lone surrogate is not valid UTF-8, escaping it keeps the document valid.
+				this.buffer[this.position++] = '\\';
+				this.buffer[this.position++] = 'u';
+				this.buffer[this.position++] = HEX[c >> 12];
+				this.buffer[this.position++] = HEX[c >> 8 & 0xf];
+				this.buffer[this.position++] = HEX[c >> 4 & 0xf];
+				this.buffer[this.position++] = HEX[c & 0xf];
+			} else {
+				this.buffer[this.position++] = (byte) (0xe0 | c >> 12);
+				this.buffer[this.position++] = (byte) (0x80 | c >> 6 & 0x3f);
+				this.buffer[this.position++] = (byte) (0x80 | c & 0x3f);
+			}
+		}
+		writeByte('"');
+	}
+
+	/**
+	 * Enter an object or array.
+	 * @throws IllegalArgumentException if nesting gets deeper than {@link #MAX_DEPTH}.
+	 */
+	void enter(int b) throws IOException {
+		if (++this.depth > MAX_DEPTH) {
+			throw new IllegalArgumentException("Json nested deeper than " + MAX_DEPTH + ", objects may refer to each other.");
+		}
+		writeByte(b);
+	}
+
+	void exit(int b) throws IOException {
+		this.depth--;
+		writeByte(b);
+	}
+
+	/**
+	 * Write what is buffered and give the buffer back to the pool, the stream is not closed.
+	 */
+	void close() throws IOException {
+		try {
+			if (this.position > 0) {
+				this.out.write(this.buffer, 0, this.position);
+			}
+			this.out.flush();
+		} finally {
+			release();
+		}
+	}
+
+	/**
+	 * Drop what is buffered and give the buffer back to the pool, such as after a failure
+	 * so that nothing more of a broken document is written.
+	 */
+	void release() {
+		if (this.buffer != null) {
+			this.position = 0;
+			pool.offer(this.buffer);
+			this.buffer = null;
+		}
+	}
+}
@@ -0,0 +1,343 @@
+package org.nalby.spring.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.BaseStream;
+
+import org.nalby.spring.util.Assert;
+
+/**
+ * Writes values as json straight into a stream, without building the document in memory.
+ * <p>
+ * Strings, numbers, booleans, enums and characters are written as json scalars, and so are
+ * other jdk types such as dates and UUIDs as strings of their toString. Maps are written as
+ * objects keyed by the string of their keys, arrays and Iterables as arrays, and any other
+ * object as the object of its getters. Iterators and Streams are consumed element by element,
+ * and Streams closed, so that a handler can return results as they are fetched.
+ * <p>
+ * The writer of each class is created the first time the class is written and kept, so
+ * writing takes no reflection. The document is buffered in a pooled buffer of
+ * {@value JsonOutput#BUFFER_SIZE} bytes, which is written out and flushed each time it fills up.
+ */
+public final class JsonWriter {
+
+	private static final ValueWriter STRING = new ValueWriter() {
+		@Override
+		void write(Object value, JsonOutput out) throws IOException {
+			out.writeString((CharSequence) value);
+		}
+	};
+
+	private static final ValueWriter TO_STRING = new ValueWriter() {
+		@Override
+		void write(Object value, JsonOutput out) throws IOException {
+			out.writeString(value.toString());
+		}
+	};
+
+	private static final ValueWriter INTEGRAL = new ValueWriter() {
+		@Override
+		void write(Object value, JsonOutput out) throws IOException {
+			out.writeLong(((Number) value).longValue());
+		}
+	};
+
+	private static final ValueWriter FLOATING = new ValueWriter() {
+		@Override
+		void write(Object value, JsonOutput out) throws IOException {
+			out.writeDouble(((Number) value).doubleValue());
+		}
+	};
+
+	private static final ValueWriter FLOAT = new ValueWriter() {
+		@Override
+		void write(Object value, JsonOutput out) throws IOException {
+			out.writeFloat((Float) value);
+		}
+	};
+
+	// BigDecimal, BigInteger and other numbers whose string is a json number.
+	private static final ValueWriter NUMBER = new ValueWriter() {
+		@Override
+		void write(Object value, JsonOutput out) throws IOException {
+			out.writeAscii(value.toString());
+		}
+	};
+
+	private static final ValueWriter BOOLEAN = new ValueWriter() {
+		@Override
+		void write(Object value, JsonOutput out) throws IOException {
+			out.writeBoolean((Boolean) value);
+		}
+	};
+
+	private static final ValueWriter ENUM = new ValueWriter() {
+		@Override
+		void write(Object value, JsonOutput out) throws IOException {
+			out.writeString(((Enum<?>) value).name());
+		}
+	};
+
+	private static final ValueWriter DATE = new ValueWriter() {
+		@Override
+		void write(Object value, JsonOutput out) throws IOException {
+			out.writeString(((Date) value).toInstant().toString());
+		}
+	};
+
+	private static final ValueWriter OPTIONAL = new ValueWriter() {
+		@Override
+		void write(Object value, JsonOutput out) throws IOException {
+			writeValue(((Optional<?>) value).orElse(null), out);
+		}
+	};
+
+	private static final ValueWriter MAP = new ValueWriter() {
+		@Override
+		void write(Object value, JsonOutput out) throws IOException {
+			out.enter('{');
+			boolean first = true;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				if (!first) {
+					out.writeByte(',');
+				}
+				first = false;
+				out.writeString(String.valueOf(entry.getKey()));
+				out.writeByte(':');
+				writeValue(entry.getValue(), out);
+			}
+			out.exit('}');
+		}
+	};
+
+	private static final ValueWriter ITERABLE = new ValueWriter() {
+		@Override
+		void write(Object value, JsonOutput out) throws IOException {
+			writeElements(((Iterable<?>) value).iterator(), out);
+		}
+	};
+
+	private static final ValueWriter ITERATOR = new ValueWriter() {
+		@Override
+		void write(Object value, JsonOutput out) throws IOException {
+			writeElements((Iterator<?>) value, out);
+		}
+	};
+
+	private static final ValueWriter STREAM = new ValueWriter() {
+		@Override
+		void write(Object value, JsonOutput out) throws IOException {
+			BaseStream<?, ?> stream = (BaseStream<?, ?>) value;
+			try {
+				writeElements(stream.iterator(), out);
+			} finally {
+				stream.close();
+			}
+		}
+	};
+
+	private static final ValueWriter OBJECT_ARRAY = new ValueWriter() {
+		@Override
+		void write(Object value, JsonOutput out) throws IOException {
+			Object[] array = (Object[]) value;
+			out.enter('[');
+			for (int i = 0; i < array.length; i++) {
+				if (i > 0) {
+					out.writeByte(',');
+				}
+				writeValue(array[i], out);
+			}
+			out.exit(']');
+		}
+	};
+
+	private static final ValueWriter INT_ARRAY = new ValueWriter() {
+		@Override
+		void write(Object value, JsonOutput out) throws IOException {
+			int[] array = (int[]) value;
+			out.enter('[');
+			for (int i = 0; i < array.length; i++) {
+				if (i > 0) {
+					out.writeByte(',');
+				}
+				out.writeLong(array[i]);
+			}
+			out.exit(']');
+		}
+	};
+
+	private static final ValueWriter LONG_ARRAY = new ValueWriter() {
+		@Override
+		void write(Object value, JsonOutput out) throws IOException {
+			long[] array = (long[]) value;
+			out.enter('[');
+			for (int i = 0; i < array.length; i++) {
+				if (i > 0) {
+					out.writeByte(',');
+				}
+				out.writeLong(array[i]);
+			}
+			out.exit(']');
+		}
+	};
+
+	private static final ValueWriter DOUBLE_ARRAY = new ValueWriter() {
+		@Override
+		void write(Object value, JsonOutput out) throws IOException {
+			double[] array = (double[]) value;
+			out.enter('[');
+			for (int i = 0; i < array.length; i++) {
+				if (i > 0) {
+					out.writeByte(',');
+				}
+				out.writeDouble(array[i]);
+			}
+			out.exit(']');
+		}
+	};
+
+	// Bytes are binary data, written as a base64 string.
+	private static final ValueWriter BYTE_ARRAY = new ValueWriter() {
+		@Override
+		void write(Object value, JsonOutput out) throws IOException {
+			out.writeString(Base64.getEncoder().encodeToString((byte[]) value));
+		}
+	};
+
+	private static final ValueWriter CHAR_ARRAY = new ValueWriter() {
+		@Override
+		void write(Object value, JsonOutput out) throws IOException {
+			out.writeString(new String((char[]) value));
+		}
+	};
+
+	// Remaining primitive arrays, rare enough to go through java.lang.reflect.Array.
+	private static final ValueWriter PRIMITIVE_ARRAY = new ValueWriter() {
+		@Override
+		void write(Object value, JsonOutput out) throws IOException {
+			int length = Array.getLength(value);
+			out.enter('[');
+			for (int i = 0; i < length; i++) {
+				if (i > 0) {
+					out.writeByte(',');
+				}
+				writeValue(Array.get(value, i), out);
+			}
+			out.exit(']');
+		}
+	};
+
+	private static final ClassValue<ValueWriter> writers = new ClassValue<ValueWriter>() {
+		@Override
+		protected ValueWriter computeValue(Class<?> type) {
+			return newWriter(type);
+		}
+	};
+
+	private JsonWriter() {
+	}
+
+	private static ValueWriter newWriter(Class<?> type) {
+		if (CharSequence.class.isAssignableFrom(type)) {
+			return STRING;
+		} else if (type == Integer.class || type == Long.class || type == Short.class || type == Byte.class) {
+			return INTEGRAL;
+		} else if (type == Double.class) {
+			return FLOATING;
+		} else if (type == Float.class) {
+			return FLOAT;
+		} else if (Number.class.isAssignableFrom(type)) {
+			return NUMBER;
+		} else if (type == Boolean.class) {
+			return BOOLEAN;
+		} else if (type == Character.class) {
+			return TO_STRING;
+		} else if (Enum.class.isAssignableFrom(type)) {
+			return ENUM;
+		} else if (Date.class.isAssignableFrom(type)) {
+			return DATE;
+		} else if (type == Optional.class) {
+			return OPTIONAL;
+		} else if (Map.class.isAssignableFrom(type)) {
+			return MAP;
+		} else if (Iterable.class.isAssignableFrom(type)) {
+			return ITERABLE;
+		} else if (Iterator.class.isAssignableFrom(type)) {
+			return ITERATOR;
+		} else if (BaseStream.class.isAssignableFrom(type)) {
+			return STREAM;
+		} else if (type == int[].class) {
+			return INT_ARRAY;
+		} else if (type == long[].class) {
+			return LONG_ARRAY;
+		} else if (type == double[].class) {
+			return DOUBLE_ARRAY;
+		} else if (type == byte[].class) {
+			return BYTE_ARRAY;
+		} else if (type == char[].class) {
+			return CHAR_ARRAY;
+		} else if (type.isArray()) {
+			return type.getComponentType().isPrimitive() ? PRIMITIVE_ARRAY : OBJECT_ARRAY;
+		} else if (type.getName().startsWith("java.") || type.getName().startsWith("javax.")) {
+			// Such as java.time types, UUID and URI, whose getters are not what they stand for.
+			return TO_STRING;
+		}
+		return new BeanWriter(type);
+	}
+
+	static ValueWriter writerFor(Class<?> type) {
+		return writers.get(type);
+	}
+
+	static void writeValue(Object value, JsonOutput out) throws IOException {
+		if (value == null) {
+			out.writeNull();
+		} else {
+			writers.get(value.getClass()).write(value, out);
+		}
+	}
+
+	private static void writeElements(Iterator<?> iterator, JsonOutput out) throws IOException {
+		out.enter('[');
+		boolean first = true;
+		while (iterator.hasNext()) {
+			if (!first) {
+				out.writeByte(',');
+			}
+			first = false;
+			writeValue(iterator.next(), out);
+		}
+		out.exit(']');
+	}
+
+	/**
+	 * Write a value as json.
+	 * @param value the value, may be null.
+	 * @param out the stream, flushed but not closed. Nothing is written to it if writing fails
+	 * before the first {@value JsonOutput#BUFFER_SIZE} bytes.
+	 * @throws IOException if the stream fails.
+	 * @throws IllegalArgumentException if objects nest too deep, usually because they refer
+	 * to each other, or a getter can not be accessed.
+	 * @throws IllegalStateException if a getter throws a checked exception.
+	 */
+	public static void write(Object value, OutputStream out) throws IOException {
+		Assert.notNull(out, "Output stream can not be null.");
+		JsonOutput output = new JsonOutput(out);
+		try {
+			writeValue(value, output);
+		} catch (IOException e) {
+			output.release();
+			throw e;
+		} catch (RuntimeException e) {
+			output.release();
+			throw e;
+		}
+		output.close();
+	}
+}
@@ -0,0 +1,15 @@
+package org.nalby.spring.json;
+
+import java.io.IOException;
+
+/**
+ * Writes values of one class as json, created once per class by {@link JsonWriter}.
+ */
+abstract class ValueWriter {
+
+	/**
+	 * @param value the value, not null.
+	 * @param out the output.
+	 */
+	abstract void write(Object value, JsonOutput out) throws IOException;
+}
@@ -0,0 +1,28 @@
+package org.nalby.spring.mvc;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Like a {@link RequestHandler}, but does not finish the response before returning, typically
+ * because it waits on downstream I/O. The request is put into asynchronous mode and
+ * completed when the returned stage completes, releasing the container thread meanwhile.
+ */
+public interface AsyncRequestHandler {
+
+	/**
+	 * Start serving a request.
+	 * @param request the request.
+	 * @param response the response, to be written before the stage completes.
+	 * @param pathVariables values of the '{var}' segments of the route, by name.
+	 * @return a stage completing once the response is written, exceptionally to respond 500
+	 * if nothing was written yet.
+	 */
+	public CompletionStage<?> handleAsync(HttpServletRequest request, HttpServletResponse response,
+			Map<String, String> pathVariables) throws ServletException, IOException;
+}
@@ -0,0 +1,118 @@
+package org.nalby.spring.mvc;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.nalby.spring.util.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches configuration files through a {@link WatchService} on a daemon thread, and runs
+ * a callback once they stop changing, so that an editor saving a file in several writes
+ * triggers a single reload.
+ */
+final class ConfigWatcher implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(ConfigWatcher.class);
+
+	// How long files must stay unchanged before the callback runs.
+	static final long QUIET_MILLIS = 200;
+
+	private final WatchService watchService;
+
+	private final Set<Path> files;
+
+	private final Runnable onChange;
+
+	private final Thread thread;
+
+	/**
+	 * Start watching.
+	 * @param files the files.
+	 * @param onChange run on the watching thread after some of the files changed.
+	 * @throws IOException if the directories of the files can not be watched.
+	 */
+	ConfigWatcher(Collection<File> files, Runnable onChange) throws IOException {
+		Assert.notNull(files, "Files can not be null.");
+		Assert.notNull(onChange, "Callback can not be null.");
+		this.onChange = onChange;
+		this.files = new HashSet<Path>();
+		this.watchService = FileSystems.getDefault().newWatchService();
+		Set<Path> directories = new HashSet<Path>();
+		for (File file : files) {
+			Path path = file.toPath().toAbsolutePath().normalize();
+			this.files.add(path);
+			if (directories.add(path.getParent())) {
+				// Editors often replace files, so creation counts as a change too.
+				path.getParent().register(this.watchService, StandardWatchEventKinds.ENTRY_MODIFY,
+						StandardWatchEventKinds.ENTRY_CREATE);
+			}
+		}
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watch();
+			}
+		}, "config-watcher");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	private void watch() {
+		try {
+			while (true) {
+				if (!drain(this.watchService.take())) {
+					continue;
+				}
+				WatchKey key;
+				while ((key = this.watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+					drain(key);
+				}
+				try {
+					this.onChange.run();
+				} catch (RuntimeException e) {
+					logger.error("Failed to apply configuration changes:", e);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException e) {
+			/* Closed. */
+		}
+	}
+
+	/*
+	 * Consume the events of a key, return true if any is about a watched file.
+	 */
+	private boolean drain(WatchKey key) {
+		boolean changed = false;
+		Path directory = (Path) key.watchable();
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW
+					|| this.files.contains(directory.resolve((Path) event.context()))) {
+				changed = true;
+			}
+		}
+		key.reset();
+		return changed;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.watchService.close();
+		this.thread.interrupt();
+	}
+}
@@ -1,52 +1,587 @@
 package org.nalby.spring.mvc;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
+import org.nalby.spring.bean.BeanDefinitionReader;
+import org.nalby.spring.bean.BeanDefinitionSnapshot;
+import org.nalby.spring.bean.BeanFactoryGenerator;
+import org.nalby.spring.bean.InstantiationStrategy;
+import org.nalby.spring.bean.RequestScope;
+import org.nalby.spring.bean.InvalidBeanConfigException;
 import org.nalby.spring.bean.XmlBeansHandler;
+import org.nalby.spring.bean.XmlFilesBeanDefinitionReader;
+import org.nalby.spring.json.JsonWriter;
 import org.nalby.spring.util.Assert;
+import org.nalby.spring.util.ValueConverters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xml.sax.SAXException;
 
+/**
+ * Creates the beans of the configured context and dispatches requests to the
+ * {@link RequestHandler}s of the {@link Route} beans among them. The context is read from
+ * the files of the contextConfigLocation init parameter, a comma separated list where file
+ * names may hold wildcards, and the files they import.
+ * <p>
+ * Init parameters controlling how handlers run:
+ * <ul>
+ * <li>executionMode: 'container' to run handlers on container threads, the default, or
+ * 'virtual' to run every request on its own virtual thread (a cached thread pool where
+ * virtual threads are not available), releasing container threads immediately.</li>
+ * <li>asyncTimeout: how long an asynchronous request may take, such as '30s', 30 seconds
+ * by default, '0' for no timeout. Timed out requests get 503.</li>
+ * <li>maxConcurrentRequests: requests served at the same time, the others get 503
+ * at once. Not limited by default.</li>
+ * </ul>
+ * If the init parameter watchConfig is 'true', the configuration is reloaded when it
+ * changes, recreating only the beans affected by the change.
+ * <p>
+ * If the class generated from the configuration by {@link BeanFactoryGenerator} is found,
+ * beans are created by it instead, with neither xml parsing nor reflection. The class is
+ * named by the init parameter generatedBeans, {@value BeanFactoryGenerator#DEFAULT_CLASS_NAME}
+ * by default, 'none' to always read the xml. The class is ignored, with a warning, if the
+ * xml changed since it was generated. Reloads still read the xml.
+ * <p>
+ * GET and HEAD requests no route matches are served from the files of the web application,
+ * see {@link StaticResources}, unless the init parameter staticResources is 'false'. Files
+ * up to 64 KiB are cached in memory, up to staticResourceCacheBytes in total, 16 MiB by
+ * default.
+ * <p>
+ * Json responses of routes with a 'cacheTtl' are cached up to responseCacheBytes in total,
+ * 32 MiB by default, see {@link ResponseCache}. The cache is emptied on reload.
+ */
 @SuppressWarnings("serial")
 public class DispatchServlet extends HttpServlet {
 	
 	private final Logger logger = LoggerFactory.getLogger(getClass());
-	
+
+	/*
+	 * Beans, the routes among them and their cached responses, replaced as a whole on reload
+	 * so that a request sees either the old or the new beans.
+	 */
+	private static final class Context {
+		final XmlBeansHandler beans;
+		final Router router;
+		final ResponseCache responseCache;
+
+		Context(XmlBeansHandler beans, long responseCacheBytes) {
+			this.beans = beans;
+			this.router = new Router(beans.getBeansOfType(Route.class).values());
+			this.responseCache = new ResponseCache(responseCacheBytes);
+		}
+	}
+
+	private volatile Context context;
+
+	// Watches the configuration if 'watchConfig' is true, null otherwise.
+	private ConfigWatcher configWatcher;
+
+	// Runs handlers in the 'virtual' execution mode, null in the 'container' mode.
+	private ExecutorService handlerExecutor;
+
+	private long asyncTimeoutMillis = 30000;
+
+	// Limits concurrent requests, null if not limited.
+	private Semaphore permits;
+
+	// Serves files of the web application no route matches, null if disabled.
+	private StaticResources staticResources;
+
+	private long responseCacheBytes = 32 << 20;
+
+	/**
+	 * Request attribute holding the {@link RequestScope} of a request, so that forwarded and
+	 * included requests share the beans of the original one.
+	 */
+	public static final String REQUEST_SCOPE_ATTRIBUTE = DispatchServlet.class.getName() + ".REQUEST_SCOPE";
 	
 	private void logExceptionAndThrowException(Exception e) throws ServletException {
 		logger.error("Got exception:", e);
 		throw new ServletException("Got an exception while initing servlet.");
 	}
 	
+	/*
+	 * Create beans on a fork-join pool of the given parallelism if configured, on this
+	 * thread otherwise.
+	 */
+	private void createBeans(XmlBeansHandler xmlBeansHandler, String parallelism) {
+		if (parallelism == null || "".equals(parallelism.trim())) {
+			xmlBeansHandler.createBeans();
+			return;
+		}
+		ForkJoinPool pool = new ForkJoinPool(Integer.parseInt(parallelism.trim()));
+		try {
+			xmlBeansHandler.setExecutor(pool);
+			xmlBeansHandler.createBeans();
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/*
+	 * The snapshot file named by the definitionSnapshot init parameter, relative paths are
+	 * resolved against the container's temporary directory. Null if not configured.
+	 */
+	private File getSnapshotFile(ServletConfig config) {
+		String path = config.getInitParameter("definitionSnapshot");
+		if (path == null || "".equals(path.trim())) {
+			return null;
+		}
+		File file = new File(path.trim());
+		Object tempDir = getServletContext().getAttribute(ServletContext.TEMPDIR);
+		if (!file.isAbsolute() && tempDir instanceof File) {
+			file = new File((File) tempDir, path.trim());
+		}
+		return file;
+	}
+
+	private XmlBeansHandler newBeansHandler(BeanDefinitionReader reader, ServletConfig config) {
+		XmlBeansHandler xmlBeansHandler = XmlBeansHandler.fromReader(reader);
+		String instantiationStrategy = config.getInitParameter("instantiationStrategy");
+		if (instantiationStrategy != null) {
+			xmlBeansHandler.setInstantiationStrategy(InstantiationStrategy.parse(instantiationStrategy));
+		}
+		return xmlBeansHandler;
+	}
+
+	/*
+	 * Create beans from the snapshot if it is up to date, from the xml otherwise, in which
+	 * case a new snapshot is written.
+	 */
+	private XmlBeansHandler createBeansFromSnapshot(List<File> configFiles, File snapshotFile, ServletConfig config) throws IOException {
+		String sourceHash = BeanDefinitionSnapshot.hash(XmlFilesBeanDefinitionReader.listFiles(configFiles));
+		BeanDefinitionSnapshot snapshot = BeanDefinitionSnapshot.open(snapshotFile, sourceHash);
+		if (snapshot != null) {
+			logger.info("loading bean definitions from snapshot:{}.", snapshotFile);
+			XmlBeansHandler xmlBeansHandler = newBeansHandler(snapshot, config);
+			createBeans(xmlBeansHandler, config.getInitParameter("startupParallelism"));
+			return xmlBeansHandler;
+		}
+		XmlBeansHandler xmlBeansHandler = createBeansFromXml(configFiles, config);
+		try {
+			BeanDefinitionSnapshot.write(snapshotFile, sourceHash, xmlBeansHandler);
+		} catch (IOException e) {
+			logger.warn("Failed to write snapshot " + snapshotFile, e);
+		}
+		return xmlBeansHandler;
+	}
+
+	/*
+	 * The reader generated at build time, null if there is none, it is disabled, or it was
+	 * generated from other xml than the configuration files and the files they import.
+	 */
+	private BeanDefinitionReader loadGeneratedBeans(ServletConfig config, List<File> configFiles) throws IOException {
+		String className = config.getInitParameter("generatedBeans");
+		if (className == null || "".equals(className.trim())) {
+			className = BeanFactoryGenerator.DEFAULT_CLASS_NAME;
+		} else if ("none".equals(className.trim())) {
+			return null;
+		}
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		String sourceHash = BeanDefinitionSnapshot.hash(XmlFilesBeanDefinitionReader.listFiles(configFiles));
+		try {
+			Class<?> type = Class.forName(className.trim(), true, classLoader != null ? classLoader : getClass().getClassLoader());
+			if (!sourceHash.equals(generatedSourceHash(type))) {
+				logger.warn("Generated beans {} are stale, the xml changed since they were generated, reading the xml.", className);
+				return null;
+			}
+			return (BeanDefinitionReader) type.getDeclaredConstructor().newInstance();
+		} catch (ClassNotFoundException e) {
+			return null;
+		} catch (InvocationTargetException e) {
+			throw new InvalidBeanConfigException("Failed to load generated beans " + className, e.getCause());
+		} catch (NoSuchMethodException e) {
+			throw new InvalidBeanConfigException("Generated beans " + className + " have no default constructor.", e);
+		} catch (ReflectiveOperationException e) {
+			throw new InvalidBeanConfigException("Failed to load generated beans " + className, e);
+		} catch (RuntimeException e) {
+			throw new InvalidBeanConfigException("Failed to load generated beans " + className, e);
+		}
+	}
+
+	/*
+	 * The hash of the xml a class was generated from, null if it holds none.
+	 */
+	private static String generatedSourceHash(Class<?> type) throws IllegalAccessException {
+		try {
+			Object hash = type.getField(BeanFactoryGenerator.SOURCE_HASH_FIELD).get(null);
+			return hash instanceof String ? (String) hash : null;
+		} catch (NoSuchFieldException e) {
+			// Generated before hashes were.
+			return null;
+		}
+	}
+
+	/*
+	 * A pool to parse configuration files on, as many threads as startupParallelism or
+	 * processors. Null if that is one thread, files are parsed on the calling thread then.
+	 */
+	private ExecutorService newParsePool(ServletConfig config) {
+		String parallelism = config.getInitParameter("startupParallelism");
+		int threads = parallelism == null || "".equals(parallelism.trim())
+				? Runtime.getRuntime().availableProcessors() : Integer.parseInt(parallelism.trim());
+		return threads > 1 ? new ForkJoinPool(threads) : null;
+	}
+
+	private XmlBeansHandler createBeansFromXml(List<File> configFiles, ServletConfig config) {
+		ExecutorService parsePool = newParsePool(config);
+		try {
+			XmlBeansHandler xmlBeansHandler = newBeansHandler(new XmlFilesBeanDefinitionReader(configFiles, parsePool), config);
+			createBeans(xmlBeansHandler, config.getInitParameter("startupParallelism"));
+			return xmlBeansHandler;
+		} finally {
+			if (parsePool != null) {
+				parsePool.shutdown();
+			}
+		}
+	}
+
+	/*
+	 * Executors.newVirtualThreadPerTaskExecutor() is looked up reflectively as the code is
+	 * compiled for older jdks.
+	 */
+	private ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (Exception e) {
+			logger.warn("Virtual threads are not available, running handlers on a cached thread pool.");
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	private void configureExecution(ServletConfig config) {
+		String executionMode = config.getInitParameter("executionMode");
+		if ("virtual".equals(executionMode)) {
+			this.handlerExecutor = newVirtualThreadExecutor();
+		} else if (executionMode != null && !"container".equals(executionMode)) {
+			throw new IllegalArgumentException("Invalid executionMode: " + executionMode);
+		}
+		String asyncTimeout = config.getInitParameter("asyncTimeout");
+		if (asyncTimeout != null) {
+			this.asyncTimeoutMillis = "0".equals(asyncTimeout.trim()) ? 0
+					: ((Duration) ValueConverters.convert(asyncTimeout, Duration.class)).toMillis();
+		}
+		String maxConcurrentRequests = config.getInitParameter("maxConcurrentRequests");
+		if (maxConcurrentRequests != null) {
+			this.permits = new Semaphore((Integer) ValueConverters.convert(maxConcurrentRequests, int.class));
+		}
+		String responseCacheBytes = config.getInitParameter("responseCacheBytes");
+		if (responseCacheBytes != null) {
+			this.responseCacheBytes = Long.parseLong(responseCacheBytes.trim());
+		}
+	}
+
+	private void configureStaticResources(ServletConfig config) {
+		if ("false".equals(config.getInitParameter("staticResources"))) {
+			return;
+		}
+		String root = getServletContext().getRealPath("/");
+		if (root == null) {
+			logger.warn("Web application is not expanded, static resources are not served.");
+			return;
+		}
+		String cacheBytes = config.getInitParameter("staticResourceCacheBytes");
+		this.staticResources = new StaticResources(new File(root).toPath(), getServletContext(),
+				cacheBytes == null ? 16 << 20 : Long.parseLong(cacheBytes.trim()), 64 << 10);
+	}
+
 	@Override
 	public void init(ServletConfig config) throws ServletException {
 		super.init(config);
+		configureExecution(config);
+		configureStaticResources(config);
 		String configPath = config.getInitParameter("contextConfigLocation");
 		Assert.notNull(configPath, "configure file path can't not be null.");
+		// Comma separated locations, whose file names may hold wildcards.
 		configPath = configPath.replace("classpath:", "WEB-INF/classes/");
-		logger.info("loading config file from:{}.", getServletContext().getRealPath(configPath));
 		try {
-			File fXmlFile = new File(getServletContext().getRealPath(configPath));
-			DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-			DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-			XmlBeansHandler xmlBeansHandler = new XmlBeansHandler(dBuilder.parse(fXmlFile));
-			xmlBeansHandler.createBeans();
-		} catch (ParserConfigurationException e) {
+			List<File> configFiles = XmlFilesBeanDefinitionReader.resolveLocations(
+					new File(getServletContext().getRealPath("/")), configPath);
+			logger.info("loading config files from:{}.", configFiles);
+			File snapshotFile = getSnapshotFile(config);
+			XmlBeansHandler xmlBeansHandler;
+			BeanDefinitionReader generatedBeans = loadGeneratedBeans(config, configFiles);
+			if (generatedBeans != null) {
+				logger.info("creating beans from generated {}.", generatedBeans.getClass().getName());
+				xmlBeansHandler = newBeansHandler(generatedBeans, config);
+				createBeans(xmlBeansHandler, config.getInitParameter("startupParallelism"));
+			} else if (snapshotFile != null) {
+				xmlBeansHandler = createBeansFromSnapshot(configFiles, snapshotFile, config);
+			} else {
+				xmlBeansHandler = createBeansFromXml(configFiles, config);
+			}
+			this.context = new Context(xmlBeansHandler, this.responseCacheBytes);
+			logger.info("{} routes mapped.", xmlBeansHandler.getBeansOfType(Route.class).size());
+			if ("true".equals(config.getInitParameter("watchConfig"))) {
+				watchConfig(configFiles, XmlFilesBeanDefinitionReader.listFiles(configFiles), snapshotFile);
+			}
+		} catch (IOException e) {
 			logExceptionAndThrowException(e);
-		} catch (SAXException e) {
+		} catch (InvalidBeanConfigException e) {
 			logExceptionAndThrowException(e);
+		}
+	}
+
+	/*
+	 * Watch the given files, the configuration files and the files they import.
+	 */
+	private void watchConfig(final List<File> configFiles, final List<File> watchedFiles, final File snapshotFile) throws IOException {
+		this.configWatcher = new ConfigWatcher(watchedFiles, new Runnable() {
+			@Override
+			public void run() {
+				reload(configFiles, watchedFiles, snapshotFile);
+			}
+		});
+		logger.info("Watching {} for changes.", watchedFiles);
+	}
+
+	/*
+	 * Rebuild the beans affected by changes of the configuration and swap them in, keep the
+	 * current beans if the new configuration is invalid. Called on the watcher thread.
+	 */
+	private synchronized void reload(List<File> configFiles, List<File> watchedFiles, File snapshotFile) {
+		XmlFilesBeanDefinitionReader reader = new XmlFilesBeanDefinitionReader(configFiles, null);
+		try {
+			XmlBeansHandler reloaded = this.context.beans.reload(reader);
+			this.context = new Context(reloaded, this.responseCacheBytes);
+			if (snapshotFile != null) {
+				BeanDefinitionSnapshot.write(snapshotFile, BeanDefinitionSnapshot.hash(reader.getReadFiles()), reloaded);
+			}
+			if (!reader.getReadFiles().equals(watchedFiles)) {
+				// Imports changed, watch the files imported now instead.
+				this.configWatcher.close();
+				watchConfig(configFiles, reader.getReadFiles(), snapshotFile);
+			}
 		} catch (IOException e) {
-			logExceptionAndThrowException(e);
+			logger.error("Failed to reload " + configFiles + ", keeping current beans.", e);
+		} catch (InvalidBeanConfigException e) {
+			logger.error("Invalid configuration " + configFiles + ", keeping current beans.", e);
+		}
+	}
+
+	/**
+	 * @return the cache of json responses, replaced on reload, null until initialized.
+	 */
+	public ResponseCache getResponseCache() {
+		Context current = this.context;
+		return current == null ? null : current.responseCache;
+	}
+
+	/**
+	 * @return the beans of the context, null until initialized.
+	 */
+	public XmlBeansHandler getBeansHandler() {
+		Context current = this.context;
+		return current == null ? null : current.beans;
+	}
+
+	@Override
+	public void destroy() {
+		if (this.configWatcher != null) {
+			try {
+				this.configWatcher.close();
+			} catch (IOException e) {
+				logger.warn("Failed to stop watching configuration.", e);
+			}
+		}
+		if (this.handlerExecutor != null) {
+			this.handlerExecutor.shutdown();
+		}
+		super.destroy();
+	}
+
+	/*
+	 * Serve the request on this thread, or on the handler executor in the 'virtual' mode, and
+	 * switch to asynchronous mode for asynchronous handlers.
+	 */
+	@Override
+	protected void service(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+		if (this.permits != null && !this.permits.tryAcquire()) {
+			resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+			return;
+		}
+		final RequestCompletion completion = new RequestCompletion(this.permits);
+		if (this.handlerExecutor == null) {
+			CompletionStage<?> stage = null;
+			try {
+				stage = serve(req, resp);
+			} finally {
+				if (stage == null) {
+					completion.finish();
+				}
+			}
+			if (stage != null) {
+				completion.start(req.startAsync(req, resp), this.asyncTimeoutMillis);
+				completion.finishWhenDone(stage);
+			}
+			return;
+		}
+		AsyncContext asyncContext = req.startAsync(req, resp);
+		completion.start(asyncContext, this.asyncTimeoutMillis);
+		try {
+			this.handlerExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						CompletionStage<?> stage = serve(req, resp);
+						if (stage == null) {
+							completion.finish();
+						} else {
+							completion.finishWhenDone(stage);
+						}
+					} catch (Throwable e) {
+						completion.fail(e);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			completion.fail(e);
+		}
+	}
+
+	/*
+	 * Serve the request with its request scoped beans bound to this thread.
+	 */
+	private CompletionStage<?> serve(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+		Object attribute = req.getAttribute(REQUEST_SCOPE_ATTRIBUTE);
+		RequestScope requestScope;
+		if (attribute instanceof RequestScope) {
+			requestScope = (RequestScope) attribute;
+		} else {
+			requestScope = new RequestScope();
+			req.setAttribute(REQUEST_SCOPE_ATTRIBUTE, requestScope);
+		}
+		RequestScope previous = requestScope.bind();
+		try {
+			return dispatch(req, resp);
+		} finally {
+			RequestScope.restore(previous);
+		}
+	}
+
+	/*
+	 * Hand the request to the handler of the route matching its path and method, or serve
+	 * the file at the path if no route matches. Respond 404 if there is no such file either
+	 * and 405 if no route accepts the method. Returns the stage of an asynchronous handler,
+	 * null if the request is served.
+	 */
+	private CompletionStage<?> dispatch(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+		String path = req.getPathInfo() != null ? req.getPathInfo() : req.getServletPath();
+		Context context = this.context;
+		Router.Match match = context.router.match(path);
+		if (match == null) {
+			if (this.staticResources == null || !this.staticResources.serve(req, resp, path)) {
+				resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+			}
+			return null;
+		}
+		Router.Binding binding = match.bindingFor(req.getMethod());
+		if (binding == null) {
+			resp.setHeader("Allow", match.allowedMethods());
+			resp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+			return null;
+		}
+		Route route = binding.getRoute();
+		if (route.getAsyncHandler() != null) {
+			CompletionStage<?> stage = route.getAsyncHandler().handleAsync(req, resp, match.pathVariables(binding));
+			if (stage == null) {
+				throw new IllegalStateException("Route " + route + " returned no stage.");
+			}
+			return stage;
+		}
+		if (binding.getCacheTtlNanos() > 0) {
+			ResponseCache.Entry entry;
+			try {
+				entry = context.responseCache.get(binding.cacheKey(req, path), binding.getCacheTtlNanos(),
+						newJsonLoader(req, resp, match, binding));
+			} catch (HandlerMethod.BadRequestException e) {
+				resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+				return null;
+			}
+			writeCached(entry, resp);
+			return null;
+		}
+		HandlerMethod action = binding.getAction();
+		if (action != null) {
+			Object result;
+			try {
+				result = action.invoke(req, resp, match.segments());
+			} catch (HandlerMethod.BadRequestException e) {
+				resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+				return null;
+			}
+			if (action.returnsValue()) {
+				writeJson(result, resp);
+			}
+			return null;
+		}
+		if (route.getJsonHandler() != null) {
+			writeJson(route.getJsonHandler().handle(req, match.pathVariables(binding)), resp);
+			return null;
+		}
+		route.getHandler().handle(req, resp, match.pathVariables(binding));
+		return null;
+	}
+
+	/*
+	 * Computes the json of a caching route, null for no content.
+	 */
+	private static Callable<byte[]> newJsonLoader(final HttpServletRequest req, final HttpServletResponse resp,
+			final Router.Match match, final Router.Binding binding) {
+		return new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				Object body = binding.getAction() != null ? binding.getAction().invoke(req, resp, match.segments())
+						: binding.getRoute().getJsonHandler().handle(req, match.pathVariables(binding));
+				if (body == null) {
+					return null;
+				}
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				JsonWriter.write(body, out);
+				return out.toByteArray();
+			}
+		};
+	}
+
+	private static void writeCached(ResponseCache.Entry entry, HttpServletResponse resp) throws IOException {
+		byte[] body = entry.getBody();
+		if (body == null) {
+			resp.setStatus(HttpServletResponse.SC_NO_CONTENT);
+			return;
+		}
+		resp.setContentType("application/json;charset=UTF-8");
+		resp.setContentLength(body.length);
+		resp.getOutputStream().write(body);
+	}
+
+	private static void writeJson(Object body, HttpServletResponse resp) throws IOException {
+		if (body == null) {
+			resp.setStatus(HttpServletResponse.SC_NO_CONTENT);
+			return;
 		}
+		resp.setContentType("application/json;charset=UTF-8");
+		JsonWriter.write(body, resp.getOutputStream());
 	}
 
 }
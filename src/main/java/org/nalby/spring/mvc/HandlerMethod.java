@@ -0,0 +1,403 @@
+package org.nalby.spring.mvc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.nalby.spring.bean.InvalidBeanConfigException;
+import org.nalby.spring.util.ValueConverter;
+import org.nalby.spring.util.ValueConverters;
+
+/**
+ * The action of a controller route with the binders of its parameters, compiled once when
+ * routes are built. Parameters and their converters are looked up then, path variables
+ * resolved to the position of their segment, and the method bound to a method handle taking
+ * and returning objects, so that a call reflects on nothing and allocates nothing but the
+ * converted values. Actions of up to {@value #MAX_EXACT_ARITY} parameters are invoked without
+ * an argument array.
+ */
+final class HandlerMethod {
+
+	private static final int MAX_EXACT_ARITY = 5;
+
+	/**
+	 * Thrown when a request lacks a required value or has one that does not convert, answered
+	 * with 400.
+	 */
+	@SuppressWarnings("serial")
+	static final class BadRequestException extends RuntimeException {
+		BadRequestException(String message) {
+			super(message);
+		}
+	}
+
+	private abstract static class ArgumentBinder {
+		abstract Object bind(HttpServletRequest request, HttpServletResponse response, String[] segments) throws IOException;
+	}
+
+	private static final ArgumentBinder REQUEST = new ArgumentBinder() {
+		@Override
+		Object bind(HttpServletRequest request, HttpServletResponse response, String[] segments) {
+			return request;
+		}
+	};
+
+	private static final ArgumentBinder RESPONSE = new ArgumentBinder() {
+		@Override
+		Object bind(HttpServletRequest request, HttpServletResponse response, String[] segments) {
+			return response;
+		}
+	};
+
+	private static final class PathVariableBinder extends ArgumentBinder {
+		private final String name;
+		private final int position;
+		private final ValueConverter<?> converter;
+
+		PathVariableBinder(String name, int position, ValueConverter<?> converter) {
+			this.name = name;
+			this.position = position;
+			this.converter = converter;
+		}
+
+		@Override
+		Object bind(HttpServletRequest request, HttpServletResponse response, String[] segments) {
+			return convert(this.converter, segments[this.position], "path variable", this.name);
+		}
+	}
+
+	/**
+	 * Binds a named value of the request, a parameter or a header.
+	 */
+	private abstract static class NamedValueBinder extends ArgumentBinder {
+		private final String kind;
+		final String name;
+		private final boolean required;
+		// The text used if the request lacks the value, null if none.
+		private final String defaultText;
+		private final ValueConverter<?> converter;
+
+		NamedValueBinder(String kind, String name, boolean required, String defaultText, ValueConverter<?> converter) {
+			this.kind = kind;
+			this.name = name;
+			this.required = required;
+			this.defaultText = defaultText;
+			this.converter = converter;
+		}
+
+		abstract String text(HttpServletRequest request);
+
+		@Override
+		Object bind(HttpServletRequest request, HttpServletResponse response, String[] segments) {
+			String text = text(request);
+			if (text == null) {
+				if (this.defaultText != null) {
+					text = this.defaultText;
+				} else if (this.required) {
+					throw new BadRequestException("Missing " + this.kind + " '" + this.name + "'.");
+				} else {
+					return null;
+				}
+			}
+			return convert(this.converter, text, this.kind, this.name);
+		}
+	}
+
+	private static final class ParameterBinder extends NamedValueBinder {
+		ParameterBinder(RequestParam param, ValueConverter<?> converter) {
+			super("parameter", param.value(), param.required(), defaultText(param.defaultValue()), converter);
+		}
+
+		@Override
+		String text(HttpServletRequest request) {
+			return request.getParameter(this.name);
+		}
+	}
+
+	private static final class HeaderBinder extends NamedValueBinder {
+		HeaderBinder(RequestHeader header, ValueConverter<?> converter) {
+			super("header", header.value(), header.required(), defaultText(header.defaultValue()), converter);
+		}
+
+		@Override
+		String text(HttpServletRequest request) {
+			return request.getHeader(this.name);
+		}
+	}
+
+	private static final class BodyBinder extends ArgumentBinder {
+		private final Class<?> type;
+		// Converts the text of the body, null if the type is not bound to text.
+		private final ValueConverter<?> converter;
+
+		BodyBinder(Class<?> type, ValueConverter<?> converter) {
+			this.type = type;
+			this.converter = converter;
+		}
+
+		@Override
+		Object bind(HttpServletRequest request, HttpServletResponse response, String[] segments) throws IOException {
+			if (this.type == InputStream.class) {
+				return request.getInputStream();
+			} else if (this.type == Reader.class) {
+				return request.getReader();
+			}
+			byte[] bytes = readBody(request);
+			if (this.type == byte[].class) {
+				return bytes;
+			}
+			String encoding = request.getCharacterEncoding();
+			Charset charset = encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+			return convert(this.converter, new String(bytes, charset), "body", "");
+		}
+	}
+
+	private final String description;
+
+	private final ArgumentBinder[] binders;
+
+	// Takes the arguments as objects, or as an array above MAX_EXACT_ARITY, and returns an object.
+	private final MethodHandle invoker;
+
+	private final boolean returnsValue;
+
+	private HandlerMethod(String description, ArgumentBinder[] binders, MethodHandle invoker, boolean returnsValue) {
+		this.description = description;
+		this.binders = binders;
+		this.invoker = invoker;
+		this.returnsValue = returnsValue;
+	}
+
+	private static String defaultText(String defaultValue) {
+		return RequestParam.NO_DEFAULT.equals(defaultValue) ? null : defaultValue;
+	}
+
+	private static Object convert(ValueConverter<?> converter, String text, String kind, String name) {
+		try {
+			return converter.convert(text);
+		} catch (IllegalArgumentException e) {
+			throw new BadRequestException("Bad " + kind + ("".equals(name) ? "" : " '" + name + "'") + ": " + e.getMessage());
+		}
+	}
+
+	private static byte[] readBody(HttpServletRequest request) throws IOException {
+		int length = request.getContentLength();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(length > 0 ? length : 256);
+		InputStream in = request.getInputStream();
+		byte[] buffer = new byte[4096];
+		int n;
+		while ((n = in.read(buffer)) != -1) {
+			bytes.write(buffer, 0, n);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Compile the action of a controller route.
+	 * @param route the route, with a controller and an action.
+	 * @param variableNames the names of the path variables of the route.
+	 * @param variablePositions the positions of their segments.
+	 * @return the compiled action.
+	 * @throws InvalidBeanConfigException if the controller has no single public method named
+	 * after the action, or one of its parameters can not be bound.
+	 */
+	static HandlerMethod compile(Route route, List<String> variableNames, int[] variablePositions) {
+		Object controller = route.getController();
+		Method method = findMethod(route, controller.getClass());
+		String description = controller.getClass().getName() + "." + method.getName();
+		Class<?>[] types = method.getParameterTypes();
+		Annotation[][] annotations = method.getParameterAnnotations();
+		ArgumentBinder[] binders = new ArgumentBinder[types.length];
+		boolean hasBody = false;
+		for (int i = 0; i < types.length; i++) {
+			binders[i] = newBinder(description, i, types[i], annotations[i], variableNames, variablePositions);
+			if (binders[i] instanceof BodyBinder) {
+				if (hasBody) {
+					throw new InvalidBeanConfigException("Action " + description + " has more than one request body.");
+				}
+				hasBody = true;
+			}
+		}
+		MethodHandle handle = unreflect(method).bindTo(controller).asType(MethodType.genericMethodType(types.length));
+		if (types.length > MAX_EXACT_ARITY) {
+			handle = handle.asSpreader(Object[].class, types.length);
+		}
+		return new HandlerMethod(description, binders, handle, method.getReturnType() != void.class);
+	}
+
+	private static Method findMethod(Route route, Class<?> type) {
+		Method found = null;
+		for (Method method : type.getMethods()) {
+			if (method.getName().equals(route.getAction()) && !Modifier.isStatic(method.getModifiers()) && !method.isBridge()) {
+				if (found != null) {
+					throw new InvalidBeanConfigException("Action " + route.getAction() + " of route " + route + " is overloaded.");
+				}
+				found = method;
+			}
+		}
+		if (found == null) {
+			throw new InvalidBeanConfigException("No public method " + route.getAction() + " in " + type.getName() + " for route " + route + ".");
+		}
+		return found;
+	}
+
+	private static MethodHandle unreflect(Method method) {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		try {
+			return lookup.unreflect(method);
+		} catch (IllegalAccessException e) {
+			// Public methods of classes that are not public, such as nested classes.
+			method.setAccessible(true);
+			try {
+				return lookup.unreflect(method);
+			} catch (IllegalAccessException again) {
+				throw new InvalidBeanConfigException("Can not access " + method, again);
+			}
+		}
+	}
+
+	private static ValueConverter<?> converterFor(String description, int index, Class<?> type) {
+		ValueConverter<?> converter = ValueConverters.forType(type);
+		if (converter == null) {
+			throw new InvalidBeanConfigException("Parameter " + index + " of " + description + " has unsupported type " + type.getName() + ".");
+		}
+		return converter;
+	}
+
+	private static ArgumentBinder newBinder(String description, int index, Class<?> type, Annotation[] annotations,
+			List<String> variableNames, int[] variablePositions) {
+		for (Annotation annotation : annotations) {
+			if (annotation instanceof PathVariable) {
+				String name = ((PathVariable) annotation).value();
+				int variable = variableNames.indexOf(name);
+				if (variable < 0) {
+					throw new InvalidBeanConfigException("No path variable " + name + " for parameter " + index + " of " + description + ".");
+				}
+				return new PathVariableBinder(name, variablePositions[variable], converterFor(description, index, type));
+			} else if (annotation instanceof RequestParam) {
+				RequestParam param = (RequestParam) annotation;
+				checkOptional(description, index, type, param.required(), defaultText(param.defaultValue()));
+				return new ParameterBinder(param, converterFor(description, index, type));
+			} else if (annotation instanceof RequestHeader) {
+				RequestHeader header = (RequestHeader) annotation;
+				checkOptional(description, index, type, header.required(), defaultText(header.defaultValue()));
+				return new HeaderBinder(header, converterFor(description, index, type));
+			} else if (annotation instanceof RequestBody) {
+				if (type == InputStream.class || type == Reader.class || type == byte[].class) {
+					return new BodyBinder(type, null);
+				}
+				return new BodyBinder(type, converterFor(description, index, type));
+			}
+		}
+		if (ServletRequest.class.isAssignableFrom(type) && type.isAssignableFrom(HttpServletRequest.class)) {
+			return REQUEST;
+		} else if (ServletResponse.class.isAssignableFrom(type) && type.isAssignableFrom(HttpServletResponse.class)) {
+			return RESPONSE;
+		}
+		throw new InvalidBeanConfigException("Parameter " + index + " of " + description + " is neither annotated nor a request or response.");
+	}
+
+	/*
+	 * An optional value may be missing: it must not be primitive unless it has a default,
+	 * which must convert.
+	 */
+	private static void checkOptional(String description, int index, Class<?> type, boolean required, String defaultText) {
+		if (defaultText != null) {
+			try {
+				converterFor(description, index, type).convert(defaultText);
+			} catch (IllegalArgumentException e) {
+				throw new InvalidBeanConfigException("Bad default of parameter " + index + " of " + description + ": " + e.getMessage());
+			}
+		} else if (!required && type.isPrimitive()) {
+			throw new InvalidBeanConfigException("Optional parameter " + index + " of " + description + " is primitive but has no default.");
+		}
+	}
+
+	/**
+	 * @return true if the action takes the response as a parameter.
+	 */
+	boolean bindsResponse() {
+		for (ArgumentBinder binder : this.binders) {
+			if (binder == RESPONSE) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the action returns a value to be written as json, false if it is void.
+	 */
+	boolean returnsValue() {
+		return returnsValue;
+	}
+
+	/**
+	 * Bind the parameters of the action from a request and call it.
+	 * @param segments the segments of the request path.
+	 * @return what the action returns, null if void.
+	 * @throws BadRequestException if a value is missing or does not convert.
+	 */
+	Object invoke(HttpServletRequest request, HttpServletResponse response, String[] segments) throws ServletException, IOException {
+		ArgumentBinder[] binders = this.binders;
+		try {
+			switch (binders.length) {
+			case 0:
+				return (Object) this.invoker.invokeExact();
+			case 1:
+				return (Object) this.invoker.invokeExact(binders[0].bind(request, response, segments));
+			case 2:
+				return (Object) this.invoker.invokeExact(binders[0].bind(request, response, segments),
+						binders[1].bind(request, response, segments));
+			case 3:
+				return (Object) this.invoker.invokeExact(binders[0].bind(request, response, segments),
+						binders[1].bind(request, response, segments), binders[2].bind(request, response, segments));
+			case 4:
+				return (Object) this.invoker.invokeExact(binders[0].bind(request, response, segments),
+						binders[1].bind(request, response, segments), binders[2].bind(request, response, segments),
+						binders[3].bind(request, response, segments));
+			case 5:
+				return (Object) this.invoker.invokeExact(binders[0].bind(request, response, segments),
+						binders[1].bind(request, response, segments), binders[2].bind(request, response, segments),
+						binders[3].bind(request, response, segments), binders[4].bind(request, response, segments));
+			default:
+				Object[] arguments = new Object[binders.length];
+				for (int i = 0; i < arguments.length; i++) {
+					arguments[i] = binders[i].bind(request, response, segments);
+				}
+				return (Object) this.invoker.invokeExact(arguments);
+			}
+		} catch (IOException e) {
+			throw e;
+		} catch (ServletException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new ServletException("Action " + this.description + " failed.", e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return description;
+	}
+}
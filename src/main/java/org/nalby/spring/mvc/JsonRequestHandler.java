@@ -0,0 +1,25 @@
+package org.nalby.spring.mvc;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+
+import org.nalby.spring.json.JsonWriter;
+
+/**
+ * A handler returning the body of the response, which is written as json by
+ * {@link JsonWriter} as it is read: an Iterator or a Stream can be returned to send a large
+ * result without holding it in memory.
+ */
+public interface JsonRequestHandler {
+
+	/**
+	 * Serve a request.
+	 * @param request the request.
+	 * @param pathVariables values of the '{var}' segments of the route, by name.
+	 * @return the body, null to respond 204.
+	 */
+	public Object handle(HttpServletRequest request, Map<String, String> pathVariables) throws ServletException, IOException;
+}
@@ -0,0 +1,21 @@
+package org.nalby.spring.mvc;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds a parameter of a controller action to a '{var}' segment of its route.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface PathVariable {
+
+	/**
+	 * @return the name of the variable in the route path.
+	 */
+	public String value();
+}
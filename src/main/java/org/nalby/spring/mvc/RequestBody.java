@@ -0,0 +1,18 @@
+package org.nalby.spring.mvc;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds a parameter of a controller action to the request body, read as bytes for a byte[],
+ * as text in the request encoding, UTF-8 by default, for a String or any type texts convert
+ * to, or not read at all for an InputStream or a Reader.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface RequestBody {
+}
@@ -0,0 +1,142 @@
+package org.nalby.spring.mvc;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ends one request exactly once, whichever comes first of the handler finishing, failing,
+ * or the request timing out: releases the concurrency permit taken for the request and
+ * completes its asynchronous context if one was started.
+ */
+final class RequestCompletion implements AsyncListener {
+
+	private static final Logger logger = LoggerFactory.getLogger(RequestCompletion.class);
+
+	private final AtomicBoolean done = new AtomicBoolean();
+
+	// Null if the number of concurrent requests is not limited.
+	private final Semaphore permits;
+
+	private volatile AsyncContext asyncContext;
+
+	RequestCompletion(Semaphore permits) {
+		this.permits = permits;
+	}
+
+	/**
+	 * Track an asynchronous context, to be called right after it is started.
+	 * @param asyncContext the context.
+	 * @param timeoutMillis the timeout, 0 for none.
+	 */
+	void start(AsyncContext asyncContext, long timeoutMillis) {
+		asyncContext.setTimeout(timeoutMillis);
+		asyncContext.addListener(this);
+		this.asyncContext = asyncContext;
+	}
+
+	/**
+	 * End the request once the stage completes.
+	 * @param stage the stage returned by an {@link AsyncRequestHandler}.
+	 */
+	void finishWhenDone(CompletionStage<?> stage) {
+		stage.whenComplete(new BiConsumer<Object, Throwable>() {
+			@Override
+			public void accept(Object result, Throwable failure) {
+				if (failure == null) {
+					finish();
+				} else {
+					fail(failure);
+				}
+			}
+		});
+	}
+
+	/**
+	 * End the request normally.
+	 */
+	void finish() {
+		if (this.done.compareAndSet(false, true)) {
+			end();
+		}
+	}
+
+	/**
+	 * End the request with a 500 response, unless the response is already committed.
+	 * @param failure the cause.
+	 */
+	void fail(Throwable failure) {
+		if (!this.done.compareAndSet(false, true)) {
+			logger.warn("Request failed after it ended.", failure);
+			return;
+		}
+		logger.error("Got exception while serving request:", failure);
+		AsyncContext context = this.asyncContext;
+		if (context != null) {
+			sendError(context.getResponse(), HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		}
+		end();
+	}
+
+	private void end() {
+		if (this.permits != null) {
+			this.permits.release();
+		}
+		AsyncContext context = this.asyncContext;
+		if (context != null) {
+			context.complete();
+		}
+	}
+
+	private static void sendError(ServletResponse response, int status) {
+		if (response.isCommitted() || !(response instanceof HttpServletResponse)) {
+			return;
+		}
+		try {
+			((HttpServletResponse) response).sendError(status);
+		} catch (IOException e) {
+			logger.debug("Failed to send error {}.", status, e);
+		}
+	}
+
+	@Override
+	public void onTimeout(AsyncEvent event) throws IOException {
+		if (this.done.compareAndSet(false, true)) {
+			logger.warn("Request timed out.");
+			sendError(event.getAsyncContext().getResponse(), HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+			end();
+		}
+	}
+
+	@Override
+	public void onError(AsyncEvent event) throws IOException {
+		// Such as the client going away, nothing can be written any more.
+		if (this.done.compareAndSet(false, true)) {
+			logger.debug("Request ended with an error.", event.getThrowable());
+			end();
+		}
+	}
+
+	@Override
+	public void onComplete(AsyncEvent event) throws IOException {
+		// Completed by the container, release the permit if nothing did.
+		if (this.done.compareAndSet(false, true) && this.permits != null) {
+			this.permits.release();
+		}
+	}
+
+	@Override
+	public void onStartAsync(AsyncEvent event) throws IOException {
+	}
+}
@@ -0,0 +1,23 @@
+package org.nalby.spring.mvc;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A bean serving the requests of one or more {@link Route}s.
+ */
+public interface RequestHandler {
+
+	/**
+	 * Serve a request.
+	 * @param request the request.
+	 * @param response the response.
+	 * @param pathVariables values of the '{var}' segments of the route, by name.
+	 */
+	public void handle(HttpServletRequest request, HttpServletResponse response,
+			Map<String, String> pathVariables) throws ServletException, IOException;
+}
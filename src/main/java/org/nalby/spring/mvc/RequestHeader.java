@@ -0,0 +1,33 @@
+package org.nalby.spring.mvc;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds a parameter of a controller action to a request header. Arrays are
+ * bound to comma separated values.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface RequestHeader {
+
+	/**
+	 * @return the name of the header.
+	 */
+	public String value();
+
+	/**
+	 * @return false to bind null if the request lacks the header, the request is
+	 * rejected with 400 otherwise.
+	 */
+	public boolean required() default true;
+
+	/**
+	 * @return the value used if the request lacks the header.
+	 */
+	public String defaultValue() default RequestParam.NO_DEFAULT;
+}
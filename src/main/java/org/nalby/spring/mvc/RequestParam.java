@@ -0,0 +1,38 @@
+package org.nalby.spring.mvc;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds a parameter of a controller action to a query or form parameter. Arrays are
+ * bound to comma separated values.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface RequestParam {
+
+	/**
+	 * The value of {@link #defaultValue()} when there is none.
+	 */
+	public static final String NO_DEFAULT = "\n";
+
+	/**
+	 * @return the name of the parameter.
+	 */
+	public String value();
+
+	/**
+	 * @return false to bind null if the request lacks the parameter, the request is
+	 * rejected with 400 otherwise.
+	 */
+	public boolean required() default true;
+
+	/**
+	 * @return the value used if the request lacks the parameter.
+	 */
+	public String defaultValue() default NO_DEFAULT;
+}
@@ -0,0 +1,275 @@
+package org.nalby.spring.mvc;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.ServletException;
+
+/**
+ * Serialized responses of routes with a 'cacheTtl', see {@link Route}. Bounded in bytes
+ * rather than entries, with a segmented LRU: new responses enter a probation segment and
+ * move to a protected one, at most 80% of the budget, when hit again. Responses are evicted
+ * from the probation segment first, so that a burst of responses seen once does not flush
+ * the ones hit repeatedly.
+ * <p>
+ * Concurrent misses of a key are coalesced: one request computes the response while the
+ * others wait for it.
+ */
+public final class ResponseCache {
+
+	// Rough size of an entry besides its key and body: the entry, its map node and arrays.
+	private static final int ENTRY_OVERHEAD = 96;
+
+	/**
+	 * A cached response, a body of json or no content.
+	 */
+	static final class Entry {
+		private final String key;
+		// Null for no content.
+		private final byte[] body;
+		private final long expiresAt;
+		private final long bytes;
+		// Guarded by the cache.
+		private boolean protectedEntry;
+
+		Entry(String key, byte[] body, long expiresAt) {
+			this.key = key;
+			this.body = body;
+			this.expiresAt = expiresAt;
+			this.bytes = ENTRY_OVERHEAD + 2L * key.length() + (body == null ? 0 : body.length);
+		}
+
+		byte[] getBody() {
+			return body;
+		}
+	}
+
+	private final long maxBytes;
+
+	private final long maxProtectedBytes;
+
+	// Both in access order, guarded by this cache.
+	private final LinkedHashMap<String, Entry> probation = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private final LinkedHashMap<String, Entry> protectedEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	private long probationBytes;
+	private long protectedBytes;
+
+	// Responses being computed, by key.
+	private final ConcurrentHashMap<String, FutureTask<Entry>> loading = new ConcurrentHashMap<String, FutureTask<Entry>>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param maxBytes the total size of cached responses, keys and bookkeeping included.
+	 */
+	ResponseCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+		this.maxProtectedBytes = maxBytes / 5 * 4;
+	}
+
+	/**
+	 * Get the response of a key, computing it if it is not cached or expired. Only the first
+	 * of concurrent misses of a key computes it, the others wait for it and get the same
+	 * response or exception.
+	 * @param key the key of the response.
+	 * @param ttlNanos how long the response may be served once computed.
+	 * @param loader computes the body, null for no content.
+	 * @return the response.
+	 * @throws ServletException if the loader throws it, or a checked exception other than
+	 * an IOException.
+	 * @throws IOException if the loader throws it.
+	 */
+	Entry get(String key, long ttlNanos, Callable<byte[]> loader) throws ServletException, IOException {
+		Entry entry = lookup(key);
+		if (entry != null) {
+			this.hits.increment();
+			return entry;
+		}
+		this.misses.increment();
+		FutureTask<Entry> task = this.loading.get(key);
+		if (task == null) {
+			FutureTask<Entry> created = new FutureTask<Entry>(newLoad(key, ttlNanos, loader));
+			task = this.loading.putIfAbsent(key, created);
+			if (task == null) {
+				task = created;
+				try {
+					task.run();
+				} finally {
+					this.loading.remove(key, task);
+				}
+			}
+		}
+		return await(task);
+	}
+
+	/*
+	 * Compute and store the response, before it is removed from the loading ones so that no
+	 * request misses both. A request that missed while another one was storing it finds it
+	 * stored once its own load starts.
+	 */
+	private Callable<Entry> newLoad(final String key, final long ttlNanos, final Callable<byte[]> loader) {
+		return new Callable<Entry>() {
+			@Override
+			public Entry call() throws Exception {
+				Entry entry = lookup(key);
+				if (entry != null) {
+					return entry;
+				}
+				entry = new Entry(key, loader.call(), System.nanoTime() + ttlNanos);
+				put(entry);
+				return entry;
+			}
+		};
+	}
+
+	private static Entry await(FutureTask<Entry> task) throws ServletException, IOException {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return task.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof ServletException) {
+				throw (ServletException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new ServletException(cause);
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/*
+	 * The live entry of a key, promoted to the protected segment if hit in the probation one.
+	 * Expired entries are dropped.
+	 */
+	private synchronized Entry lookup(String key) {
+		Entry entry = this.protectedEntries.get(key);
+		if (entry == null) {
+			entry = this.probation.get(key);
+		}
+		if (entry == null) {
+			return null;
+		}
+		if (System.nanoTime() - entry.expiresAt >= 0) {
+			remove(entry);
+			return null;
+		}
+		if (!entry.protectedEntry) {
+			this.probation.remove(key);
+			this.probationBytes -= entry.bytes;
+			entry.protectedEntry = true;
+			this.protectedEntries.put(key, entry);
+			this.protectedBytes += entry.bytes;
+			// Demote the least recently used protected entries, they get a last chance.
+			Iterator<Entry> iterator = this.protectedEntries.values().iterator();
+			while (this.protectedBytes > this.maxProtectedBytes && iterator.hasNext()) {
+				Entry demoted = iterator.next();
+				iterator.remove();
+				this.protectedBytes -= demoted.bytes;
+				demoted.protectedEntry = false;
+				this.probation.put(demoted.key, demoted);
+				this.probationBytes += demoted.bytes;
+			}
+		}
+		return entry;
+	}
+
+	private synchronized void put(Entry entry) {
+		if (entry.bytes > this.maxBytes) {
+			return;
+		}
+		Entry previous = this.protectedEntries.get(entry.key);
+		if (previous == null) {
+			previous = this.probation.get(entry.key);
+		}
+		if (previous != null) {
+			remove(previous);
+		}
+		this.probation.put(entry.key, entry);
+		this.probationBytes += entry.bytes;
+		evict(this.probation);
+		evict(this.protectedEntries);
+	}
+
+	private void evict(Map<String, Entry> segment) {
+		Iterator<Entry> iterator = segment.values().iterator();
+		while (this.probationBytes + this.protectedBytes > this.maxBytes && iterator.hasNext()) {
+			Entry evicted = iterator.next();
+			iterator.remove();
+			if (evicted.protectedEntry) {
+				this.protectedBytes -= evicted.bytes;
+			} else {
+				this.probationBytes -= evicted.bytes;
+			}
+			this.evictions.increment();
+		}
+	}
+
+	private void remove(Entry entry) {
+		if (entry.protectedEntry) {
+			this.protectedEntries.remove(entry.key);
+			this.protectedBytes -= entry.bytes;
+		} else {
+			this.probation.remove(entry.key);
+			this.probationBytes -= entry.bytes;
+		}
+	}
+
+	/**
+	 * @return requests served from the cache.
+	 */
+	public long getHits() {
+		return this.hits.sum();
+	}
+
+	/**
+	 * @return requests not served from the cache, computing the response or waiting for a
+	 * concurrent request computing it.
+	 */
+	public long getMisses() {
+		return this.misses.sum();
+	}
+
+	/**
+	 * @return responses evicted to keep within the budget, expired ones not included.
+	 */
+	public long getEvictions() {
+		return this.evictions.sum();
+	}
+
+	/**
+	 * @return the size of cached responses, keys and bookkeeping included.
+	 */
+	public synchronized long getCachedBytes() {
+		return this.probationBytes + this.protectedBytes;
+	}
+
+	@Override
+	public String toString() {
+		return "ResponseCache[hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions()
+				+ ", bytes=" + getCachedBytes() + "/" + this.maxBytes + "]";
+	}
+}
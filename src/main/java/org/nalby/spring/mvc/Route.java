@@ -0,0 +1,147 @@
+package org.nalby.spring.mvc;
+
+import java.time.Duration;
+
+/**
+ * Maps requests to a {@link RequestHandler}, declared as a bean:
+ * <pre>
+ * &lt;bean id="userRoute" class="org.nalby.spring.mvc.Route"&gt;
+ *   &lt;property name="path" value="/users/{id}"/&gt;
+ *   &lt;property name="method" value="GET"/&gt;
+ *   &lt;property name="handler" ref="userHandler"/&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ * A path segment is either literal, '{name}' to capture one segment, '*' to match one
+ * segment, or a trailing '**' to match the rest of the path. A route has exactly one of a
+ * handler, an 'asyncHandler' referring to an {@link AsyncRequestHandler}, a 'jsonHandler'
+ * referring to a {@link JsonRequestHandler}, or a 'controller' referring to any bean with
+ * the name of its public method to call as 'action':
+ * <pre>
+ * &lt;property name="controller" ref="userController"/&gt;
+ * &lt;property name="action" value="getUser"/&gt;
+ * </pre>
+ * Parameters of an action are annotated with {@link PathVariable}, {@link RequestParam},
+ * {@link RequestHeader} or {@link RequestBody}, or are the request or the response. What the
+ * action returns is written as json, unless it is void.
+ * <p>
+ * The json of a GET route, of a json handler or an action returning a value without taking
+ * the response, may be cached for 'cacheTtl', such as '5m'. Cached responses are keyed by
+ * the path and the values of the comma separated 'cacheParams' and 'cacheHeaders', other
+ * parameters and headers must not change the response:
+ * <pre>
+ * &lt;property name="cacheTtl" value="5m"/&gt;
+ * &lt;property name="cacheParams" value="page,size"/&gt;
+ * &lt;property name="cacheHeaders" value="Accept-Language"/&gt;
+ * </pre>
+ * See {@link ResponseCache}.
+ */
+public class Route {
+
+	private String path;
+
+	// Comma separated methods, any method if empty.
+	private String method = "";
+
+	private RequestHandler handler;
+
+	private AsyncRequestHandler asyncHandler;
+
+	private JsonRequestHandler jsonHandler;
+
+	private Object controller;
+
+	private String action;
+
+	// Not cached if null.
+	private Duration cacheTtl;
+
+	// Comma separated names of the parameters and headers keying cached responses.
+	private String cacheParams = "";
+
+	private String cacheHeaders = "";
+
+	public String getPath() {
+		return path;
+	}
+
+	public void setPath(String path) {
+		this.path = path;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public void setMethod(String method) {
+		this.method = method;
+	}
+
+	public RequestHandler getHandler() {
+		return handler;
+	}
+
+	public void setHandler(RequestHandler handler) {
+		this.handler = handler;
+	}
+
+	public AsyncRequestHandler getAsyncHandler() {
+		return asyncHandler;
+	}
+
+	public void setAsyncHandler(AsyncRequestHandler asyncHandler) {
+		this.asyncHandler = asyncHandler;
+	}
+
+	public JsonRequestHandler getJsonHandler() {
+		return jsonHandler;
+	}
+
+	public void setJsonHandler(JsonRequestHandler jsonHandler) {
+		this.jsonHandler = jsonHandler;
+	}
+
+	public Object getController() {
+		return controller;
+	}
+
+	public void setController(Object controller) {
+		this.controller = controller;
+	}
+
+	public String getAction() {
+		return action;
+	}
+
+	public void setAction(String action) {
+		this.action = action;
+	}
+
+	public Duration getCacheTtl() {
+		return cacheTtl;
+	}
+
+	public void setCacheTtl(Duration cacheTtl) {
+		this.cacheTtl = cacheTtl;
+	}
+
+	public String getCacheParams() {
+		return cacheParams;
+	}
+
+	public void setCacheParams(String cacheParams) {
+		this.cacheParams = cacheParams;
+	}
+
+	public String getCacheHeaders() {
+		return cacheHeaders;
+	}
+
+	public void setCacheHeaders(String cacheHeaders) {
+		this.cacheHeaders = cacheHeaders;
+	}
+
+	@Override
+	public String toString() {
+		return ("".equals(method) ? "*" : method) + " " + path;
+	}
+}
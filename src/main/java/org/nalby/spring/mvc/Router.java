@@ -0,0 +1,445 @@
+package org.nalby.spring.mvc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.nalby.spring.bean.InvalidBeanConfigException;
+import org.nalby.spring.util.Assert;
+
+/**
+ * Finds the route of a request path in a trie of path segments built once from all routes.
+ * Literal segments are tried before '{var}' and '*', and those before a trailing '**':
+ * when the literal child of a segment leads to no route, the wildcard child is tried, then
+ * the '**' of the node.
+ * <p>
+ * So that a lookup takes time proportional to the number of segments whatever the routes,
+ * the trie is compiled so that it never backtracks: the literal children of a node are
+ * merged with its wildcard child, in that order, and a lookup walks one node per segment,
+ * falling back on the deepest '**' it walked if it gets nowhere. Merged subtrees are built
+ * once per set of nodes they merge and shared.
+ */
+final class Router {
+
+	private static final String ANY_METHOD = "";
+
+	private static final class Node {
+		// Children by literal segment, null if none.
+		Map<String, Node> literals;
+		// Child matching any single segment, '{var}' or '*'.
+		Node wildcard;
+		// Routes ending at this node.
+		Endpoint endpoint;
+		// Routes ending with '**' at this node.
+		Endpoint catchAll;
+	}
+
+	/**
+	 * A route with the positions of the segments it captures.
+	 */
+	static final class Binding {
+		private final Route route;
+		private final int[] variablePositions;
+		private final String[] variableNames;
+		// The compiled action of a controller route, null for other routes.
+		private final HandlerMethod action;
+		// How long responses are cached, 0 if they are not.
+		private final long cacheTtlNanos;
+		private final String[] cacheParams;
+		private final String[] cacheHeaders;
+
+		private Binding(Route route, int[] variablePositions, String[] variableNames, HandlerMethod action) {
+			this.route = route;
+			this.variablePositions = variablePositions;
+			this.variableNames = variableNames;
+			this.action = action;
+			this.cacheTtlNanos = route.getCacheTtl() == null ? 0 : route.getCacheTtl().toNanos();
+			this.cacheParams = splitNames(route.getCacheParams());
+			this.cacheHeaders = splitNames(route.getCacheHeaders());
+		}
+
+		long getCacheTtlNanos() {
+			return cacheTtlNanos;
+		}
+
+		/**
+		 * @param req the request.
+		 * @param path the path of the request.
+		 * @return the key of the cached response to the request, made of the path and the
+		 * values of the parameters and headers keying the route's responses.
+		 */
+		String cacheKey(HttpServletRequest req, String path) {
+			StringBuilder key = new StringBuilder(path.length() + 32).append(path);
+			for (String name : this.cacheParams) {
+				String[] values = req.getParameterValues(name);
+				key.append('?').append(values == null ? -1 : values.length);
+				if (values != null) {
+					for (String value : values) {
+						appendValue(key, value);
+					}
+				}
+			}
+			for (String name : this.cacheHeaders) {
+				appendValue(key.append('!'), req.getHeader(name));
+			}
+			return key.toString();
+		}
+
+		/*
+		 * Length prefixed, so that no value can look like several.
+		 */
+		private static void appendValue(StringBuilder key, String value) {
+			if (value == null) {
+				key.append('-');
+			} else {
+				key.append(value.length()).append(':').append(value);
+			}
+		}
+
+		Route getRoute() {
+			return route;
+		}
+
+		HandlerMethod getAction() {
+			return action;
+		}
+	}
+
+	/**
+	 * Routes sharing a path pattern, by method.
+	 */
+	private static final class Endpoint {
+		private final Map<String, Binding> bindings = new LinkedHashMap<String, Binding>();
+
+		private void add(String method, Binding binding) {
+			Binding existing = this.bindings.put(method, binding);
+			if (existing != null) {
+				throw new InvalidBeanConfigException("Route " + binding.route + " conflicts with " + existing.route + ".");
+			}
+		}
+	}
+
+	/**
+	 * The result of a lookup.
+	 */
+	static final class Match {
+		private final Endpoint endpoint;
+		private final String[] segments;
+
+		private Match(Endpoint endpoint, String[] segments) {
+			this.endpoint = endpoint;
+			this.segments = segments;
+		}
+
+		/**
+		 * @param method the request method.
+		 * @return the route for the method, null if the path does not accept the method. HEAD
+		 * is served by the GET route unless a route takes HEAD, the container discards the body.
+		 */
+		Binding bindingFor(String method) {
+			Binding binding = this.endpoint.bindings.get(method);
+			if (binding == null && "HEAD".equals(method)) {
+				binding = this.endpoint.bindings.get("GET");
+			}
+			return binding != null ? binding : this.endpoint.bindings.get(ANY_METHOD);
+		}
+
+		/**
+		 * @return the methods the path accepts, for the 'Allow' header.
+		 */
+		String allowedMethods() {
+			StringBuilder builder = new StringBuilder();
+			for (String method : this.endpoint.bindings.keySet()) {
+				if (builder.length() > 0) {
+					builder.append(", ");
+				}
+				builder.append(method);
+				if ("GET".equals(method) && !this.endpoint.bindings.containsKey("HEAD")) {
+					builder.append(", HEAD");
+				}
+			}
+			return builder.toString();
+		}
+
+		/**
+		 * @return the segments of the path, '{var}' segments at the positions of their binding.
+		 */
+		String[] segments() {
+			return this.segments;
+		}
+
+		Map<String, String> pathVariables(Binding binding) {
+			if (binding.variableNames.length == 0) {
+				return Collections.emptyMap();
+			}
+			Map<String, String> variables = new HashMap<String, String>(binding.variableNames.length * 2);
+			for (int i = 0; i < binding.variableNames.length; i++) {
+				variables.put(binding.variableNames[i], this.segments[binding.variablePositions[i]]);
+			}
+			return variables;
+		}
+	}
+
+	// The compiled trie, see compile.
+	private final Node root;
+
+	/**
+	 * Build the trie.
+	 * @param routes the routes.
+	 * @throws InvalidBeanConfigException if a route is malformed or two routes match the
+	 * same paths with the same method.
+	 */
+	Router(Collection<Route> routes) {
+		Assert.notNull(routes, "Routes can not be null.");
+		Node trie = new Node();
+		for (Route route : routes) {
+			add(trie, route);
+		}
+		this.root = compile(Collections.singletonList(trie), new HashMap<List<Node>, Node>());
+	}
+
+	/*
+	 * Compile the nodes a path may reach, in the order they are tried, into one node whose
+	 * literal children already hold the wildcard alternatives. Lists are compared by the
+	 * identity of their nodes, so that a set of nodes is compiled once.
+	 */
+	private static Node compile(List<Node> alternatives, Map<List<Node>, Node> compiled) {
+		for (int i = 0; i < alternatives.size(); i++) {
+			if (alternatives.get(i).catchAll != null) {
+				// '**' matches whatever is below it, the alternatives after it are never reached.
+				alternatives = alternatives.subList(0, i + 1);
+				break;
+			}
+		}
+		Node node = compiled.get(alternatives);
+		if (node != null) {
+			return node;
+		}
+		node = new Node();
+		compiled.put(alternatives, node);
+		List<Node> wildcards = new ArrayList<Node>();
+		Map<String, List<Node>> literals = new LinkedHashMap<String, List<Node>>();
+		for (Node alternative : alternatives) {
+			if (node.endpoint == null) {
+				node.endpoint = alternative.endpoint;
+			}
+			node.catchAll = alternative.catchAll;
+			if (alternative.literals != null) {
+				for (String segment : alternative.literals.keySet()) {
+					if (!literals.containsKey(segment)) {
+						literals.put(segment, new ArrayList<Node>());
+					}
+				}
+			}
+			if (alternative.wildcard != null) {
+				wildcards.add(alternative.wildcard);
+			}
+		}
+		for (Map.Entry<String, List<Node>> entry : literals.entrySet()) {
+			// Each alternative in turn, its literal child then its wildcard child.
+			for (Node alternative : alternatives) {
+				Node child = alternative.literals == null ? null : alternative.literals.get(entry.getKey());
+				if (child != null) {
+					entry.getValue().add(child);
+				}
+				if (alternative.wildcard != null) {
+					entry.getValue().add(alternative.wildcard);
+				}
+			}
+		}
+		if (!literals.isEmpty()) {
+			node.literals = new HashMap<String, Node>(literals.size() * 2);
+			for (Map.Entry<String, List<Node>> entry : literals.entrySet()) {
+				node.literals.put(entry.getKey(), compile(entry.getValue(), compiled));
+			}
+		}
+		if (!wildcards.isEmpty()) {
+			node.wildcard = compile(wildcards, compiled);
+		}
+		return node;
+	}
+
+	private void add(Node trie, Route route) {
+		if (route.getPath() == null || !route.getPath().startsWith("/")) {
+			throw new InvalidBeanConfigException("Path of route " + route + " must start with '/'.");
+		}
+		int handlers = (route.getHandler() == null ? 0 : 1) + (route.getAsyncHandler() == null ? 0 : 1)
+				+ (route.getJsonHandler() == null ? 0 : 1) + (route.getController() == null ? 0 : 1);
+		if (handlers != 1) {
+			throw new InvalidBeanConfigException("Route " + route + " must have one of a handler, an async handler, a json handler or a controller.");
+		}
+		if ((route.getController() == null) != (route.getAction() == null)) {
+			throw new InvalidBeanConfigException("Route " + route + " must have both a controller and an action.");
+		}
+		String[] segments = split(route.getPath());
+		List<Integer> positions = new ArrayList<Integer>();
+		List<String> names = new ArrayList<String>();
+		Node node = trie;
+		boolean catchAll = false;
+		for (int i = 0; i < segments.length; i++) {
+			String segment = segments[i];
+			if ("**".equals(segment)) {
+				if (i != segments.length - 1) {
+					throw new InvalidBeanConfigException("'**' must be the last segment of route " + route + ".");
+				}
+				catchAll = true;
+			} else if ("*".equals(segment) || isVariable(segment)) {
+				if (isVariable(segment)) {
+					String name = segment.substring(1, segment.length() - 1);
+					if ("".equals(name) || names.contains(name)) {
+						throw new InvalidBeanConfigException("Bad path variable " + segment + " in route " + route + ".");
+					}
+					positions.add(i);
+					names.add(name);
+				}
+				if (node.wildcard == null) {
+					node.wildcard = new Node();
+				}
+				node = node.wildcard;
+			} else {
+				if (node.literals == null) {
+					node.literals = new HashMap<String, Node>();
+				}
+				Node child = node.literals.get(segment);
+				if (child == null) {
+					child = new Node();
+					node.literals.put(segment, child);
+				}
+				node = child;
+			}
+		}
+		Endpoint endpoint;
+		if (catchAll) {
+			endpoint = node.catchAll == null ? node.catchAll = new Endpoint() : node.catchAll;
+		} else {
+			endpoint = node.endpoint == null ? node.endpoint = new Endpoint() : node.endpoint;
+		}
+		int[] variablePositions = new int[positions.size()];
+		for (int i = 0; i < variablePositions.length; i++) {
+			variablePositions[i] = positions.get(i);
+		}
+		HandlerMethod action = route.getController() == null ? null : HandlerMethod.compile(route, names, variablePositions);
+		List<String> methods = parseMethods(route.getMethod());
+		if (route.getCacheTtl() != null) {
+			validateCache(route, action, methods);
+		}
+		Binding binding = new Binding(route, variablePositions, names.toArray(new String[names.size()]), action);
+		for (String method : methods) {
+			endpoint.add(method, binding);
+		}
+	}
+
+	/*
+	 * Only GET responses written as json by the dispatcher can be cached.
+	 */
+	private static void validateCache(Route route, HandlerMethod action, List<String> methods) {
+		if (route.getCacheTtl().isNegative() || route.getCacheTtl().isZero()) {
+			throw new InvalidBeanConfigException("Cache ttl of route " + route + " must be positive.");
+		}
+		if (!methods.equals(Collections.singletonList("GET"))) {
+			throw new InvalidBeanConfigException("Route " + route + " can only cache GET responses.");
+		}
+		boolean json = route.getJsonHandler() != null || (action != null && action.returnsValue() && !action.bindsResponse());
+		if (!json) {
+			throw new InvalidBeanConfigException("Route " + route + " can only cache a json handler or an action returning a value without taking the response.");
+		}
+	}
+
+	private static String[] splitNames(String names) {
+		List<String> list = new ArrayList<String>();
+		if (names != null) {
+			for (String name : names.split(",")) {
+				if (!"".equals(name.trim())) {
+					list.add(name.trim());
+				}
+			}
+		}
+		return list.toArray(new String[list.size()]);
+	}
+
+	private static boolean isVariable(String segment) {
+		return segment.length() >= 2 && segment.charAt(0) == '{' && segment.charAt(segment.length() - 1) == '}';
+	}
+
+	private static List<String> parseMethods(String method) {
+		List<String> methods = new ArrayList<String>();
+		if (method != null) {
+			for (String name : method.split(",")) {
+				if (!"".equals(name.trim())) {
+					methods.add(name.trim().toUpperCase());
+				}
+			}
+		}
+		if (methods.isEmpty()) {
+			methods.add(ANY_METHOD);
+		}
+		return methods;
+	}
+
+	/*
+	 * Split a path into its non empty segments, '/a//b/' gives [a, b].
+	 */
+	static String[] split(String path) {
+		int count = 0;
+		int length = path.length();
+		for (int i = 0; i < length; i++) {
+			if (path.charAt(i) != '/' && (i == 0 || path.charAt(i - 1) == '/')) {
+				count++;
+			}
+		}
+		String[] segments = new String[count];
+		int index = 0;
+		int start = -1;
+		for (int i = 0; i <= length; i++) {
+			if (i == length || path.charAt(i) == '/') {
+				if (start >= 0) {
+					segments[index++] = path.substring(start, i);
+					start = -1;
+				}
+			} else if (start < 0) {
+				start = i;
+			}
+		}
+		return segments;
+	}
+
+	/**
+	 * Find the routes of a path.
+	 * @param path the request path, relative to the servlet.
+	 * @return the match, null if no route matches the path.
+	 */
+	Match match(String path) {
+		String[] segments = split(path == null ? "/" : path);
+		Endpoint endpoint = find(this.root, segments);
+		return endpoint == null ? null : new Match(endpoint, segments);
+	}
+
+	/*
+	 * One node per segment, the literal child else the wildcard child. The deepest '**'
+	 * walked is what is left when the path leads nowhere.
+	 */
+	private static Endpoint find(Node node, String[] segments) {
+		Endpoint catchAll = null;
+		for (String segment : segments) {
+			if (node.catchAll != null) {
+				catchAll = node.catchAll;
+			}
+			Node child = node.literals == null ? null : node.literals.get(segment);
+			node = child != null ? child : node.wildcard;
+			if (node == null) {
+				return catchAll;
+			}
+		}
+		// '**' matches nothing too.
+		if (node.endpoint != null) {
+			return node.endpoint;
+		}
+		return node.catchAll != null ? node.catchAll : catchAll;
+	}
+}
@@ -0,0 +1,379 @@
+package org.nalby.spring.mvc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.nalby.spring.util.Assert;
+
+/**
+ * Serves the files under a directory, usually the web application root, for GET and HEAD
+ * requests no route matches. Files under WEB-INF and META-INF are never served, nor JSP
+ * sources: the servlet is mapped to '/*', ahead of the container's JSP servlet, so serving
+ * them would disclose their code.
+ * <p>
+ * Responses carry a strong ETag and Last-Modified, and conditional requests get 304.
+ * A single byte range is honored with 206, several ranges get the whole file. If the client
+ * accepts gzip and 'name.gz' exists and is not older than the file, that is sent instead.
+ * <p>
+ * Small files are served from an in-memory cache bounded in bytes, evicting the least
+ * recently used files. Larger files are not copied through the heap: they are handed to the
+ * container's sendfile where it supports it, as Tomcat does, and otherwise sent with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+ */
+final class StaticResources {
+
+	/*
+	 * Request attributes of Tomcat's sendfile, the file is written by the connector after the
+	 * servlet returns.
+	 */
+	static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+	static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+	static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+	static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+	private static final class CachedFile {
+		final byte[] bytes;
+		final long lastModified;
+
+		CachedFile(byte[] bytes, long lastModified) {
+			this.bytes = bytes;
+			this.lastModified = lastModified;
+		}
+	}
+
+	private final Path root;
+
+	// Used for content types, may be null.
+	private final ServletContext servletContext;
+
+	private final long cacheBytes;
+
+	private final int maxCachedFileBytes;
+
+	// In access order, guarded by itself.
+	private final Map<Path, CachedFile> cache = new LinkedHashMap<Path, CachedFile>(16, 0.75f, true);
+
+	private long cachedBytes;
+
+	/**
+	 * @param root the directory to serve.
+	 * @param servletContext the context to look content types up, or null to guess them from
+	 * file names.
+	 * @param cacheBytes the total size of cached files.
+	 * @param maxCachedFileBytes the size of the largest file to cache.
+	 */
+	StaticResources(Path root, ServletContext servletContext, long cacheBytes, int maxCachedFileBytes) {
+		Assert.notNull(root, "Root can not be null.");
+		this.root = root.toAbsolutePath().normalize();
+		this.servletContext = servletContext;
+		this.cacheBytes = cacheBytes;
+		this.maxCachedFileBytes = maxCachedFileBytes;
+	}
+
+	/**
+	 * Serve the file at the path of a request.
+	 * @param req the request.
+	 * @param resp the response.
+	 * @param path the path of the file, relative to the root.
+	 * @return false if the request is not a GET or HEAD or there is no such file, in which
+	 * case nothing is written.
+	 * @throws IOException if the file can not be read or sent.
+	 */
+	boolean serve(HttpServletRequest req, HttpServletResponse resp, String path) throws IOException {
+		boolean head = "HEAD".equals(req.getMethod());
+		if (!head && !"GET".equals(req.getMethod())) {
+			return false;
+		}
+		Path file = resolve(path);
+		BasicFileAttributes attributes = file == null ? null : attributes(file);
+		if (attributes == null) {
+			return false;
+		}
+		String contentType = contentType(file.getFileName().toString());
+		long length = attributes.size();
+		long lastModified = attributes.lastModifiedTime().toMillis();
+		boolean gzip = false;
+		String range = req.getHeader("Range");
+		Path gzipFile = file.resolveSibling(file.getFileName() + ".gz");
+		BasicFileAttributes gzipAttributes = attributes(gzipFile);
+		if (gzipAttributes != null && gzipAttributes.lastModifiedTime().toMillis() >= lastModified) {
+			resp.setHeader("Vary", "Accept-Encoding");
+			// Ranges are served from the file itself, which is what clients resume.
+			if (range == null && acceptsGzip(req)) {
+				gzip = true;
+				file = gzipFile;
+				length = gzipAttributes.size();
+				lastModified = gzipAttributes.lastModifiedTime().toMillis();
+			}
+		}
+		String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + (gzip ? "-gz\"" : "\"");
+		resp.setHeader("ETag", etag);
+		resp.setDateHeader("Last-Modified", lastModified);
+		resp.setHeader("Accept-Ranges", "bytes");
+		if (notModified(req, etag, lastModified)) {
+			resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return true;
+		}
+		if (contentType != null) {
+			resp.setContentType(contentType);
+		}
+		if (gzip) {
+			resp.setHeader("Content-Encoding", "gzip");
+		}
+		long start = 0;
+		long end = length;
+		if (range != null && ifRangeMatches(req, etag, lastModified)) {
+			long[] bounds = parseRange(range, length);
+			if (bounds != null && bounds.length == 0) {
+				resp.setHeader("Content-Range", "bytes */" + length);
+				resp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return true;
+			}
+			if (bounds != null) {
+				start = bounds[0];
+				end = bounds[1];
+				resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				resp.setHeader("Content-Range", "bytes " + start + "-" + (end - 1) + "/" + length);
+			}
+		}
+		resp.setContentLengthLong(end - start);
+		if (!head && end > start) {
+			send(req, resp, file, length, lastModified, start, end);
+		}
+		return true;
+	}
+
+	/*
+	 * The file of a path if it is under the root and not private nor a JSP, null otherwise.
+	 */
+	private Path resolve(String path) {
+		if (path == null) {
+			return null;
+		}
+		try {
+			String relative = path.startsWith("/") ? path.substring(1) : path;
+			Path file = this.root.resolve(relative).normalize();
+			if (!file.startsWith(this.root) || file.equals(this.root)) {
+				return null;
+			}
+			String first = this.root.relativize(file).getName(0).toString();
+			if ("WEB-INF".equalsIgnoreCase(first) || "META-INF".equalsIgnoreCase(first)) {
+				return null;
+			}
+			// Lower cased as file systems may ignore case.
+			String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+			if (name.endsWith(".jsp") || name.endsWith(".jspx")) {
+				return null;
+			}
+			return file;
+		} catch (InvalidPathException e) {
+			return null;
+		}
+	}
+
+	private static BasicFileAttributes attributes(Path file) throws IOException {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			return attributes.isRegularFile() ? attributes : null;
+		} catch (FileSystemException e) {
+			// Missing, or a path through a file.
+			return null;
+		}
+	}
+
+	private String contentType(String name) {
+		String contentType = this.servletContext == null ? null : this.servletContext.getMimeType(name);
+		return contentType != null ? contentType : URLConnection.getFileNameMap().getContentTypeFor(name);
+	}
+
+	private static boolean acceptsGzip(HttpServletRequest req) {
+		String acceptEncoding = req.getHeader("Accept-Encoding");
+		if (acceptEncoding == null) {
+			return false;
+		}
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.trim().split(";");
+			if ("gzip".equalsIgnoreCase(parts[0].trim())) {
+				return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+			}
+		}
+		return false;
+	}
+
+	private static long dateHeader(HttpServletRequest req, String name) {
+		try {
+			return req.getDateHeader(name);
+		} catch (IllegalArgumentException e) {
+			// Malformed dates are ignored.
+			return -1;
+		}
+	}
+
+	/*
+	 * If-None-Match takes precedence over If-Modified-Since, and compares tags weakly.
+	 */
+	private static boolean notModified(HttpServletRequest req, String etag, long lastModified) {
+		String ifNoneMatch = req.getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			for (String tag : ifNoneMatch.split(",")) {
+				tag = tag.trim();
+				if (tag.startsWith("W/")) {
+					tag = tag.substring(2);
+				}
+				if ("*".equals(tag) || etag.equals(tag)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		long ifModifiedSince = dateHeader(req, "If-Modified-Since");
+		// Dates in headers have a precision of seconds.
+		return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+	}
+
+	/*
+	 * If-Range asks for the range only if the file is still the same, compared strongly.
+	 */
+	private static boolean ifRangeMatches(HttpServletRequest req, String etag, long lastModified) {
+		String ifRange = req.getHeader("If-Range");
+		if (ifRange == null) {
+			return true;
+		}
+		if (ifRange.trim().startsWith("\"")) {
+			return etag.equals(ifRange.trim());
+		}
+		return lastModified / 1000 == dateHeader(req, "If-Range") / 1000;
+	}
+
+	/**
+	 * Parse a Range header of a single range.
+	 * @param range the header.
+	 * @param length the length of the file.
+	 * @return the start and the exclusive end, an empty array if the range can not be
+	 * satisfied, null if the header is malformed or has several ranges so the whole file is
+	 * to be sent.
+	 */
+	static long[] parseRange(String range, long length) {
+		range = range.trim();
+		if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+			return null;
+		}
+		String spec = range.substring("bytes=".length()).trim();
+		int dash = spec.indexOf('-');
+		if (dash < 0) {
+			return null;
+		}
+		try {
+			String first = spec.substring(0, dash).trim();
+			String last = spec.substring(dash + 1).trim();
+			if (first.isEmpty()) {
+				long suffix = Long.parseLong(last);
+				if (suffix <= 0 || length == 0) {
+					return new long[0];
+				}
+				return new long[] {Math.max(0, length - suffix), length};
+			}
+			long start = Long.parseLong(first);
+			if (start >= length) {
+				return new long[0];
+			}
+			long end = last.isEmpty() ? length - 1 : Long.parseLong(last);
+			if (start < 0 || end < start) {
+				return null;
+			}
+			return new long[] {start, Math.min(end + 1, length)};
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private void send(HttpServletRequest req, HttpServletResponse resp, Path file, long length, long lastModified,
+			long start, long end) throws IOException {
+		if (length <= this.maxCachedFileBytes) {
+			byte[] bytes = cachedBytes(file, length, lastModified);
+			if (bytes != null) {
+				resp.getOutputStream().write(bytes, (int) start, (int) (end - start));
+				return;
+			}
+		}
+		if (Boolean.TRUE.equals(req.getAttribute(SENDFILE_SUPPORT))) {
+			req.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+			req.setAttribute(SENDFILE_START, start);
+			req.setAttribute(SENDFILE_END, end);
+			return;
+		}
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			OutputStream outputStream = resp.getOutputStream();
+			WritableByteChannel target = Channels.newChannel(outputStream);
+			long position = start;
+			while (position < end) {
+				long sent = channel.transferTo(position, end - position, target);
+				if (sent <= 0) {
+					// Truncated while being sent.
+					break;
+				}
+				position += sent;
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	/*
+	 * The content of a small file, from the cache if it did not change since cached. Null if
+	 * the file changed while being read, it is sent from disk then.
+	 */
+	private byte[] cachedBytes(Path file, long length, long lastModified) throws IOException {
+		synchronized (this.cache) {
+			CachedFile cached = this.cache.get(file);
+			if (cached != null && cached.lastModified == lastModified && cached.bytes.length == length) {
+				return cached.bytes;
+			}
+		}
+		byte[] bytes = Files.readAllBytes(file);
+		if (bytes.length != length) {
+			return null;
+		}
+		synchronized (this.cache) {
+			CachedFile previous = this.cache.put(file, new CachedFile(bytes, lastModified));
+			if (previous != null) {
+				this.cachedBytes -= previous.bytes.length;
+			}
+			this.cachedBytes += bytes.length;
+			Iterator<CachedFile> iterator = this.cache.values().iterator();
+			while (this.cachedBytes > this.cacheBytes && iterator.hasNext()) {
+				this.cachedBytes -= iterator.next().bytes.length;
+				iterator.remove();
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return the total size of cached files.
+	 */
+	long getCachedBytes() {
+		synchronized (this.cache) {
+			return this.cachedBytes;
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package org.nalby.spring.util;
+
+/**
+ * Converts a literal text into a value of a certain type.
+ * @param <T> the target type.
+ */
+public interface ValueConverter<T> {
+
+	/**
+	 * Convert the text.
+	 * @param text the text, not null.
+	 * @return the converted value.
+	 * @throws IllegalArgumentException if the text can not be converted.
+	 */
+	public T convert(String text);
+}
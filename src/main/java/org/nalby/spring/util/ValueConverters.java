@@ -0,0 +1,239 @@
+package org.nalby.spring.util;
+
+import java.lang.reflect.Array;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Registry of {@link ValueConverter}s keyed by target type. Supported types are String,
+ * primitives and their wrappers, enums, Class, Duration and arrays of any of these, which
+ * are written as comma separated elements.
+ */
+public class ValueConverters {
+
+	private static final Map<Class<?>, Class<?>> wrappers = new HashMap<Class<?>, Class<?>>();
+
+	private static final ConcurrentMap<Class<?>, ValueConverter<?>> converters =
+			new ConcurrentHashMap<Class<?>, ValueConverter<?>>();
+
+	// A number followed by a unit, such as 30s or 100ms.
+	private static final Pattern SIMPLE_DURATION = Pattern.compile("(\\d+)\\s*(ms|s|m|h|d)");
+
+	static {
+		wrappers.put(boolean.class, Boolean.class);
+		wrappers.put(short.class, Short.class);
+		wrappers.put(int.class, Integer.class);
+		wrappers.put(long.class, Long.class);
+		wrappers.put(float.class, Float.class);
+		wrappers.put(double.class, Double.class);
+		wrappers.put(char.class, Character.class);
+		wrappers.put(byte.class, Byte.class);
+
+		register(String.class, new ValueConverter<String>() {
+			public String convert(String text) {
+				return text;
+			}
+		});
+		register(Boolean.class, new ValueConverter<Boolean>() {
+			public Boolean convert(String text) {
+				String trimmed = text.trim();
+				if ("true".equalsIgnoreCase(trimmed)) {
+					return Boolean.TRUE;
+				}
+				if ("false".equalsIgnoreCase(trimmed)) {
+					return Boolean.FALSE;
+				}
+				throw new IllegalArgumentException("Not a boolean: " + text);
+			}
+		});
+		register(Byte.class, new ValueConverter<Byte>() {
+			public Byte convert(String text) {
+				return Byte.parseByte(text.trim());
+			}
+		});
+		register(Short.class, new ValueConverter<Short>() {
+			public Short convert(String text) {
+				return Short.parseShort(text.trim());
+			}
+		});
+		register(Integer.class, new ValueConverter<Integer>() {
+			public Integer convert(String text) {
+				return Integer.parseInt(text.trim());
+			}
+		});
+		register(Long.class, new ValueConverter<Long>() {
+			public Long convert(String text) {
+				return Long.parseLong(text.trim());
+			}
+		});
+		register(Float.class, new ValueConverter<Float>() {
+			public Float convert(String text) {
+				return Float.parseFloat(text.trim());
+			}
+		});
+		register(Double.class, new ValueConverter<Double>() {
+			public Double convert(String text) {
+				return Double.parseDouble(text.trim());
+			}
+		});
+		register(Character.class, new ValueConverter<Character>() {
+			public Character convert(String text) {
+				if (text.length() != 1) {
+					throw new IllegalArgumentException("Not a single character: " + text);
+				}
+				return text.charAt(0);
+			}
+		});
+		register(Class.class, new ValueConverter<Class<?>>() {
+			public Class<?> convert(String text) {
+				try {
+					return Class.forName(text.trim());
+				} catch (ClassNotFoundException e) {
+					throw new IllegalArgumentException("Class not found: " + text, e);
+				}
+			}
+		});
+		register(Duration.class, new ValueConverter<Duration>() {
+			public Duration convert(String text) {
+				return parseDuration(text);
+			}
+		});
+		for (Map.Entry<Class<?>, Class<?>> entry : wrappers.entrySet()) {
+			converters.put(entry.getKey(), converters.get(entry.getValue()));
+		}
+	}
+
+	private ValueConverters() {
+		/* Avoid being instantiated. */
+	}
+
+	private static <T> void register(Class<T> type, ValueConverter<? extends T> converter) {
+		converters.put(type, converter);
+	}
+
+	/**
+	 * Parse a duration written either in ISO-8601, such as PT30S, or as a number followed by
+	 * one of the units ms, s, m, h and d, such as 30s.
+	 * @param text the text.
+	 * @return the duration.
+	 * @throws IllegalArgumentException if the text is neither.
+	 */
+	public static Duration parseDuration(String text) {
+		Assert.notNull(text, "Text can not be null.");
+		String trimmed = text.trim();
+		Matcher matcher = SIMPLE_DURATION.matcher(trimmed);
+		if (matcher.matches()) {
+			long amount = Long.parseLong(matcher.group(1));
+			String unit = matcher.group(2);
+			if ("ms".equals(unit)) {
+				return Duration.ofMillis(amount);
+			} else if ("s".equals(unit)) {
+				return Duration.ofSeconds(amount);
+			} else if ("m".equals(unit)) {
+				return Duration.ofMinutes(amount);
+			} else if ("h".equals(unit)) {
+				return Duration.ofHours(amount);
+			}
+			return Duration.ofDays(amount);
+		}
+		try {
+			return Duration.parse(trimmed);
+		} catch (DateTimeParseException e) {
+			throw new IllegalArgumentException("Not a duration: " + text, e);
+		}
+	}
+
+	/**
+	 * @param type a type.
+	 * @return the wrapper class if the type is primitive, the type itself otherwise.
+	 */
+	public static Class<?> wrap(Class<?> type) {
+		return type.isPrimitive() ? wrappers.get(type) : type;
+	}
+
+	/**
+	 * Get the converter for a type.
+	 * @param type the target type.
+	 * @return the converter, or null if the type is not supported.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> ValueConverter<T> forType(Class<T> type) {
+		Assert.notNull(type, "Type can not be null.");
+		ValueConverter<?> converter = converters.get(type);
+		if (converter == null) {
+			if (type.isEnum()) {
+				converter = newEnumConverter(type);
+			} else if (type.isArray() && !type.getComponentType().isArray()) {
+				converter = newArrayConverter(type.getComponentType());
+			}
+			if (converter == null) {
+				return null;
+			}
+			ValueConverter<?> existing = converters.putIfAbsent(type, converter);
+			if (existing != null) {
+				converter = existing;
+			}
+		}
+		return (ValueConverter<T>) converter;
+	}
+
+	/**
+	 * @param type the target type.
+	 * @return true if texts can be converted to the type.
+	 */
+	public static boolean canConvert(Class<?> type) {
+		return forType(type) != null;
+	}
+
+	/**
+	 * Convert a text.
+	 * @param text the text.
+	 * @param type the target type.
+	 * @return the converted value, boxed if the type is primitive.
+	 * @throws IllegalArgumentException if the type is not supported or the text can not be
+	 * converted.
+	 */
+	public static Object convert(String text, Class<?> type) {
+		Assert.notNull(text, "Text can not be null.");
+		ValueConverter<?> converter = forType(type);
+		if (converter == null) {
+			throw new IllegalArgumentException("Can not convert text to " + type.getName());
+		}
+		return converter.convert(text);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static ValueConverter<?> newEnumConverter(final Class type) {
+		return new ValueConverter<Object>() {
+			public Object convert(String text) {
+				return Enum.valueOf(type, text.trim());
+			}
+		};
+	}
+
+	private static ValueConverter<?> newArrayConverter(final Class<?> componentType) {
+		final ValueConverter<?> componentConverter = forType(componentType);
+		if (componentConverter == null) {
+			return null;
+		}
+		return new ValueConverter<Object>() {
+			public Object convert(String text) {
+				if (text.trim().isEmpty()) {
+					return Array.newInstance(componentType, 0);
+				}
+				String[] elements = text.split(",");
+				Object array = Array.newInstance(componentType, elements.length);
+				for (int i = 0; i < elements.length; i++) {
+					Array.set(array, i, componentConverter.convert(componentType == String.class ? elements[i].trim() : elements[i]));
+				}
+				return array;
+			}
+		};
+	}
+}
@@ -0,0 +1,119 @@
+package org.nalby.spring.bean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nalby.spring.bean.XmlBeanDefinitionTest.SetterClass;
+import org.nalby.spring.bean.XmlBeanHandlerTest.Class1;
+import org.nalby.spring.bean.XmlBeanHandlerTest.Class2;
+
+public class BeanDefinitionSnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File writeXml(String name, String beans) throws IOException {
+		File file = folder.newFile(name);
+		String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<beans>" + beans + "</beans>";
+		Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private XmlBeansHandler createFromXml(File xml) throws IOException {
+		InputStream inputStream = new FileInputStream(xml);
+		try {
+			XmlBeansHandler handler = XmlBeansHandler.fromReader(new StaxBeanDefinitionReader(inputStream));
+			handler.createBeans();
+			return handler;
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	private File writeDefaultXml() throws IOException {
+		return writeXml("beans.xml",
+				"<bean id=\"bean2\" class=\"" + Class2.class.getName() + "\"><constructor-arg index=\"0\" ref=\"bean1\"/></bean>"
+				+ "<bean id=\"bean1\" class=\"" + Class1.class.getName() + "\"/>"
+				+ "<bean id=\"bean3\" class=\"" + SetterClass.class.getName() + "\" scope=\"prototype\">"
+				+ "<constructor-arg index=\"0\" value=\"hello\"/><property name=\"number\" value=\"100\"/></bean>");
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		File xml = writeDefaultXml();
+		File snapshotFile = new File(folder.getRoot(), "beans.snapshot");
+		String hash = BeanDefinitionSnapshot.hash(xml);
+		BeanDefinitionSnapshot.write(snapshotFile, hash, createFromXml(xml));
+		BeanDefinitionSnapshot snapshot = BeanDefinitionSnapshot.open(snapshotFile, hash);
+		assertNotNull(snapshot);
+		List<XmlBeanDefinition> definitions = snapshot.readBeanDefinitions();
+		assertEquals(3, definitions.size());
+		assertEquals("bean1", definitions.get(0).getId());
+		XmlBeansHandler handler = XmlBeansHandler.fromReader(snapshot);
+		handler.createBeans();
+		Class2 bean2 = (Class2) handler.getBean("bean2");
+		assertTrue(bean2.getClass1() == handler.getBean("bean1"));
+		SetterClass bean3 = (SetterClass) handler.getBean("bean3");
+		assertEquals("hello", bean3.getString());
+		assertEquals(100, bean3.getNumber());
+		assertTrue(bean3 != handler.getBean("bean3"));
+	}
+
+	@Test
+	public void testRejectedWhenStale() throws IOException {
+		File xml = writeDefaultXml();
+		File snapshotFile = new File(folder.getRoot(), "beans.snapshot");
+		BeanDefinitionSnapshot.write(snapshotFile, BeanDefinitionSnapshot.hash(xml), createFromXml(xml));
+		File changed = writeXml("changed.xml", "<bean id=\"bean1\" class=\"" + Class1.class.getName() + "\"/>");
+		assertFalse(BeanDefinitionSnapshot.hash(xml).equals(BeanDefinitionSnapshot.hash(changed)));
+		assertNull(BeanDefinitionSnapshot.open(snapshotFile, BeanDefinitionSnapshot.hash(changed)));
+		assertNull(BeanDefinitionSnapshot.open(new File(folder.getRoot(), "missing"), BeanDefinitionSnapshot.hash(xml)));
+	}
+
+	/*
+	 * The same files hash the same wherever they are, as at build time and once deployed.
+	 */
+	@Test
+	public void testHashOfMovedFiles() throws IOException {
+		File build = writeXml("beans.xml", "<import resource=\"modules/more.xml\"/>");
+		File module = new File(this.folder.newFolder("modules"), "more.xml");
+		Files.write(module.toPath(), "<beans/>".getBytes(StandardCharsets.UTF_8));
+		File deployed = new File(this.folder.newFolder("deployed"), "beans.xml");
+		File deployedModule = new File(new File(deployed.getParentFile(), "modules"), "more.xml");
+		deployedModule.getParentFile().mkdirs();
+		Files.copy(build.toPath(), deployed.toPath());
+		Files.copy(module.toPath(), deployedModule.toPath());
+		String hash = BeanDefinitionSnapshot.hash(Arrays.asList(build, module));
+		assertEquals(hash, BeanDefinitionSnapshot.hash(Arrays.asList(deployed, deployedModule)));
+		Files.write(deployedModule.toPath(), "<beans></beans>".getBytes(StandardCharsets.UTF_8));
+		assertFalse(hash.equals(BeanDefinitionSnapshot.hash(Arrays.asList(deployed, deployedModule))));
+	}
+
+	@Test
+	public void testRejectedWhenCorrupted() throws IOException {
+		File xml = writeDefaultXml();
+		File snapshotFile = new File(folder.getRoot(), "beans.snapshot");
+		String hash = BeanDefinitionSnapshot.hash(xml);
+		BeanDefinitionSnapshot.write(snapshotFile, hash, createFromXml(xml));
+		byte[] bytes = Files.readAllBytes(snapshotFile.toPath());
+		byte[] truncated = new byte[20];
+		System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+		Files.write(snapshotFile.toPath(), truncated);
+		assertNull(BeanDefinitionSnapshot.open(snapshotFile, hash));
+	}
+}
@@ -0,0 +1,84 @@
+package org.nalby.spring.bean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import org.nalby.spring.bean.XmlBeanHandlerTest.Class1;
+
+public class BeanElementParserTest {
+
+	private static XmlElement element(String id, String className) {
+		XmlElement element = new XmlElement("bean");
+		element.setAttribute("id", id);
+		element.setAttribute("class", className);
+		return element;
+	}
+
+	private static List<XmlElement> elements(int count) {
+		List<XmlElement> elements = new ArrayList<XmlElement>();
+		for (int i = 0; i < count; i++) {
+			elements.add(element("bean" + i, Class1.class.getName()));
+		}
+		return elements;
+	}
+
+	@Test
+	public void testDeclarationOrder() {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<XmlBeanDefinition> definitions = BeanElementParser.parse(elements(100), true, executor);
+			assertEquals(100, definitions.size());
+			for (int i = 0; i < definitions.size(); i++) {
+				assertEquals("bean" + i, definitions.get(i).getId());
+				assertTrue(definitions.get(i).isLazyInit());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testFirstInvalidBeanReported() {
+		List<XmlElement> elements = elements(100);
+		elements.set(90, element("bean90", "no.such.Second"));
+		elements.set(30, element("bean30", "no.such.First"));
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			for (int round = 0; round < 20; round++) {
+				try {
+					BeanElementParser.parse(elements, false, executor);
+					fail("Expected an exception.");
+				} catch (InvalidBeanConfigException e) {
+					assertTrue(e.getMessage().contains("no.such.First"));
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(timeout = 30000)
+	public void testParseFromTaskOfSamePool() throws Exception {
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			// The only worker waits for chunks, which must not wait for a worker in turn.
+			int size = executor.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					return BeanElementParser.parse(elements(50), false, executor).size();
+				}
+			}).get();
+			assertEquals(50, size);
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
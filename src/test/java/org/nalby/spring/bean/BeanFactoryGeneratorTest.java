@@ -0,0 +1,96 @@
+package org.nalby.spring.bean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nalby.spring.bean.XmlBeanDefinitionTest.SetterClass;
+import org.nalby.spring.bean.XmlBeanHandlerTest.Class1;
+import org.nalby.spring.bean.XmlBeanHandlerTest.Class2;
+
+public class BeanFactoryGeneratorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static class PrivateClass {
+	}
+
+	private static BeanDefinitionReader reader(String beans) {
+		String xml = "<beans>" + beans + "</beans>";
+		return new StaxBeanDefinitionReader(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/*
+	 * Generate, compile and load the reader.
+	 */
+	private BeanDefinitionReader generate(String beans) throws Exception {
+		File sources = this.folder.newFolder("sources");
+		File classes = this.folder.newFolder("classes");
+		File source = new BeanFactoryGenerator("org.nalby.test.Beans").write(reader(beans), "hash", sources);
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		int status = compiler.run(null, null, null, "-classpath", System.getProperty("java.class.path"),
+				"-d", classes.getPath(), source.getPath());
+		assertEquals(0, status);
+		URLClassLoader loader = new URLClassLoader(new URL[] {classes.toURI().toURL()}, getClass().getClassLoader());
+		return (BeanDefinitionReader) loader.loadClass("org.nalby.test.Beans").getDeclaredConstructor().newInstance();
+	}
+
+	@Test
+	public void testGeneratedBeans() throws Exception {
+		BeanDefinitionReader generated = generate(
+				"<bean id=\"user\" class=\"" + Class2.class.getName() + "\"><constructor-arg index=\"0\" ref=\"base\"/></bean>"
+				+ "<bean id=\"base\" class=\"" + Class1.class.getName() + "\"/>"
+				+ "<bean id=\"setter\" class=\"" + SetterClass.class.getName() + "\" scope=\"prototype\">"
+				+ "<property name=\"number\" value=\"42\"/><property name=\"string\" value=\"caf&#233; &quot;\\n&#10;&#13;&#9;\"/></bean>");
+		assertEquals("hash", generated.getClass().getField(BeanFactoryGenerator.SOURCE_HASH_FIELD).get(null));
+		XmlBeansHandler handler = XmlBeansHandler.fromReader(generated);
+		handler.createBeans();
+		assertSame(handler.getBean("base"), ((Class2) handler.getBean("user")).getClass1());
+		SetterClass setter = (SetterClass) handler.getBean("setter");
+		assertEquals(42, setter.getNumber());
+		assertEquals("caf\u00e9 \"\\n\n\r\t", setter.getString());
+		assertNotSame(setter, handler.getBean("setter"));
+		// Generated definitions are the same as the xml ones, reloading the xml keeps the beans.
+		XmlBeansHandler reloaded = handler.reload(reader("<bean id=\"base\" class=\"" + Class1.class.getName() + "\"/>"));
+		assertSame(handler.getBean("base"), reloaded.getBean("base"));
+		assertTrue(reloaded.getRebuiltBeans().isEmpty());
+	}
+
+	@Test
+	public void testInvalidBeans() throws IOException {
+		String[] invalid = {
+			"<bean id=\"user\" class=\"" + Class2.class.getName() + "\"><constructor-arg index=\"0\" ref=\"missing\"/></bean>",
+			"<bean id=\"hidden\" class=\"" + PrivateClass.class.getName() + "\"/>",
+			"<bean id=\"base\" class=\"" + Class1.class.getName() + "\"/><bean id=\"base\" class=\"" + Class1.class.getName() + "\"/>",
+		};
+		for (String beans : invalid) {
+			try {
+				new BeanFactoryGenerator("org.nalby.test.Beans").generate(reader(beans));
+				fail(beans);
+			} catch (InvalidBeanConfigException e) {
+				// Expected.
+			}
+		}
+	}
+
+	@Test
+	public void testLiteral() {
+		assertEquals("\"a\\\"b\\\\c\\n\\r\\t\\0011\\u00e9\"", BeanFactoryGenerator.literal("a\"b\\c\n\r\t\u00011\u00e9"));
+	}
+}
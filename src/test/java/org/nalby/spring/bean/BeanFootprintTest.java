@@ -0,0 +1,106 @@
+package org.nalby.spring.bean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.Test;
+import org.nalby.spring.bean.XmlBeanDefinitionTest.SetterClass;
+import org.nalby.spring.bean.XmlBeanHandlerTest.Class1;
+import org.nalby.spring.bean.XmlBeanHandlerTest.Class2;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+public class BeanFootprintTest {
+
+	private static Element bean(Document document, String id, Class<?> clazz) {
+		Element bean = document.createElement("bean");
+		bean.setAttribute("id", id);
+		bean.setAttribute("class", clazz.getName());
+		document.getDocumentElement().appendChild(bean);
+		return bean;
+	}
+
+	private static Element arg(Element bean, String tag, String name, String attribute, String value) {
+		Element arg = bean.getOwnerDocument().createElement(tag);
+		arg.setAttribute(tag.equals("property") ? "name" : "index", name);
+		arg.setAttribute(attribute, value);
+		bean.appendChild(arg);
+		return arg;
+	}
+
+	/*
+	 * A base bean, then beans referring to it, then beans with literal properties.
+	 */
+	private static Document document(int beans) throws ParserConfigurationException {
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		document.appendChild(document.createElement("beans"));
+		bean(document, "base", Class1.class);
+		for (int i = 0; i < beans / 2; i++) {
+			arg(bean(document, "user" + i, Class2.class), "constructor-arg", "0", "ref", "base");
+		}
+		for (int i = 0; i < beans - beans / 2; i++) {
+			Element bean = bean(document, "setter" + i, SetterClass.class);
+			arg(bean, "property", "number", "value", String.valueOf(i));
+			arg(bean, "property", "string", "value", "text" + i);
+		}
+		return document;
+	}
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	@Test
+	public void testFrozenDefinitions() throws ParserConfigurationException {
+		Document document = document(4);
+		Element prototypeBean = bean(document, "prototype", Class2.class);
+		prototypeBean.setAttribute("scope", "prototype");
+		arg(prototypeBean, "constructor-arg", "0", "ref", "base");
+		XmlBeansHandler handler = new XmlBeansHandler(document);
+		handler.createBeans();
+		XmlBeanDefinition base = handler.getCreatedDefinitions().get(0);
+		for (XmlBeanDefinition definition : handler.getCreatedDefinitions()) {
+			if (definition.getId().startsWith("user")) {
+				// Created singletons keep their arguments but nothing needed to create them.
+				assertNull(definition.referencedBeans);
+				assertNull(definition.getConstructor());
+				assertSame(base.getId(), definition.referencedBeanNames[0]);
+				assertSame(base.getId(), definition.ctorArgs[0].getValue());
+			}
+		}
+		// Prototypes keep what creating instances needs.
+		Object prototype = handler.getBean("prototype");
+		assertNotSame(prototype, handler.getBean("prototype"));
+		assertSame(handler.getBean("base"), ((Class2) prototype).getClass1());
+		// Kept definitions still compare equal on reload.
+		XmlBeansHandler reloaded = handler.reload(new DomBeanDefinitionReader(document(4)));
+		assertTrue(reloaded.getRebuiltBeans().isEmpty());
+		assertSame(handler.getBean("user1"), reloaded.getBean("user1"));
+	}
+
+	@Test
+	public void testRetainedHeap() throws ParserConfigurationException {
+		int beans = 20000;
+		long before = usedHeap();
+		XmlBeansHandler handler = new XmlBeansHandler(document(beans));
+		handler.createBeans();
+		long retained = usedHeap() - before;
+		assertNotNull(handler.getBean("setter" + (beans / 2 - 1)));
+		assertEquals(42, ((SetterClass) handler.getBean("setter42")).getNumber());
+		// About 450 bytes, beans included, where definitions holding the document and what
+		// creating beans needs retained about 1800.
+		assertTrue("Retained " + retained / beans + " bytes per bean.", retained / beans < 800);
+	}
+}
@@ -0,0 +1,87 @@
+package org.nalby.spring.bean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+import org.nalby.spring.bean.XmlBeanHandlerTest.Class1;
+import org.nalby.spring.bean.XmlBeanHandlerTest.Class2;
+
+public class BeanReloadTest {
+
+	private static final String CLASS1 = Class1.class.getName();
+
+	private static final String CLASS2 = Class2.class.getName();
+
+	private static BeanDefinitionReader reader(String beans) {
+		String xml = "<beans>" + beans + "</beans>";
+		return new StaxBeanDefinitionReader(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static String bean(String id, String clazz, String ref) {
+		String bean = "<bean id=\"" + id + "\" class=\"" + clazz + "\">";
+		if (ref != null) {
+			bean += "<constructor-arg index=\"0\" ref=\"" + ref + "\"/>";
+		}
+		return bean + "</bean>";
+	}
+
+	private static XmlBeansHandler create(String beans) {
+		XmlBeansHandler handler = XmlBeansHandler.fromReader(reader(beans));
+		handler.createBeans();
+		return handler;
+	}
+
+	@Test
+	public void testRebuildChangedBeansAndDependents() {
+		XmlBeansHandler handler = create(bean("base", CLASS1, null) + bean("user", CLASS2, "base")
+				+ bean("other", CLASS1, null) + bean("otherUser", CLASS2, "other"));
+		Object base = handler.getBean("base");
+		Object other = handler.getBean("other");
+		Object otherUser = handler.getBean("otherUser");
+		Object user = handler.getBean("user");
+		XmlBeansHandler reloaded = handler.reload(reader(bean("base", XmlBeanHandlerTest.RunnableClass.class.getName(), null)
+				+ bean("user", CLASS2, "base") + bean("other", CLASS1, null) + bean("otherUser", CLASS2, "other")
+				+ bean("added", CLASS2, "other")));
+		assertEquals(new HashSet<String>(Arrays.asList("base", "user", "added")),
+				new HashSet<String>(reloaded.getRebuiltBeans()));
+		assertSame(other, reloaded.getBean("other"));
+		assertSame(otherUser, reloaded.getBean("otherUser"));
+		assertNotSame(base, reloaded.getBean("base"));
+		assertSame(reloaded.getBean("base"), ((Class2) reloaded.getBean("user")).getClass1());
+		assertSame(other, ((Class2) reloaded.getBean("added")).getClass1());
+		// The old handler is left as it was.
+		assertSame(base, handler.getBean("base"));
+		assertSame(user, handler.getBean("user"));
+		assertEquals(null, handler.getBean("added"));
+	}
+
+	@Test
+	public void testRemovedBeans() {
+		XmlBeansHandler handler = create(bean("base", CLASS1, null) + bean("other", CLASS1, null));
+		XmlBeansHandler reloaded = handler.reload(reader(bean("base", CLASS1, null)));
+		assertEquals(0, reloaded.getRebuiltBeans().size());
+		assertSame(handler.getBean("base"), reloaded.getBean("base"));
+		assertEquals(null, reloaded.getBean("other"));
+	}
+
+	@Test
+	public void testInvalidReloadKeepsBeans() {
+		XmlBeansHandler handler = create(bean("base", CLASS1, null) + bean("user", CLASS2, "base"));
+		Object user = handler.getBean("user");
+		try {
+			handler.reload(reader(bean("user", CLASS2, "missing")));
+			fail("Expected an exception.");
+		} catch (RuntimeException e) {
+			// Expected.
+		}
+		assertSame(user, handler.getBean("user"));
+	}
+}
@@ -0,0 +1,113 @@
+package org.nalby.spring.bean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ConcurrentGetBeanTest {
+
+	private static final int THREADS = 16;
+
+	private static final int ROUNDS = 200;
+
+	public static class SlowClass {
+		static final AtomicInteger instances = new AtomicInteger();
+		private String name;
+		public SlowClass() {
+			instances.incrementAndGet();
+			// Widen the window in which other threads may race the creation.
+			Thread.yield();
+		}
+		public void setName(String name) {
+			this.name = name;
+		}
+		public String getName() {
+			return name;
+		}
+	}
+
+	public static class SlowDependent extends SlowClass {
+		private SlowClass dependency;
+		public SlowDependent(SlowClass dependency) {
+			this.dependency = dependency;
+		}
+		public SlowClass getDependency() {
+			return dependency;
+		}
+	}
+
+	private XmlBeansHandler createLazyBeans(int count) {
+		StringBuilder xml = new StringBuilder("<beans default-lazy-init=\"true\">");
+		for (int i = 0; i < count; i++) {
+			xml.append("<bean id=\"bean").append(i).append("\" class=\"").append(SlowDependent.class.getName()).append("\">")
+				.append("<constructor-arg index=\"0\" ref=\"base").append(i % 4).append("\"/>")
+				.append("<property name=\"name\" value=\"bean").append(i).append("\"/></bean>");
+		}
+		for (int i = 0; i < 4; i++) {
+			xml.append("<bean id=\"base").append(i).append("\" class=\"").append(SlowClass.class.getName()).append("\">")
+				.append("<property name=\"name\" value=\"base").append(i).append("\"/></bean>");
+		}
+		xml.append("</beans>");
+		XmlBeansHandler handler = XmlBeansHandler.fromReader(new StaxBeanDefinitionReader(
+				new ByteArrayInputStream(xml.toString().getBytes(StandardCharsets.UTF_8))));
+		handler.createBeans();
+		return handler;
+	}
+
+	@Test
+	public void testEachBeanCreatedOnce() throws Exception {
+		for (int round = 0; round < ROUNDS; round++) {
+			SlowClass.instances.set(0);
+			final XmlBeansHandler handler = createLazyBeans(8);
+			assertEquals(0, SlowClass.instances.get());
+			final CountDownLatch start = new CountDownLatch(1);
+			ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+			try {
+				List<Future<SlowDependent[]>> futures = new ArrayList<Future<SlowDependent[]>>();
+				for (int t = 0; t < THREADS; t++) {
+					final int offset = t;
+					futures.add(executor.submit(new Callable<SlowDependent[]>() {
+						@Override
+						public SlowDependent[] call() throws Exception {
+							start.await();
+							SlowDependent[] beans = new SlowDependent[8];
+							for (int i = 0; i < beans.length; i++) {
+								int index = (i + offset) % beans.length;
+								beans[index] = (SlowDependent) handler.getBean("bean" + index);
+								// A published bean must have its properties injected.
+								assertEquals("bean" + index, beans[index].getName());
+								assertNotNull(beans[index].getDependency().getName());
+							}
+							return beans;
+						}
+					}));
+				}
+				start.countDown();
+				SlowDependent[] first = futures.get(0).get();
+				for (Future<SlowDependent[]> future : futures) {
+					SlowDependent[] beans = future.get();
+					for (int i = 0; i < beans.length; i++) {
+						assertTrue(beans[i] == first[i]);
+					}
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+			// Eight dependents and the four beans they share.
+			assertEquals(12, SlowClass.instances.get());
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package org.nalby.spring.bean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nalby.spring.bean.XmlBeanHandlerTest.Class1;
+
+public class MethodCachingTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	public interface Lookup {
+		String lookup(int id);
+
+		String lookupIn(int id, String language);
+
+		String find(String name);
+
+		int count();
+
+		void reset();
+	}
+
+	public static class SlowLookup implements Lookup {
+		final AtomicInteger calls = new AtomicInteger();
+
+		public String lookup(int id) {
+			this.calls.incrementAndGet();
+			return id < 0 ? null : "item" + id;
+		}
+
+		public String lookupIn(int id, String language) {
+			this.calls.incrementAndGet();
+			return language + id;
+		}
+
+		public String find(String name) {
+			this.calls.incrementAndGet();
+			return name;
+		}
+
+		public int count() {
+			return this.calls.incrementAndGet();
+		}
+
+		public void reset() {
+			this.calls.set(0);
+		}
+	}
+
+	public static class LookupUser {
+		private final Lookup lookup;
+
+		public LookupUser(Lookup lookup) {
+			this.lookup = lookup;
+		}
+
+		public Lookup getLookup() {
+			return lookup;
+		}
+	}
+
+	public static class ConcreteUser {
+		public ConcreteUser(SlowLookup lookup) {
+		}
+	}
+
+	private static XmlBeansHandler create(String beans) {
+		String xml = "<beans>" + beans + "</beans>";
+		XmlBeansHandler handler = XmlBeansHandler.fromReader(
+				new StaxBeanDefinitionReader(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))));
+		handler.createBeans();
+		return handler;
+	}
+
+	private static String lookupBean(String attributes) {
+		return "<bean id=\"lookup\" class=\"" + SlowLookup.class.getName() + "\" " + attributes + "/>";
+	}
+
+	/*
+	 * Calls the target actually got, through an uncached method.
+	 */
+	private static int calls(Lookup lookup) {
+		int calls = lookup.count() - 1;
+		lookup.reset();
+		return calls;
+	}
+
+	@Test
+	public void testMemoizedMethods() {
+		XmlBeansHandler handler = create(lookupBean("cache-methods=\"lookup*\"")
+				+ "<bean id=\"user\" class=\"" + LookupUser.class.getName() + "\"><constructor-arg index=\"0\" ref=\"lookup\"/></bean>");
+		Lookup lookup = handler.getBean(Lookup.class);
+		assertSame(lookup, handler.getBean("lookup"));
+		assertSame(lookup, ((LookupUser) handler.getBean("user")).getLookup());
+		assertEquals("item1", lookup.lookup(1));
+		assertEquals("item1", lookup.lookup(1));
+		assertNull(lookup.lookup(-1));
+		assertNull(lookup.lookup(-1));
+		assertEquals("fr1", lookup.lookupIn(1, "fr"));
+		assertEquals("fr1", lookup.lookupIn(1, "fr"));
+		assertEquals("en1", lookup.lookupIn(1, "en"));
+		assertEquals(4, calls(lookup));
+		// Not matching the patterns.
+		lookup.find("a");
+		lookup.find("a");
+		assertEquals(2, calls(lookup));
+		// The proxy stands for the bean only by its interfaces.
+		assertTrue(handler.getBeansOfType(SlowLookup.class).isEmpty());
+	}
+
+	@Test
+	public void testSizeAndTtl() throws InterruptedException {
+		Lookup lookup = create(lookupBean("cache-methods=\"lookup, find\" cache-size=\"1\"")).getBean(Lookup.class);
+		lookup.lookup(1);
+		lookup.lookup(2);
+		lookup.lookup(1);
+		lookup.find("a");
+		lookup.find("a");
+		assertEquals(4, calls(lookup));
+		lookup = create(lookupBean("cache-methods=\"lookup\" ttl=\"1ms\"")).getBean(Lookup.class);
+		lookup.lookup(1);
+		Thread.sleep(5);
+		lookup.lookup(1);
+		assertEquals(2, calls(lookup));
+	}
+
+	@Test
+	public void testCacheSizeSplitInStripes() {
+		// 16 stripes, 1 of them holding 2 results.
+		Lookup lookup = create(lookupBean("cache-methods=\"lookup\" cache-size=\"17\"")).getBean(Lookup.class);
+		for (int i = 0; i < 1000; i++) {
+			lookup.lookup(i);
+		}
+		assertEquals(17, MethodCaching.cachedResults(lookup));
+		lookup = create(lookupBean("cache-methods=\"lookup\" cache-size=\"3\"")).getBean(Lookup.class);
+		for (int i = 0; i < 1000; i++) {
+			lookup.lookup(i);
+		}
+		assertEquals(3, MethodCaching.cachedResults(lookup));
+	}
+
+	@Test
+	public void testEquals() {
+		XmlBeansHandler handler = create(lookupBean("cache-methods=\"*\"")
+				+ "<bean id=\"other\" class=\"" + SlowLookup.class.getName() + "\" cache-methods=\"lookup\"/>");
+		Lookup lookup = (Lookup) handler.getBean("lookup");
+		Lookup other = (Lookup) handler.getBean("other");
+		assertTrue(lookup.equals(lookup));
+		assertFalse(lookup.equals(other));
+		assertFalse(lookup.equals(null));
+		assertEquals(lookup.hashCode(), lookup.hashCode());
+		Set<Lookup> set = new HashSet<Lookup>(Collections.singleton(lookup));
+		assertTrue(set.contains(lookup));
+		assertFalse(set.contains(other));
+	}
+
+	@Test
+	public void testPrototypes() {
+		XmlBeansHandler handler = create(lookupBean("cache-methods=\"lookup\" scope=\"prototype\""));
+		Lookup first = (Lookup) handler.getBean("lookup");
+		Lookup second = (Lookup) handler.getBean("lookup");
+		assertNotSame(first, second);
+		first.lookup(1);
+		second.lookup(1);
+		// Each instance caches what it returned.
+		assertEquals(1, calls(first));
+		assertEquals(1, calls(second));
+	}
+
+	@Test
+	public void testInvalidConfigurations() {
+		String[] invalid = {
+			lookupBean("cache-methods=\"reset\""),
+			lookupBean("cache-methods=\"missing*\""),
+			lookupBean("cache-size=\"10\""),
+			lookupBean("cache-methods=\"lookup\" cache-size=\"0\""),
+			lookupBean("cache-methods=\"lookup\" ttl=\"soon\""),
+			"<bean id=\"plain\" class=\"" + Class1.class.getName() + "\" cache-methods=\"*\"/>",
+			lookupBean("cache-methods=\"lookup\"")
+				+ "<bean id=\"user\" class=\"" + ConcreteUser.class.getName() + "\"><constructor-arg index=\"0\" ref=\"lookup\"/></bean>",
+		};
+		for (String beans : invalid) {
+			try {
+				create(beans);
+				fail(beans);
+			} catch (InvalidBeanConfigException e) {
+				// Expected.
+			}
+		}
+	}
+
+	@Test
+	public void testSnapshotAndReload() throws IOException {
+		String beans = lookupBean("cache-methods=\"lookup\" cache-size=\"10\" ttl=\"30s\"");
+		XmlBeansHandler handler = create(beans);
+		File file = new File(this.folder.getRoot(), "beans.snapshot");
+		BeanDefinitionSnapshot.write(file, "hash", handler);
+		List<XmlBeanDefinition> restored = BeanDefinitionSnapshot.open(file, "hash").readBeanDefinitions();
+		assertTrue(restored.get(0).sameDefinitionAs(handler.getCreatedDefinitions().get(0)));
+		String xml = "<beans>" + lookupBean("cache-methods=\"lookup\" cache-size=\"20\" ttl=\"30s\"") + "</beans>";
+		XmlBeansHandler reloaded = handler.reload(
+				new StaxBeanDefinitionReader(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))));
+		assertEquals(1, reloaded.getRebuiltBeans().size());
+	}
+}
@@ -0,0 +1,94 @@
+package org.nalby.spring.bean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nalby.spring.bean.XmlBeanHandlerTest.Class1;
+
+public class StartupReportTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	public static class SlowClass {
+		public SlowClass() throws InterruptedException {
+			Thread.sleep(50);
+		}
+	}
+
+	public static class SlowDependent {
+		public SlowDependent(Object dependency) throws InterruptedException {
+			Thread.sleep(20);
+		}
+	}
+
+	private XmlBeansHandler createBeans() {
+		String xml = "<beans>"
+				+ "<bean id=\"top\" class=\"" + SlowDependent.class.getName() + "\"><constructor-arg index=\"0\" ref=\"middle\"/></bean>"
+				+ "<bean id=\"middle\" class=\"" + SlowDependent.class.getName() + "\"><constructor-arg index=\"0\" ref=\"slow\"/></bean>"
+				+ "<bean id=\"slow\" class=\"" + SlowClass.class.getName() + "\"/>"
+				+ "<bean id=\"other\" class=\"" + SlowDependent.class.getName() + "\"><constructor-arg index=\"0\" ref=\"fast\"/></bean>"
+				+ "<bean id=\"fast\" class=\"" + Class1.class.getName() + "\"/>"
+				+ "</beans>";
+		XmlBeansHandler handler = XmlBeansHandler.fromReader(new StaxBeanDefinitionReader(
+				new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))));
+		handler.createBeans();
+		return handler;
+	}
+
+	@Test
+	public void testReport() {
+		StartupReport report = createBeans().getStartupReport();
+		assertEquals(5, report.getBeanCount());
+		assertEquals(Arrays.asList("read", "sort", "create"), Arrays.asList(report.getPhaseNanos().keySet().toArray()));
+		assertEquals(Arrays.asList("class loading", "parsing", "instantiation", "injection"),
+				Arrays.asList(report.getStepNanos().keySet().toArray()));
+		assertEquals("slow", report.getSlowestBeans().get(0));
+		assertEquals(5, report.getSlowestBeans().size());
+		assertEquals(Arrays.asList("slow", "middle", "top"), report.getCriticalPath());
+		assertTrue(report.getCriticalPathNanos() >= 90000000L);
+		assertTrue(report.toString().contains("slow -> middle -> top"));
+	}
+
+	@Test
+	public void testFlightRecorderEvents() throws IOException {
+		Recording recording = new Recording();
+		recording.enable("org.nalby.spring.BeanCreation");
+		recording.enable("org.nalby.spring.StartupPhase");
+		recording.start();
+		try {
+			createBeans();
+		} finally {
+			recording.stop();
+		}
+		Path file = folder.newFile("startup.jfr").toPath();
+		recording.dump(file);
+		recording.close();
+		Set<String> beans = new HashSet<String>();
+		Set<String> phases = new HashSet<String>();
+		for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+			if ("org.nalby.spring.BeanCreation".equals(event.getEventType().getName())) {
+				beans.add(event.getString("beanId"));
+			} else if ("org.nalby.spring.StartupPhase".equals(event.getEventType().getName())) {
+				phases.add(event.getString("phase"));
+			}
+		}
+		assertEquals(new HashSet<String>(Arrays.asList("top", "middle", "slow", "other", "fast")), beans);
+		assertEquals(new HashSet<String>(Arrays.asList("read", "sort", "create")), phases);
+	}
+}
@@ -0,0 +1,83 @@
+package org.nalby.spring.bean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Test;
+import org.nalby.spring.bean.XmlBeanDefinitionTest.SetterClass;
+import org.nalby.spring.bean.XmlBeanHandlerTest.Class1;
+import org.nalby.spring.bean.XmlBeanHandlerTest.Class2;
+
+public class StaxBeanDefinitionReaderTest {
+
+	private InputStream newInputStream(String beans) {
+		String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<beans>" + beans + "</beans>";
+		return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private String bean(String id, Class<?> clazz, String body) {
+		return "<bean id=\"" + id + "\" class=\"" + clazz.getName() + "\">" + body + "</bean>";
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testWithNullInputStream() {
+		new StaxBeanDefinitionReader(null);
+	}
+
+	@Test
+	public void testReadDefinitions() {
+		String xml = "<!-- comment -->"
+				+ bean("bean2", Class2.class, "<constructor-arg index=\"0\" ref=\"bean1\"/>")
+				+ "<other><bean id=\"ignored\" class=\"NoClass\"/></other>"
+				+ bean("bean1", Class1.class, "")
+				+ bean("bean3", SetterClass.class, "<property name=\"number\" value=\"100\"/>\n<property name=\"string\" value=\"text\"/>");
+		List<XmlBeanDefinition> definitions = new StaxBeanDefinitionReader(newInputStream(xml)).readBeanDefinitions();
+		assertEquals(3, definitions.size());
+		assertEquals("bean2", definitions.get(0).getId());
+		assertTrue(definitions.get(0).hasUnresolvedDependency());
+		assertEquals("bean1", definitions.get(1).getId());
+		SetterClass bean3 = (SetterClass) definitions.get(2).getBean();
+		assertEquals(100, bean3.getNumber());
+		assertEquals("text", bean3.getString());
+	}
+
+	@Test
+	public void testSameValidationAsDom() {
+		String[] invalidBeans = new String[] {
+			"<bean id=\"1bean\" class=\"" + Class1.class.getName() + "\"/>",
+			"<bean id=\"bean\" class=\"NoClass\"/>",
+			bean("bean", Class2.class, "<constructor-arg index=\"1\" ref=\"bean1\"/>"),
+			bean("bean", SetterClass.class, "<property name=\"number\" value=\"error.\"/>"),
+			bean("bean", SetterClass.class, "<property name=\"number\"/>"),
+		};
+		for (String invalidBean : invalidBeans) {
+			try {
+				new StaxBeanDefinitionReader(newInputStream(invalidBean)).readBeanDefinitions();
+				fail("Should reject " + invalidBean);
+			} catch (InvalidBeanConfigException e) {
+				/* Expected. */
+			}
+		}
+	}
+
+	@Test(expected = InvalidBeanConfigException.class)
+	public void testMalformedXml() {
+		new StaxBeanDefinitionReader(newInputStream("<bean id=\"bean\">")).readBeanDefinitions();
+	}
+
+	@Test
+	public void testCreateBeans() {
+		String xml = bean("bean2", Class2.class, "<constructor-arg index=\"0\" ref=\"bean1\"/>")
+				+ bean("bean1", Class1.class, "");
+		XmlBeansHandler handler = XmlBeansHandler.fromReader(new StaxBeanDefinitionReader(newInputStream(xml)));
+		handler.createBeans();
+		Class2 bean2 = (Class2) handler.getBean("bean2");
+		assertTrue(bean2.getClass1() == handler.getBean("bean1"));
+	}
+}
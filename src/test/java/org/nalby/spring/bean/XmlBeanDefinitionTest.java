@@ -1,6 +1,9 @@
 package org.nalby.spring.bean;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -54,6 +57,13 @@ public class XmlBeanDefinitionTest {
 		}
 	}
 	
+	public static class OverloadedSetterClass {
+		public void setValue(String value) {
+		}
+		public void setValue(int value) {
+		}
+	}
+
 	public static abstract class AbsctractClass {
 	}
 	
@@ -382,6 +392,99 @@ public class XmlBeanDefinitionTest {
 		assertTrue(bean.getNumber() == 100);
 		assertTrue("hello".equals(bean.getString()));
 	}
-	
-	
+
+	@Test
+	public void testOverloadedSetter() throws ParserConfigurationException {
+		assertThrowInvalidConfigException(newElementWithIdAndClass(OverloadedSetterClass.class));
+	}
+
+	@Test
+	public void testScope() throws ParserConfigurationException {
+		Element element = newElementWithIdAndClass(Object.class);
+		assertEquals(BeanScope.SINGLETON, XmlBeanDefinition.parseXmlBeanElement(element).getScope());
+		element.setAttribute("scope", "prototype");
+		assertEquals(BeanScope.PROTOTYPE, XmlBeanDefinition.parseXmlBeanElement(element).getScope());
+		element.setAttribute("scope", "session");
+		assertThrowInvalidConfigException(element);
+	}
+
+	/*
+	 * Properties and literal constructor arguments are resolved while parsing.
+	 */
+	@Test
+	public void testResolvedWhileParsing() throws ParserConfigurationException {
+		List<Map<String, String>> args = new LinkedList<Map<String,String>>();
+		args.add(newPropertyArg("missing", "value", "100"));
+		try {
+			XmlBeanDefinition.parseXmlBeanElement(newElementWithProperties(SetterClass.class, args));
+			fail("Property without setter should be rejected.");
+		} catch (InvalidBeanConfigException e) {
+			/* Expected. */
+		}
+		args.clear();
+		args.add(newConstructorArg("0", "value", "true"));
+		args.add(newConstructorArg("1", "value", "true"));
+		args.add(newConstructorArg("2", "value", "true"));
+		try {
+			XmlBeanDefinition.parseXmlBeanElement(newElmentWithConstructorArgs(TwoArgClass.class, args));
+			fail("No constructor takes three arguments.");
+		} catch (InvalidBeanConfigException e) {
+			/* Expected. */
+		}
+	}
+
+	@Test
+	public void testClassMetadataShared() {
+		BeanClassMetadata metadata = BeanClassMetadata.forClass(SetterClass.class);
+		assertTrue(metadata == BeanClassMetadata.forClass(SetterClass.class));
+		assertTrue(metadata.setterFor("number") != null);
+		assertTrue(metadata.setterFor("missing") == null);
+		assertTrue(metadata.constructorsWithArity(1).length == 1);
+		assertTrue(metadata.constructorsWithArity(3).length == 0);
+	}
+
+	@Test
+	public void testMethodHandleStrategy() throws ParserConfigurationException {
+		Document xmlDoc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		List<Map<String, String>> ctorArgs = new LinkedList<Map<String,String>>();
+		ctorArgs.add(newConstructorArg("0", "value", "hello"));
+		List<Map<String, String>> propertyArgs = new LinkedList<Map<String,String>>();
+		propertyArgs.add(newPropertyArg("number", "value", "100"));
+		Element element = newBeanElementWithArgs(xmlDoc, SetterClass.class, ctorArgs, propertyArgs);
+		XmlBeanDefinition beanDefinition = XmlBeanDefinition.parseXmlBeanElement(element);
+		beanDefinition.setInstantiationStrategy(InstantiationStrategy.METHOD_HANDLE);
+		SetterClass bean = (SetterClass) beanDefinition.getBean();
+		assertTrue(bean.getNumber() == 100);
+		assertTrue("hello".equals(bean.getString()));
+	}
+
+	@Test
+	public void testBadLiteralFailsWhileParsing() throws ParserConfigurationException {
+		List<Map<String, String>> args = new LinkedList<Map<String,String>>();
+		args.add(newConstructorArg("0", "value", "yes"));
+		args.add(newConstructorArg("1", "ref", "referredBean"));
+		try {
+			XmlBeanDefinition.parseXmlBeanElement(newElmentWithConstructorArgs(TwoArgClass.class, args));
+			fail("'yes' is not a boolean.");
+		} catch (InvalidBeanConfigException e) {
+			/* Expected. */
+		}
+	}
+
+	/*
+	 * Converted arrays are cached but each caller gets its own copy.
+	 */
+	@Test
+	public void testConvertedArraysCopied() {
+		BeanArg arg = new BeanArg("a,b", BeanArgType.VALUE);
+		String[] first = (String[]) arg.getConvertedValue(String[].class);
+		String[] second = (String[]) arg.getConvertedValue(String[].class);
+		assertNotSame(first, second);
+		first[0] = "changed";
+		assertArrayEquals(new String[] {"a", "b"}, second);
+		int[] numbers = (int[]) new BeanArg("1,2", BeanArgType.VALUE).getConvertedValue(int[].class);
+		assertArrayEquals(new int[] {1, 2}, numbers);
+		assertEquals("text", new BeanArg("text", BeanArgType.VALUE).getConvertedValue(String.class));
+	}
+
 }
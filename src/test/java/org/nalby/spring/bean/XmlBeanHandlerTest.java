@@ -1,9 +1,16 @@
 package org.nalby.spring.bean;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
@@ -33,6 +40,56 @@ public class XmlBeanHandlerTest {
 	}
 	
 
+	public static class CountingClass {
+		static final AtomicInteger instances = new AtomicInteger();
+		public CountingClass() {
+			instances.incrementAndGet();
+		}
+	}
+
+	public static class CountingDependent extends CountingClass {
+		private CountingClass dependency;
+		public CountingDependent(CountingClass dependency) {
+			this.dependency = dependency;
+		}
+		public CountingClass getDependency() {
+			return dependency;
+		}
+	}
+
+	public static class RunnableClass extends Class1 implements Runnable {
+		@Override
+		public void run() {
+		}
+	}
+
+	public static class ArrayHolder {
+		private final int[] numbers;
+		private String[] tags;
+
+		public ArrayHolder(int[] numbers) {
+			this.numbers = numbers;
+		}
+
+		public int[] getNumbers() {
+			return numbers;
+		}
+
+		public String[] getTags() {
+			return tags;
+		}
+
+		public void setTags(String[] tags) {
+			this.tags = tags;
+		}
+	}
+
+	public static class FailingClass {
+		public FailingClass() {
+			throw new IllegalStateException("Failed on purpose.");
+		}
+	}
+
 	private void displayDocument(Document document) {
 	    try {
 	       DOMSource domSource = new DOMSource(document);
@@ -120,7 +177,347 @@ public class XmlBeanHandlerTest {
 			fail();
 		}
 	}
-	
 
+	private Element createReferringBeanElement(String id, String ref, Document document) {
+		Element element = createBeanElement(id, Class2.class.getName(), document);
+		Element ctorArg = document.createElement("constructor-arg");
+		ctorArg.setAttribute("index", "0");
+		ctorArg.setAttribute("ref", ref);
+		element.appendChild(ctorArg);
+		return element;
+	}
+
+	private String rootCauseMessage(Throwable throwable) {
+		while (throwable.getCause() != null) {
+			throwable = throwable.getCause();
+		}
+		return throwable.getMessage();
+	}
+
+	@Test
+	public void testChainDeclaredInReverseOrder() throws ParserConfigurationException {
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		Element beans = document.createElement("beans");
+		beans.appendChild(createReferringBeanElement("bean2", "bean1", document));
+		beans.appendChild(createBeanElement("bean1", Class1.class.getName(), document));
+		document.appendChild(beans);
+		XmlBeansHandler handler = new XmlBeansHandler(document);
+		handler.createBeans();
+		Class2 bean2 = (Class2) handler.getBean("bean2");
+		assertTrue(bean2.getClass1() == handler.getBean("bean1"));
+	}
+
+	@Test
+	public void testCircularDependency() throws ParserConfigurationException {
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		Element beans = document.createElement("beans");
+		beans.appendChild(createBeanElement("bean0", Class1.class.getName(), document));
+		beans.appendChild(createReferringBeanElement("bean1", "bean2", document));
+		beans.appendChild(createReferringBeanElement("bean2", "bean3", document));
+		beans.appendChild(createReferringBeanElement("bean3", "bean1", document));
+		document.appendChild(beans);
+		try {
+			new XmlBeansHandler(document).createBeans();
+			fail("Circular dependency should be detected.");
+		} catch (InvalidBeanConfigException e) {
+			assertEquals("Circular dependency found: bean1 -> bean2 -> bean3 -> bean1.", rootCauseMessage(e));
+		}
+	}
+
+	@Test
+	public void testUndefinedReference() throws ParserConfigurationException {
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		Element beans = document.createElement("beans");
+		beans.appendChild(createReferringBeanElement("bean1", "missing", document));
+		document.appendChild(beans);
+		try {
+			new XmlBeansHandler(document).createBeans();
+			fail("Undefined reference should be detected.");
+		} catch (InvalidBeanConfigException e) {
+			assertEquals("Bean bean1 refers to undefined bean missing.", rootCauseMessage(e));
+		}
+	}
+
+	private Document createWideDocument(int width) throws ParserConfigurationException {
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		Element beans = document.createElement("beans");
+		for (int i = 0; i < width; i++) {
+			beans.appendChild(createReferringBeanElement("dependent" + i, "root" + i, document));
+			beans.appendChild(createBeanElement("root" + i, Class1.class.getName(), document));
+		}
+		document.appendChild(beans);
+		return document;
+	}
+
+	@Test
+	public void testParallelCreation() throws ParserConfigurationException {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			XmlBeansHandler handler = new XmlBeansHandler(createWideDocument(100));
+			handler.setExecutor(executor);
+			handler.createBeans();
+			for (int i = 0; i < 100; i++) {
+				Class2 dependent = (Class2) handler.getBean("dependent" + i);
+				assertTrue(dependent.getClass1() == handler.getBean("root" + i));
+				assertTrue(dependent == handler.getBean("dependent" + i));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testParallelCreationFailures() throws ParserConfigurationException {
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		Element beans = document.createElement("beans");
+		beans.appendChild(createBeanElement("bean1", Class1.class.getName(), document));
+		beans.appendChild(createBeanElement("failing2", FailingClass.class.getName(), document));
+		beans.appendChild(createReferringBeanElement("skipped", "failing2", document));
+		beans.appendChild(createBeanElement("failing1", FailingClass.class.getName(), document));
+		document.appendChild(beans);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			XmlBeansHandler handler = new XmlBeansHandler(document);
+			handler.setExecutor(executor);
+			handler.createBeans();
+			fail("Failing beans should be reported.");
+		} catch (InvalidBeanConfigException e) {
+			String message = e.getCause().getMessage();
+			assertTrue(message.startsWith("Failed to create beans: failing2 ("));
+			assertTrue(message.indexOf("failing1 (") > message.indexOf("failing2 ("));
+			assertTrue(message.indexOf("skipped") < 0);
+			assertEquals(1, e.getCause().getSuppressed().length);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private Element createCountingDependent(String id, String ref, Document document) {
+		Element element = createBeanElement(id, CountingDependent.class.getName(), document);
+		Element ctorArg = document.createElement("constructor-arg");
+		ctorArg.setAttribute("index", "0");
+		ctorArg.setAttribute("ref", ref);
+		element.appendChild(ctorArg);
+		return element;
+	}
+
+	@Test
+	public void testLazyInit() throws ParserConfigurationException {
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		Element beans = document.createElement("beans");
+		Element lazy = createCountingDependent("lazy", "lazyDependency", document);
+		lazy.setAttribute("lazy-init", "true");
+		beans.appendChild(lazy);
+		Element lazyDependency = createBeanElement("lazyDependency", CountingClass.class.getName(), document);
+		lazyDependency.setAttribute("lazy-init", "true");
+		beans.appendChild(lazyDependency);
+		beans.appendChild(createBeanElement("eager", CountingClass.class.getName(), document));
+		document.appendChild(beans);
+		CountingClass.instances.set(0);
+		XmlBeansHandler handler = new XmlBeansHandler(document);
+		handler.createBeans();
+		assertEquals(1, CountingClass.instances.get());
+		CountingDependent bean = (CountingDependent) handler.getBean("lazy");
+		assertEquals(3, CountingClass.instances.get());
+		assertTrue(bean.getDependency() == handler.getBean("lazyDependency"));
+		assertTrue(bean == handler.getBean("lazy"));
+		assertEquals(3, CountingClass.instances.get());
+	}
+
+	@Test
+	public void testDefaultLazyInit() throws ParserConfigurationException {
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		Element beans = document.createElement("beans");
+		beans.setAttribute("default-lazy-init", "true");
+		beans.appendChild(createBeanElement("lazy", CountingClass.class.getName(), document));
+		Element eager = createCountingDependent("eager", "lazy", document);
+		eager.setAttribute("lazy-init", "false");
+		beans.appendChild(eager);
+		beans.appendChild(createBeanElement("unused", CountingClass.class.getName(), document));
+		document.appendChild(beans);
+		CountingClass.instances.set(0);
+		XmlBeansHandler handler = new XmlBeansHandler(document);
+		handler.createBeans();
+		// The eager bean and the lazy one it refers to.
+		assertEquals(2, CountingClass.instances.get());
+		assertTrue(((CountingDependent) handler.getBean("eager")).getDependency() == handler.getBean("lazy"));
+	}
+
+	@Test
+	public void testLazyBeanValidatedAtStartup() throws ParserConfigurationException {
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		Element beans = document.createElement("beans");
+		beans.setAttribute("default-lazy-init", "true");
+		// Class2 does not take a CountingClass.
+		beans.appendChild(createReferringBeanElement("lazy", "dependency", document));
+		beans.appendChild(createBeanElement("dependency", CountingClass.class.getName(), document));
+		document.appendChild(beans);
+		CountingClass.instances.set(0);
+		try {
+			new XmlBeansHandler(document).createBeans();
+			fail("Lazy beans should be validated.");
+		} catch (InvalidBeanConfigException e) {
+			assertEquals(0, CountingClass.instances.get());
+		}
+	}
+
+	@Test
+	public void testPrototypeScope() throws ParserConfigurationException {
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		Element beans = document.createElement("beans");
+		Element prototype = createCountingDependent("prototype", "dependency", document);
+		prototype.setAttribute("scope", "prototype");
+		beans.appendChild(prototype);
+		beans.appendChild(createBeanElement("dependency", CountingClass.class.getName(), document));
+		document.appendChild(beans);
+		CountingClass.instances.set(0);
+		XmlBeansHandler handler = new XmlBeansHandler(document);
+		handler.createBeans();
+		assertEquals(1, CountingClass.instances.get());
+		CountingDependent first = (CountingDependent) handler.getBean("prototype");
+		CountingDependent second = (CountingDependent) handler.getBean("prototype");
+		assertTrue(first != second);
+		assertTrue(first.getDependency() == second.getDependency());
+		assertEquals(3, CountingClass.instances.get());
+	}
+
+	private Document createArrayHolder(String scope) throws ParserConfigurationException {
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		Element beans = document.createElement("beans");
+		Element holder = createBeanElement("holder", ArrayHolder.class.getName(), document);
+		holder.setAttribute("scope", scope);
+		Element ctorArg = document.createElement("constructor-arg");
+		ctorArg.setAttribute("index", "0");
+		ctorArg.setAttribute("value", "1,2");
+		holder.appendChild(ctorArg);
+		Element property = document.createElement("property");
+		property.setAttribute("name", "tags");
+		property.setAttribute("value", "a,b");
+		holder.appendChild(property);
+		beans.appendChild(holder);
+		document.appendChild(beans);
+		return document;
+	}
+
+	/*
+	 * Instances do not share the arrays converted from literals, writing to one's leaves the
+	 * others' alone.
+	 */
+	@Test
+	public void testInstancesGetOwnArrays() throws ParserConfigurationException {
+		XmlBeansHandler handler = new XmlBeansHandler(createArrayHolder("prototype"));
+		handler.createBeans();
+		ArrayHolder first = (ArrayHolder) handler.getBean("holder");
+		ArrayHolder second = (ArrayHolder) handler.getBean("holder");
+		assertTrue(first.getTags() != second.getTags());
+		assertTrue(first.getNumbers() != second.getNumbers());
+		first.getTags()[0] = "changed";
+		first.getNumbers()[0] = 0;
+		assertEquals("a", second.getTags()[0]);
+		assertEquals(1, second.getNumbers()[0]);
+		handler = new XmlBeansHandler(createArrayHolder("request"));
+		handler.createBeans();
+		RequestScope previous = new RequestScope().bind();
+		try {
+			first = (ArrayHolder) handler.getBean("holder");
+		} finally {
+			RequestScope.restore(previous);
+		}
+		first.getTags()[0] = "changed";
+		previous = new RequestScope().bind();
+		try {
+			assertEquals("a", ((ArrayHolder) handler.getBean("holder")).getTags()[0]);
+		} finally {
+			RequestScope.restore(previous);
+		}
+	}
+
+	@Test
+	public void testRequestScope() throws ParserConfigurationException {
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		Element beans = document.createElement("beans");
+		Element request = createBeanElement("request", CountingClass.class.getName(), document);
+		request.setAttribute("scope", "request");
+		beans.appendChild(request);
+		document.appendChild(beans);
+		XmlBeansHandler handler = new XmlBeansHandler(document);
+		handler.createBeans();
+		try {
+			handler.getBean("request");
+			fail("No request is served.");
+		} catch (IllegalStateException e) {
+			/* Expected. */
+		}
+		RequestScope previous = new RequestScope().bind();
+		Object first;
+		try {
+			first = handler.getBean("request");
+			assertTrue(first == handler.getBean("request"));
+		} finally {
+			RequestScope.restore(previous);
+		}
+		previous = new RequestScope().bind();
+		try {
+			assertTrue(first != handler.getBean("request"));
+		} finally {
+			RequestScope.restore(previous);
+		}
+	}
+
+	@Test
+	public void testSingletonReferringRequestScopeRejected() throws ParserConfigurationException {
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		Element beans = document.createElement("beans");
+		beans.appendChild(createCountingDependent("singleton", "request", document));
+		Element request = createBeanElement("request", CountingClass.class.getName(), document);
+		request.setAttribute("scope", "request");
+		beans.appendChild(request);
+		document.appendChild(beans);
+		try {
+			new XmlBeansHandler(document).createBeans();
+			fail("A singleton should not hold a request scoped bean.");
+		} catch (InvalidBeanConfigException e) {
+			assertTrue(rootCauseMessage(e).contains("request scoped bean request"));
+		}
+	}
+
+	@Test
+	public void testGetBeansOfType() throws ParserConfigurationException {
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		Element beans = document.createElement("beans");
+		beans.appendChild(createCountingDependent("dependent", "counting", document));
+		beans.appendChild(createBeanElement("counting", CountingClass.class.getName(), document));
+		beans.appendChild(createBeanElement("other", Class1.class.getName(), document));
+		document.appendChild(beans);
+		XmlBeansHandler handler = new XmlBeansHandler(document);
+		handler.createBeans();
+		Map<String, CountingClass> counting = handler.getBeansOfType(CountingClass.class);
+		assertEquals(Arrays.asList("counting", "dependent"), new ArrayList<String>(counting.keySet()));
+		assertTrue(counting.get("dependent") == handler.getBean("dependent"));
+		assertEquals(3, handler.getBeansOfType(Object.class).size());
+		assertTrue(handler.getBeansOfType(String.class).isEmpty());
+	}
+
+	@Test
+	public void testGetBeanByType() throws ParserConfigurationException {
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		Element beans = document.createElement("beans");
+		beans.appendChild(createCountingDependent("dependent", "counting", document));
+		beans.appendChild(createBeanElement("counting", CountingClass.class.getName(), document));
+		beans.appendChild(createBeanElement("runnable", RunnableClass.class.getName(), document));
+		document.appendChild(beans);
+		XmlBeansHandler handler = new XmlBeansHandler(document);
+		handler.createBeans();
+		assertTrue(handler.getBean(CountingDependent.class) == handler.getBean("dependent"));
+		assertTrue(handler.getBean(Runnable.class) == handler.getBean("runnable"));
+		assertTrue(handler.getBean(Class1.class) == handler.getBean("runnable"));
+		assertEquals(null, handler.getBean(String.class));
+		try {
+			handler.getBean(CountingClass.class);
+			fail("Two beans are counting classes.");
+		} catch (AmbiguousBeanException e) {
+			assertTrue(e.getMessage().contains("counting, dependent"));
+		}
+	}
 
 }
@@ -0,0 +1,123 @@
+package org.nalby.spring.bean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nalby.spring.bean.XmlBeanHandlerTest.Class1;
+import org.nalby.spring.bean.XmlBeanHandlerTest.Class2;
+
+public class XmlFilesBeanDefinitionReaderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File write(String path, String content) throws IOException {
+		File file = new File(folder.getRoot(), path);
+		file.getParentFile().mkdirs();
+		FileOutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(("<beans>" + content + "</beans>").getBytes(StandardCharsets.UTF_8));
+		} finally {
+			outputStream.close();
+		}
+		return file.getCanonicalFile();
+	}
+
+	private static String bean(String id, Class<?> clazz) {
+		return "<bean id=\"" + id + "\" class=\"" + clazz.getName() + "\"/>";
+	}
+
+	private static List<String> ids(List<XmlBeanDefinition> definitions) {
+		List<String> ids = new ArrayList<String>();
+		for (XmlBeanDefinition definition : definitions) {
+			ids.add(definition.getId());
+		}
+		return ids;
+	}
+
+	@Test
+	public void testResolveLocations() throws IOException {
+		File b = write("modules/b.xml", "");
+		File a = write("modules/a.xml", "");
+		write("modules/a.txt", "");
+		File root = write("root.xml", "");
+		List<File> files = XmlFilesBeanDefinitionReader.resolveLocations(folder.getRoot(), "root.xml, modules/*.xml");
+		assertEquals(Arrays.asList(root, a, b), canonical(files));
+		assertEquals(Collections.emptyList(), XmlFilesBeanDefinitionReader.resolveLocations(folder.getRoot(), "modules/*.json"));
+	}
+
+	private static List<File> canonical(List<File> files) throws IOException {
+		List<File> canonical = new ArrayList<File>();
+		for (File file : files) {
+			canonical.add(file.getCanonicalFile());
+		}
+		return canonical;
+	}
+
+	@Test
+	public void testImportsInParallel() throws IOException {
+		File root = write("root.xml", "<import resource=\"modules/*.xml\"/>" + bean("root", Class1.class)
+				+ "<bean id=\"user\" class=\"" + Class2.class.getName() + "\"><constructor-arg index=\"0\" ref=\"a1\"/></bean>");
+		File a = write("modules/a.xml", bean("a1", Class1.class) + bean("a2", Class1.class));
+		// Imported twice and back, read once.
+		File b = write("modules/b.xml", "<import resource=\"a.xml\"/><import resource=\"../root.xml\"/>" + bean("b1", Class1.class));
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			for (int i = 0; i < 20; i++) {
+				XmlFilesBeanDefinitionReader reader = new XmlFilesBeanDefinitionReader(Collections.singletonList(root), executor);
+				assertEquals(Arrays.asList("root", "user", "a1", "a2", "b1"), ids(reader.readBeanDefinitions()));
+				assertEquals(Arrays.asList(root, a, b), reader.getReadFiles());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(Arrays.asList(root, a, b), XmlFilesBeanDefinitionReader.listFiles(Collections.singletonList(root)));
+		XmlBeansHandler handler = XmlBeansHandler.fromReader(new XmlFilesBeanDefinitionReader(Collections.singletonList(root), null));
+		handler.createBeans();
+		assertTrue(((Class2) handler.getBean("user")).getClass1() == handler.getBean("a1"));
+	}
+
+	@Test
+	public void testDuplicatesAcrossFiles() throws IOException {
+		File a = write("a.xml", bean("same", Class1.class));
+		File b = write("b.xml", bean("other", Class1.class) + bean("same", Class1.class));
+		try {
+			new XmlFilesBeanDefinitionReader(Arrays.asList(a, b), null).readBeanDefinitions();
+			fail("Expected an exception.");
+		} catch (InvalidBeanConfigException e) {
+			assertTrue(e.getMessage().contains("same"));
+			assertTrue(e.getMessage().contains(a.toString()) && e.getMessage().contains(b.toString()));
+		}
+	}
+
+	@Test
+	public void testFirstInvalidFileReported() throws IOException {
+		File a = write("a.xml", "<import resource=\"c.xml\"/>" + bean("beanA", Class1.class));
+		File b = write("b.xml", "<bean id=\"beanB\" class=\"no.such.Class\"/>");
+		write("c.xml", "<bean id=\"beanC\" class=\"no.such.Class\"/>");
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			new XmlFilesBeanDefinitionReader(Arrays.asList(a, b), executor).readBeanDefinitions();
+			fail("Expected an exception.");
+		} catch (InvalidBeanConfigException e) {
+			assertTrue(e.getMessage().contains(b.toString()));
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
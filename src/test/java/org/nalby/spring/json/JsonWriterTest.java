@@ -0,0 +1,202 @@
+package org.nalby.spring.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class JsonWriterTest {
+
+	public static class Item {
+		private final String name;
+		private final int count;
+		private final Item child;
+
+		public Item(String name, int count, Item child) {
+			this.name = name;
+			this.count = count;
+			this.child = child;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public Item getChild() {
+			return child;
+		}
+
+		public boolean isLeaf() {
+			return child == null;
+		}
+
+		public double getRatio() {
+			return count / 2.0;
+		}
+
+		public String describe() {
+			return "not a getter";
+		}
+	}
+
+	public static class FloatHolder {
+		public float getValue() {
+			return 0.1f;
+		}
+	}
+
+	private static final class Hidden {
+		public String getValue() {
+			return "hidden";
+		}
+	}
+
+	public static class Node {
+		private Node next;
+
+		public Node getNext() {
+			return next;
+		}
+	}
+
+	private static String json(Object value) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JsonWriter.write(value, out);
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testScalars() throws IOException {
+		assertEquals("null", json(null));
+		assertEquals("true", json(true));
+		assertEquals("-42", json(-42));
+		assertEquals("9223372036854775807", json(Long.MAX_VALUE));
+		assertEquals("-9223372036854775808", json(Long.MIN_VALUE));
+		assertEquals("1.5", json(1.5));
+		assertEquals("3", json(3.0f));
+		assertEquals("null", json(Double.NaN));
+		assertEquals("12345678901234567890", json(new java.math.BigInteger("12345678901234567890")));
+		assertEquals("\"x\"", json('x'));
+		assertEquals("\"SECONDS\"", json(java.util.concurrent.TimeUnit.SECONDS));
+	}
+
+	/*
+	 * Numbers longer than the buffer, written in several chunks.
+	 */
+	@Test
+	public void testLongNumbers() throws IOException {
+		StringBuilder digits = new StringBuilder("1");
+		for (int i = 0; i < 9000; i++) {
+			digits.append('0');
+		}
+		assertEquals(digits.toString(), json(new BigInteger(digits.toString())));
+		assertEquals("[\"a\"," + digits + "]", json(Arrays.asList("a", new BigDecimal(digits.toString()))));
+	}
+
+	@Test
+	public void testFloats() throws IOException {
+		assertEquals("[0.1,2.5E-7,null]", json(Arrays.asList(0.1f, 2.5e-7f, Float.NaN)));
+		assertEquals("[0.1,3]", json(new float[] {0.1f, 3f}));
+		assertEquals("{\"value\":0.1}", json(new FloatHolder()));
+	}
+
+	@Test
+	public void testStrings() throws IOException {
+		assertEquals("\"a\\\"b\\\\c\\n\\u0001\"", json("a\"b\\c\n\u0001"));
+		assertEquals("\"h\u00e9\u4e2d\ud83d\ude00\"", json("h\u00e9\u4e2d\ud83d\ude00"));
+		assertEquals("\"\\ud800x\"", json("\ud800x"));
+	}
+
+	@Test
+	public void testBeans() throws IOException {
+		Item item = new Item("outer", 3, new Item("inner", 2, null));
+		assertEquals("{\"child\":{\"child\":null,\"count\":2,\"leaf\":true,\"name\":\"inner\",\"ratio\":1},"
+				+ "\"count\":3,\"leaf\":false,\"name\":\"outer\",\"ratio\":1.5}", json(item));
+		assertEquals("{\"value\":\"hidden\"}", json(new Hidden()));
+	}
+
+	@Test
+	public void testContainers() throws IOException {
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("list", Arrays.asList(1, "two", null));
+		map.put("ints", new int[] {1, 2});
+		map.put("bytes", new byte[] {1, 2, 3});
+		map.put("booleans", new boolean[] {true});
+		map.put("empty", new String[0]);
+		assertEquals("{\"list\":[1,\"two\",null],\"ints\":[1,2],\"bytes\":\"AQID\",\"booleans\":[true],\"empty\":[]}", json(map));
+	}
+
+	@Test
+	public void testStreams() throws IOException {
+		final AtomicBoolean closed = new AtomicBoolean();
+		Stream<String> stream = Stream.of("a", "b").onClose(new Runnable() {
+			@Override
+			public void run() {
+				closed.set(true);
+			}
+		});
+		assertEquals("[\"a\",\"b\"]", json(stream));
+		assertTrue(closed.get());
+		Iterator<Integer> iterator = Arrays.asList(1, 2, 3).iterator();
+		assertEquals("[1,2,3]", json(iterator));
+		assertEquals("[0,1,2]", json(IntStream.range(0, 3)));
+	}
+
+	@Test
+	public void testFlushesChunks() throws IOException {
+		final int[] flushes = new int[1];
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		OutputStream out = new OutputStream() {
+			@Override
+			public void write(int b) {
+				bytes.write(b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				bytes.write(b, off, len);
+			}
+
+			@Override
+			public void flush() {
+				flushes[0]++;
+			}
+		};
+		JsonWriter.write(IntStream.range(0, 10000).boxed(), out);
+		String text = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+		assertTrue(text.startsWith("[0,1,2,") && text.endsWith(",9999]"));
+		assertTrue(flushes[0] >= text.length() / JsonOutput.BUFFER_SIZE);
+	}
+
+	@Test
+	public void testCycle() throws IOException {
+		Node node = new Node();
+		node.next = node;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			JsonWriter.write(node, out);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(0, out.size());
+		}
+	}
+}
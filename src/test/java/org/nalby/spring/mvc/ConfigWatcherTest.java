@@ -0,0 +1,52 @@
+package org.nalby.spring.mvc;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ConfigWatcherTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static void write(File file, String content) throws IOException {
+		FileOutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(content.getBytes(StandardCharsets.UTF_8));
+		} finally {
+			outputStream.close();
+		}
+	}
+
+	@Test(timeout = 60000)
+	public void testNotifiesChangesOfWatchedFile() throws Exception {
+		File config = folder.newFile("beans.xml");
+		File unrelated = folder.newFile("other.xml");
+		final Semaphore changes = new Semaphore(0);
+		ConfigWatcher watcher = new ConfigWatcher(Collections.singleton(config), new Runnable() {
+			@Override
+			public void run() {
+				changes.release();
+			}
+		});
+		try {
+			write(unrelated, "<beans/>");
+			// Polling watch services may take seconds to notice a change.
+			assertTrue(!changes.tryAcquire(3, TimeUnit.SECONDS));
+			write(config, "<beans/>");
+			assertTrue(changes.tryAcquire(30, TimeUnit.SECONDS));
+		} finally {
+			watcher.close();
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package org.nalby.spring.mvc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Just enough of requests and responses to call handlers without a container, methods not
+ * implemented return null, 0 or false.
+ */
+final class FakeHttp {
+
+	private FakeHttp() {
+	}
+
+	static String formatDate(long millis) {
+		return DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC));
+	}
+
+	private static Object defaultValue(Class<?> type) {
+		if (type == boolean.class) {
+			return false;
+		} else if (type == int.class) {
+			return 0;
+		} else if (type == long.class) {
+			return 0L;
+		}
+		return null;
+	}
+
+	static final class Request implements InvocationHandler {
+		final String method;
+		final String pathInfo;
+		final Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+		final Map<String, String> parameters = new HashMap<String, String>();
+		final Map<String, Object> attributes = new HashMap<String, Object>();
+		byte[] body = new byte[0];
+
+		Request(String method, String pathInfo) {
+			this.method = method;
+			this.pathInfo = pathInfo;
+		}
+
+		Request header(String name, String value) {
+			this.headers.put(name, value);
+			return this;
+		}
+
+		Request parameter(String name, String value) {
+			this.parameters.put(name, value);
+			return this;
+		}
+
+		HttpServletRequest proxy() {
+			return (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+					new Class<?>[] {HttpServletRequest.class}, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+			String name = m.getName();
+			if ("getMethod".equals(name)) {
+				return this.method;
+			} else if ("getPathInfo".equals(name)) {
+				return this.pathInfo;
+			} else if ("getHeader".equals(name)) {
+				return this.headers.get(args[0]);
+			} else if ("getDateHeader".equals(name)) {
+				String value = this.headers.get(args[0]);
+				return value == null ? -1L : ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+			} else if ("getParameter".equals(name)) {
+				return this.parameters.get(args[0]);
+			} else if ("getParameterValues".equals(name)) {
+				String value = this.parameters.get(args[0]);
+				return value == null ? null : new String[] {value};
+			} else if ("getAttribute".equals(name)) {
+				return this.attributes.get(args[0]);
+			} else if ("setAttribute".equals(name)) {
+				this.attributes.put((String) args[0], args[1]);
+				return null;
+			} else if ("getInputStream".equals(name)) {
+				return new FakeInputStream(this.body);
+			} else if ("getCharacterEncoding".equals(name)) {
+				return "UTF-8";
+			}
+			return defaultValue(m.getReturnType());
+		}
+	}
+
+	static final class Response implements InvocationHandler {
+		int status = HttpServletResponse.SC_OK;
+		final Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+		final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		String contentType;
+		long contentLength = -1;
+		private PrintWriter writer;
+
+		HttpServletResponse proxy() {
+			return (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+					new Class<?>[] {HttpServletResponse.class}, this);
+		}
+
+		String bodyText() {
+			if (this.writer != null) {
+				this.writer.flush();
+			}
+			return new String(this.body.toByteArray(), StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+			String name = m.getName();
+			if ("setStatus".equals(name) || "sendError".equals(name)) {
+				this.status = (Integer) args[0];
+			} else if ("setHeader".equals(name) || "addHeader".equals(name)) {
+				this.headers.put((String) args[0], (String) args[1]);
+			} else if ("setDateHeader".equals(name)) {
+				this.headers.put((String) args[0], formatDate((Long) args[1]));
+			} else if ("getHeader".equals(name)) {
+				return this.headers.get(args[0]);
+			} else if ("getStatus".equals(name)) {
+				return this.status;
+			} else if ("setContentType".equals(name)) {
+				this.contentType = (String) args[0];
+			} else if ("getContentType".equals(name)) {
+				return this.contentType;
+			} else if ("setContentLengthLong".equals(name)) {
+				this.contentLength = (Long) args[0];
+			} else if ("setContentLength".equals(name)) {
+				this.contentLength = (Integer) args[0];
+			} else if ("getOutputStream".equals(name)) {
+				return new FakeOutputStream(this.body);
+			} else if ("getWriter".equals(name)) {
+				if (this.writer == null) {
+					this.writer = new PrintWriter(new OutputStreamWriter(this.body, StandardCharsets.UTF_8));
+				}
+				return this.writer;
+			} else if ("getCharacterEncoding".equals(name)) {
+				return "UTF-8";
+			} else {
+				return defaultValue(m.getReturnType());
+			}
+			return null;
+		}
+	}
+
+	private static final class FakeOutputStream extends ServletOutputStream {
+		private final ByteArrayOutputStream target;
+
+		FakeOutputStream(ByteArrayOutputStream target) {
+			this.target = target;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			this.target.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			this.target.write(b, off, len);
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public void setWriteListener(WriteListener writeListener) {
+		}
+	}
+
+	private static final class FakeInputStream extends ServletInputStream {
+		private final ByteArrayInputStream source;
+
+		FakeInputStream(byte[] bytes) {
+			this.source = new ByteArrayInputStream(bytes);
+		}
+
+		@Override
+		public int read() throws IOException {
+			return this.source.read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return this.source.read(b, off, len);
+		}
+
+		@Override
+		public boolean isFinished() {
+			return this.source.available() == 0;
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public void setReadListener(ReadListener readListener) {
+		}
+	}
+}
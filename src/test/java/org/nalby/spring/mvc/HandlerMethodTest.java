@@ -0,0 +1,172 @@
+package org.nalby.spring.mvc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+import org.nalby.spring.bean.InvalidBeanConfigException;
+
+public class HandlerMethodTest {
+
+	public static class Controller {
+		Object[] last;
+
+		public String find(@PathVariable("id") long id, @RequestParam("q") String query,
+				@RequestParam(value = "limit", defaultValue = "10") int limit,
+				@RequestHeader(value = "X-Unit", required = false) TimeUnit unit, HttpServletRequest request) {
+			this.last = new Object[] {id, query, limit, unit, request};
+			return id + ":" + query;
+		}
+
+		public void save(@PathVariable("id") int id, @RequestBody String body, HttpServletResponse response) {
+			this.last = new Object[] {id, body, response};
+		}
+
+		public int sum(@RequestParam("a") int a, @RequestParam("b") int b, @RequestParam("c") int c,
+				@RequestParam("d") int d, @RequestParam("e") int e, @RequestParam("f") int f) {
+			return a + b + c + d + e + f;
+		}
+
+		public byte[] echo(@RequestBody byte[] body) {
+			return body;
+		}
+
+		public void fail() throws Exception {
+			throw new Exception("failed");
+		}
+
+		public void overloaded() {
+		}
+
+		public void overloaded(@RequestParam("a") int a) {
+		}
+
+		public void primitive(@RequestParam(value = "a", required = false) int a) {
+		}
+
+		public void unbound(String text) {
+		}
+
+		public void unsupported(@RequestParam("a") Object a) {
+		}
+	}
+
+	private final Controller controller = new Controller();
+
+	private HandlerMethod compile(String action, String path) {
+		Route route = new Route();
+		route.setPath(path);
+		route.setController(this.controller);
+		route.setAction(action);
+		Router.Binding binding = new Router(Arrays.asList(route)).match(path.replace("{id}", "7")).bindingFor("GET");
+		return binding.getAction();
+	}
+
+	private Object invoke(HandlerMethod method, FakeHttp.Request request) throws ServletException, IOException {
+		return method.invoke(request.proxy(), new FakeHttp.Response().proxy(), Router.split(request.pathInfo));
+	}
+
+	@Test
+	public void testBind() throws ServletException, IOException {
+		HandlerMethod find = compile("find", "/items/{id}");
+		assertTrue(find.returnsValue());
+		FakeHttp.Request request = new FakeHttp.Request("GET", "/items/42").parameter("q", "book");
+		assertEquals("42:book", invoke(find, request));
+		assertEquals(Arrays.asList(42L, "book", 10, null), Arrays.asList(this.controller.last).subList(0, 4));
+		assertTrue(this.controller.last[4] instanceof HttpServletRequest);
+		request.parameter("limit", "3").header("X-Unit", "SECONDS");
+		invoke(find, request);
+		assertEquals(Arrays.asList(42L, "book", 3, TimeUnit.SECONDS), Arrays.asList(this.controller.last).subList(0, 4));
+	}
+
+	@Test
+	public void testBody() throws ServletException, IOException {
+		HandlerMethod save = compile("save", "/items/{id}");
+		assertFalse(save.returnsValue());
+		FakeHttp.Request request = new FakeHttp.Request("PUT", "/items/5");
+		request.body = "h\u00e9llo".getBytes(StandardCharsets.UTF_8);
+		assertNull(invoke(save, request));
+		assertEquals(5, this.controller.last[0]);
+		assertEquals("h\u00e9llo", this.controller.last[1]);
+		assertArrayEquals(request.body, (byte[]) invoke(compile("echo", "/echo"), request));
+	}
+
+	@Test
+	public void testManyParameters() throws ServletException, IOException {
+		FakeHttp.Request request = new FakeHttp.Request("GET", "/sum");
+		for (String name : new String[] {"a", "b", "c", "d", "e", "f"}) {
+			request.parameter(name, "1");
+		}
+		assertEquals(6, invoke(compile("sum", "/sum"), request));
+	}
+
+	@Test
+	public void testBadRequests() throws ServletException, IOException {
+		HandlerMethod find = compile("find", "/items/{id}");
+		FakeHttp.Request[] requests = {
+			new FakeHttp.Request("GET", "/items/42"),
+			new FakeHttp.Request("GET", "/items/x").parameter("q", "book"),
+			new FakeHttp.Request("GET", "/items/42").parameter("q", "book").header("X-Unit", "WEEKS"),
+		};
+		for (FakeHttp.Request request : requests) {
+			try {
+				invoke(find, request);
+				fail();
+			} catch (HandlerMethod.BadRequestException e) {
+				// Expected.
+			}
+		}
+	}
+
+	@Test
+	public void testCheckedExceptions() throws IOException {
+		try {
+			invoke(compile("fail", "/fail"), new FakeHttp.Request("GET", "/fail"));
+			fail();
+		} catch (ServletException e) {
+			assertEquals("failed", e.getRootCause().getMessage());
+		}
+	}
+
+	@Test
+	public void testInvalidActions() {
+		String[][] invalid = {
+			{"missing", "/items"},
+			{"overloaded", "/items"},
+			{"primitive", "/items"},
+			{"unbound", "/items"},
+			{"unsupported", "/items"},
+			{"find", "/items/{other}"},
+		};
+		for (String[] action : invalid) {
+			try {
+				compile(action[0], action[1]);
+				fail(action[0]);
+			} catch (InvalidBeanConfigException e) {
+				// Expected.
+			}
+		}
+		Route route = new Route();
+		route.setPath("/items");
+		route.setController(this.controller);
+		try {
+			new Router(Arrays.asList(route));
+			fail();
+		} catch (InvalidBeanConfigException e) {
+			// Expected, there is no action.
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package org.nalby.spring.mvc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+import org.junit.Test;
+
+public class RequestCompletionTest {
+
+	@Test
+	public void testPermitReleasedOnce() {
+		Semaphore permits = new Semaphore(1);
+		permits.acquireUninterruptibly();
+		RequestCompletion completion = new RequestCompletion(permits);
+		completion.finish();
+		completion.fail(new IllegalStateException("Failed on purpose."));
+		completion.finish();
+		assertEquals(1, permits.availablePermits());
+	}
+
+	@Test
+	public void testFinishedWhenStageCompletes() {
+		Semaphore permits = new Semaphore(1);
+		permits.acquireUninterruptibly();
+		CompletableFuture<String> stage = new CompletableFuture<String>();
+		new RequestCompletion(permits).finishWhenDone(stage);
+		assertEquals(0, permits.availablePermits());
+		stage.completeExceptionally(new IllegalStateException("Failed on purpose."));
+		assertEquals(1, permits.availablePermits());
+	}
+}
@@ -0,0 +1,162 @@
+package org.nalby.spring.mvc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+
+import org.junit.Test;
+
+public class ResponseCacheTest {
+
+	private static final long MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+	private static final class Loader implements Callable<byte[]> {
+		final AtomicInteger calls = new AtomicInteger();
+		final byte[] body;
+
+		Loader(String body) {
+			this.body = body == null ? null : body.getBytes(StandardCharsets.UTF_8);
+		}
+
+		Loader(int bytes) {
+			this.body = new byte[bytes];
+		}
+
+		@Override
+		public byte[] call() throws Exception {
+			this.calls.incrementAndGet();
+			return this.body;
+		}
+	}
+
+	@Test
+	public void testHitsAndMisses() throws ServletException, IOException {
+		ResponseCache cache = new ResponseCache(1 << 20);
+		Loader loader = new Loader("{\"a\":1}");
+		ResponseCache.Entry entry = cache.get("/a", MINUTE, loader);
+		assertArrayEquals(loader.body, entry.getBody());
+		assertSame(entry, cache.get("/a", MINUTE, loader));
+		Loader empty = new Loader(null);
+		assertNull(cache.get("/b", MINUTE, empty).getBody());
+		assertNull(cache.get("/b", MINUTE, empty).getBody());
+		assertEquals(1, loader.calls.get());
+		assertEquals(1, empty.calls.get());
+		assertEquals(2, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		assertTrue(cache.getCachedBytes() > loader.body.length);
+	}
+
+	@Test
+	public void testTtl() throws Exception {
+		ResponseCache cache = new ResponseCache(1 << 20);
+		Loader loader = new Loader("[]");
+		cache.get("/a", TimeUnit.MILLISECONDS.toNanos(1), loader);
+		Thread.sleep(5);
+		cache.get("/a", TimeUnit.MILLISECONDS.toNanos(1), loader);
+		assertEquals(2, loader.calls.get());
+		assertEquals(0, cache.getEvictions());
+	}
+
+	@Test
+	public void testByteBudget() throws ServletException, IOException {
+		// Room for about five entries of 1000 bytes.
+		ResponseCache cache = new ResponseCache(5600);
+		Loader hot = new Loader(1000);
+		cache.get("/hot", MINUTE, hot);
+		cache.get("/hot", MINUTE, hot);
+		for (int i = 0; i < 20; i++) {
+			cache.get("/cold" + i, MINUTE, new Loader(1000));
+			assertTrue(cache.getCachedBytes() <= 5600);
+		}
+		// The entry hit again is protected from the ones seen once.
+		cache.get("/hot", MINUTE, hot);
+		assertEquals(1, hot.calls.get());
+		assertEquals(16, cache.getEvictions());
+		Loader cold = new Loader(1000);
+		cache.get("/cold0", MINUTE, cold);
+		assertEquals(1, cold.calls.get());
+		// Larger than the whole budget, not cached.
+		Loader huge = new Loader(10000);
+		cache.get("/huge", MINUTE, huge);
+		cache.get("/huge", MINUTE, huge);
+		assertEquals(2, huge.calls.get());
+	}
+
+	@Test
+	public void testCoalescedMisses() throws Exception {
+		final ResponseCache cache = new ResponseCache(1 << 20);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger calls = new AtomicInteger();
+		final Callable<byte[]> slow = new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				calls.incrementAndGet();
+				started.countDown();
+				release.await();
+				return new byte[] {'1'};
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Callable<ResponseCache.Entry> request = new Callable<ResponseCache.Entry>() {
+				@Override
+				public ResponseCache.Entry call() throws Exception {
+					return cache.get("/slow", MINUTE, slow);
+				}
+			};
+			Future<ResponseCache.Entry> first = executor.submit(request);
+			assertTrue(started.await(10, TimeUnit.SECONDS));
+			Future<ResponseCache.Entry> second = executor.submit(request);
+			Future<ResponseCache.Entry> third = executor.submit(request);
+			while (cache.getMisses() < 3) {
+				Thread.sleep(1);
+			}
+			release.countDown();
+			assertSame(first.get(), second.get());
+			assertSame(first.get(), third.get());
+			assertEquals(1, calls.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testFailures() throws ServletException {
+		ResponseCache cache = new ResponseCache(1 << 20);
+		final AtomicInteger calls = new AtomicInteger();
+		Callable<byte[]> failing = new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				calls.incrementAndGet();
+				throw new IOException("failed");
+			}
+		};
+		for (int i = 0; i < 2; i++) {
+			try {
+				cache.get("/failing", MINUTE, failing);
+				fail();
+			} catch (IOException e) {
+				assertEquals("failed", e.getMessage());
+			}
+		}
+		// Failures are not cached.
+		assertEquals(2, calls.get());
+		assertEquals(0, cache.getCachedBytes());
+	}
+}
@@ -0,0 +1,289 @@
+package org.nalby.spring.mvc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+import org.nalby.spring.bean.InvalidBeanConfigException;
+
+public class RouterTest {
+
+	private static final RequestHandler HANDLER = new RequestHandler() {
+		@Override
+		public void handle(HttpServletRequest request, HttpServletResponse response, Map<String, String> pathVariables) {
+		}
+	};
+
+	private Route route(String method, String path) {
+		Route route = new Route();
+		route.setMethod(method);
+		route.setPath(path);
+		route.setHandler(HANDLER);
+		return route;
+	}
+
+	private Route routeOf(Router router, String method, String path) {
+		Router.Match match = router.match(path);
+		if (match == null) {
+			return null;
+		}
+		Router.Binding binding = match.bindingFor(method);
+		return binding == null ? null : binding.getRoute();
+	}
+
+	private Route jsonRoute(String method, String path) {
+		Route route = route(method, path);
+		route.setHandler(null);
+		route.setJsonHandler(new JsonRequestHandler() {
+			@Override
+			public Object handle(HttpServletRequest request, Map<String, String> pathVariables) {
+				return pathVariables;
+			}
+		});
+		return route;
+	}
+
+	@Test
+	public void testCacheKey() {
+		Route route = jsonRoute("GET", "/items/{id}");
+		route.setCacheTtl(Duration.ofSeconds(30));
+		route.setCacheParams("page, size");
+		route.setCacheHeaders("Accept-Language");
+		Router.Binding binding = new Router(Arrays.asList(route)).match("/items/1").bindingFor("GET");
+		assertEquals(Duration.ofSeconds(30).toNanos(), binding.getCacheTtlNanos());
+		FakeHttp.Request request = new FakeHttp.Request("GET", "/items/1").parameter("page", "2").parameter("other", "x");
+		String key = binding.cacheKey(request.proxy(), "/items/1");
+		// Other parameters do not matter, the keying ones and headers do.
+		assertEquals(key, binding.cacheKey(request.parameter("other", "y").proxy(), "/items/1"));
+		assertFalse(key.equals(binding.cacheKey(request.parameter("size", "").proxy(), "/items/1")));
+		assertFalse(key.equals(binding.cacheKey(request.header("Accept-Language", "fr").proxy(), "/items/1")));
+		assertFalse(key.equals(binding.cacheKey(new FakeHttp.Request("GET", "/items/2").proxy(), "/items/2")));
+		assertEquals(0, new Router(Arrays.asList(jsonRoute("GET", "/"))).match("/").bindingFor("GET").getCacheTtlNanos());
+	}
+
+	@Test
+	public void testSplit() {
+		assertArrayEquals(new String[] {"a", "b"}, Router.split("/a//b/"));
+		assertArrayEquals(new String[0], Router.split("/"));
+		assertArrayEquals(new String[] {"a"}, Router.split("a"));
+	}
+
+	@Test
+	public void testPrecedence() {
+		Route root = route("", "/");
+		Route literal = route("GET", "/users/me");
+		Route variable = route("GET", "/users/{id}");
+		Route nested = route("GET", "/users/{id}/posts/{post}");
+		Route wildcard = route("GET", "/users/*/avatar");
+		Route catchAll = route("", "/static/**");
+		Router router = new Router(Arrays.asList(catchAll, wildcard, nested, variable, literal, root));
+		assertTrue(routeOf(router, "POST", "/") == root);
+		assertTrue(routeOf(router, "GET", "/users/me") == literal);
+		assertTrue(routeOf(router, "GET", "/users/42") == variable);
+		assertTrue(routeOf(router, "GET", "/users/me/posts/7") == nested);
+		assertTrue(routeOf(router, "GET", "/users/me/avatar") == wildcard);
+		assertTrue(routeOf(router, "GET", "/static") == catchAll);
+		assertTrue(routeOf(router, "GET", "/static/css/site.css") == catchAll);
+		assertNull(router.match("/users"));
+		assertNull(router.match("/users/42/posts"));
+	}
+
+	/*
+	 * The route the trie finds by backtracking, literal then wildcard then '**' at each
+	 * segment, which the compiled trie finds without backtracking. Patterns hold '*' for
+	 * any single segment.
+	 */
+	private static String[] backtrack(List<String[]> patterns, String[] segments, int index) {
+		if (index == segments.length) {
+			for (String[] pattern : patterns) {
+				if (pattern.length == index) {
+					return pattern;
+				}
+			}
+			return catchAll(patterns, index);
+		}
+		List<String[]> literals = new ArrayList<String[]>();
+		List<String[]> wildcards = new ArrayList<String[]>();
+		for (String[] pattern : patterns) {
+			if (pattern.length > index && pattern[index].equals(segments[index])) {
+				literals.add(pattern);
+			} else if (pattern.length > index && pattern[index].equals("*")) {
+				wildcards.add(pattern);
+			}
+		}
+		String[] found = literals.isEmpty() ? null : backtrack(literals, segments, index + 1);
+		if (found == null && !wildcards.isEmpty()) {
+			found = backtrack(wildcards, segments, index + 1);
+		}
+		return found != null ? found : catchAll(patterns, index);
+	}
+
+	private static String[] catchAll(List<String[]> patterns, int index) {
+		for (String[] pattern : patterns) {
+			if (pattern.length == index + 1 && pattern[index].equals("**")) {
+				return pattern;
+			}
+		}
+		return null;
+	}
+
+	@Test
+	public void testSameRoutesAsBacktracking() {
+		Random random = new Random(42);
+		String[] segments = {"a", "b", "*", "*", "**"};
+		for (int round = 0; round < 200; round++) {
+			Map<String, String[]> patterns = new LinkedHashMap<String, String[]>();
+			for (int i = 0; i < 12; i++) {
+				String[] pattern = new String[random.nextInt(5)];
+				for (int j = 0; j < pattern.length; j++) {
+					pattern[j] = segments[random.nextInt(j == pattern.length - 1 ? 5 : 4)];
+				}
+				patterns.put(Arrays.toString(pattern), pattern);
+			}
+			Map<String, Route> routes = new HashMap<String, Route>();
+			for (Map.Entry<String, String[]> entry : patterns.entrySet()) {
+				StringBuilder path = new StringBuilder();
+				for (int j = 0; j < entry.getValue().length; j++) {
+					String segment = entry.getValue()[j];
+					path.append('/').append(segment.equals("*") ? "{v" + j + "}" : segment);
+				}
+				routes.put(entry.getKey(), route("GET", path.length() == 0 ? "/" : path.toString()));
+			}
+			Router router = new Router(routes.values());
+			List<String[]> candidates = new ArrayList<String[]>(patterns.values());
+			for (int i = 0; i < 50; i++) {
+				String[] path = new String[random.nextInt(6)];
+				for (int j = 0; j < path.length; j++) {
+					path[j] = String.valueOf("abc".charAt(random.nextInt(3)));
+				}
+				String[] expected = backtrack(candidates, path, 0);
+				String joined = "/" + String.join("/", path);
+				assertTrue(patterns.keySet() + " " + joined,
+						routeOf(router, "GET", joined) == (expected == null ? null : routes.get(Arrays.toString(expected))));
+			}
+		}
+	}
+
+	/*
+	 * Literal and '{var}' siblings at every level: the tree of all 2^12 routes, which a
+	 * backtracking lookup walks whole for a path no route matches.
+	 */
+	@Test
+	public void testOverlappingRoutes() {
+		int depth = 12;
+		List<Route> routes = new ArrayList<Route>();
+		for (int mask = 0; mask < 1 << depth; mask++) {
+			StringBuilder path = new StringBuilder();
+			for (int j = 0; j < depth; j++) {
+				path.append((mask & 1 << j) != 0 ? "/a" : "/{v" + j + "}");
+			}
+			routes.add(route("GET", path.append("/end").toString()));
+		}
+		Router router = new Router(routes);
+		StringBuilder path = new StringBuilder();
+		for (int j = 0; j < depth; j++) {
+			path.append("/a");
+		}
+		assertTrue(routeOf(router, "GET", path + "/end") == routes.get((1 << depth) - 1));
+		assertTrue(routeOf(router, "GET", "/b" + path.substring(2) + "/end") == routes.get((1 << depth) - 2));
+		for (int i = 0; i < 1000; i++) {
+			assertNull(router.match(path + "/other"));
+		}
+	}
+
+	@Test
+	public void testPathVariables() {
+		Route nested = route("GET", "/users/{id}/posts/{post}");
+		Router router = new Router(Arrays.asList(nested));
+		Router.Match match = router.match("/users/42/posts/7");
+		Map<String, String> variables = match.pathVariables(match.bindingFor("GET"));
+		assertEquals(2, variables.size());
+		assertEquals("42", variables.get("id"));
+		assertEquals("7", variables.get("post"));
+	}
+
+	@Test
+	public void testMethods() {
+		Route get = route("GET, HEAD", "/items/{id}");
+		Route delete = route("delete", "/items/{key}");
+		Router router = new Router(Arrays.asList(get, delete));
+		assertTrue(routeOf(router, "HEAD", "/items/1") == get);
+		Router.Match match = router.match("/items/1");
+		assertTrue(match.bindingFor("DELETE").getRoute() == delete);
+		assertEquals("1", match.pathVariables(match.bindingFor("DELETE")).get("key"));
+		assertNull(match.bindingFor("POST"));
+		assertEquals("GET, HEAD, DELETE", match.allowedMethods());
+	}
+
+	@Test
+	public void testHeadServedByGet() {
+		Route get = route("GET", "/items/{id}");
+		Route head = route("HEAD", "/items");
+		Route any = route("", "/files/{name}");
+		Route post = route("POST", "/files/{name}");
+		Router router = new Router(Arrays.asList(get, head, any, post));
+		assertTrue(routeOf(router, "HEAD", "/items/1") == get);
+		assertEquals("GET, HEAD", router.match("/items/1").allowedMethods());
+		assertTrue(routeOf(router, "HEAD", "/items") == head);
+		assertNull(routeOf(router, "GET", "/items"));
+		assertTrue(routeOf(router, "HEAD", "/files/a") == any);
+		assertNull(router.match("/posts/1"));
+	}
+
+	@Test
+	public void testInvalidRoutes() {
+		List<List<Route>> invalidRoutes = new ArrayList<List<Route>>();
+		invalidRoutes.add(Arrays.asList(route("GET", "users")));
+		invalidRoutes.add(Arrays.asList(route("GET", "/files/**/name")));
+		invalidRoutes.add(Arrays.asList(route("GET", "/users/{}")));
+		invalidRoutes.add(Arrays.asList(route("GET", "/users/{id}/{id}")));
+		invalidRoutes.add(Arrays.asList(route("GET", "/users/{id}"), route("GET", "/users/{name}")));
+		Route noHandler = route("GET", "/");
+		noHandler.setHandler(null);
+		invalidRoutes.add(Arrays.asList(noHandler));
+		Route twoHandlers = route("GET", "/");
+		twoHandlers.setAsyncHandler(new AsyncRequestHandler() {
+			@Override
+			public CompletionStage<?> handleAsync(HttpServletRequest request, HttpServletResponse response, Map<String, String> pathVariables) {
+				return CompletableFuture.completedFuture(null);
+			}
+		});
+		invalidRoutes.add(Arrays.asList(twoHandlers));
+		// Only json of GET routes is cached.
+		Route cachedHandler = route("GET", "/");
+		cachedHandler.setCacheTtl(Duration.ofMinutes(1));
+		invalidRoutes.add(Arrays.asList(cachedHandler));
+		Route cachedPost = jsonRoute("POST", "/");
+		cachedPost.setCacheTtl(Duration.ofMinutes(1));
+		invalidRoutes.add(Arrays.asList(cachedPost));
+		Route noTtl = jsonRoute("GET", "/");
+		noTtl.setCacheTtl(Duration.ZERO);
+		invalidRoutes.add(Arrays.asList(noTtl));
+		for (List<Route> routes : invalidRoutes) {
+			try {
+				new Router(routes);
+				fail("Should reject " + routes);
+			} catch (InvalidBeanConfigException e) {
+				/* Expected. */
+			}
+		}
+	}
+}
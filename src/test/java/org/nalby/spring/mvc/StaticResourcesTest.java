@@ -0,0 +1,161 @@
+package org.nalby.spring.mvc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StaticResourcesTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private StaticResources resources;
+
+	private File write(String path, String content) throws IOException {
+		File file = new File(folder.getRoot(), path);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		write("index.html", "<html>hello</html>");
+		write("WEB-INF/web.xml", "<web-app/>");
+		write("index.jsp", "<% out.print(secret); %>");
+		write("page.jspx", "<jsp:root/>");
+		this.resources = new StaticResources(folder.getRoot().toPath(), null, 100, 50);
+	}
+
+	private FakeHttp.Response serve(FakeHttp.Request request) throws IOException {
+		FakeHttp.Response response = new FakeHttp.Response();
+		assertTrue(this.resources.serve(request.proxy(), response.proxy(), request.pathInfo));
+		return response;
+	}
+
+	@Test
+	public void testServeFile() throws IOException {
+		FakeHttp.Response response = serve(new FakeHttp.Request("GET", "/index.html"));
+		assertEquals(HttpServletResponse.SC_OK, response.status);
+		assertEquals("<html>hello</html>", response.bodyText());
+		assertEquals("text/html", response.contentType);
+		assertEquals(18, response.contentLength);
+		assertEquals("bytes", response.headers.get("Accept-Ranges"));
+		assertEquals(18, this.resources.getCachedBytes());
+		response = serve(new FakeHttp.Request("HEAD", "/index.html"));
+		assertEquals(18, response.contentLength);
+		assertEquals("", response.bodyText());
+	}
+
+	@Test
+	public void testNotServed() throws IOException {
+		FakeHttp.Response response = new FakeHttp.Response();
+		for (String path : new String[] {"/missing.html", "/WEB-INF/web.xml", "/web-inf/web.xml", "/../index.html", "/", "/WEB-INF", "/index.html/child",
+				"/index.jsp", "/INDEX.JSP", "/page.jspx", "/./index.jsp"}) {
+			assertFalse(path, this.resources.serve(new FakeHttp.Request("GET", path).proxy(), response.proxy(), path));
+		}
+		assertFalse(this.resources.serve(new FakeHttp.Request("POST", "/index.html").proxy(), response.proxy(), "/index.html"));
+		assertEquals("", response.bodyText());
+	}
+
+	@Test
+	public void testConditionalRequests() throws IOException {
+		FakeHttp.Response response = serve(new FakeHttp.Request("GET", "/index.html"));
+		String etag = response.headers.get("ETag");
+		assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+		response = serve(new FakeHttp.Request("GET", "/index.html").header("If-None-Match", "\"other\", " + etag));
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.status);
+		assertEquals("", response.bodyText());
+		response = serve(new FakeHttp.Request("GET", "/index.html").header("If-None-Match", "\"other\""));
+		assertEquals(HttpServletResponse.SC_OK, response.status);
+		String lastModified = response.headers.get("Last-Modified");
+		response = serve(new FakeHttp.Request("GET", "/index.html").header("If-Modified-Since", lastModified));
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.status);
+		response = serve(new FakeHttp.Request("GET", "/index.html").header("If-Modified-Since", FakeHttp.formatDate(0)));
+		assertEquals(HttpServletResponse.SC_OK, response.status);
+	}
+
+	@Test
+	public void testRanges() throws IOException {
+		FakeHttp.Response response = serve(new FakeHttp.Request("GET", "/index.html").header("Range", "bytes=6-10"));
+		assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.status);
+		assertEquals("hello", response.bodyText());
+		assertEquals("bytes 6-10/18", response.headers.get("Content-Range"));
+		response = serve(new FakeHttp.Request("GET", "/index.html").header("Range", "bytes=-7"));
+		assertEquals("</html>", response.bodyText());
+		response = serve(new FakeHttp.Request("GET", "/index.html").header("Range", "bytes=100-"));
+		assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.status);
+		assertEquals("bytes */18", response.headers.get("Content-Range"));
+		// A stale If-Range gets the whole file.
+		response = serve(new FakeHttp.Request("GET", "/index.html").header("Range", "bytes=6-10").header("If-Range", "\"stale\""));
+		assertEquals(HttpServletResponse.SC_OK, response.status);
+		assertEquals("<html>hello</html>", response.bodyText());
+		assertArrayEquals(new long[] {0, 18}, StaticResources.parseRange("bytes=0-100", 18));
+		assertNull(StaticResources.parseRange("bytes=0-1,4-5", 18));
+		assertNull(StaticResources.parseRange("items=0-1", 18));
+	}
+
+	@Test
+	public void testGzipVariant() throws IOException {
+		write("app.js", "var a = 1;");
+		File gzip = write("app.js.gz", "gzipped");
+		gzip.setLastModified(System.currentTimeMillis() + 1000);
+		FakeHttp.Response response = serve(new FakeHttp.Request("GET", "/app.js").header("Accept-Encoding", "deflate, gzip"));
+		assertEquals("gzipped", response.bodyText());
+		assertEquals("gzip", response.headers.get("Content-Encoding"));
+		assertEquals("Accept-Encoding", response.headers.get("Vary"));
+		response = serve(new FakeHttp.Request("GET", "/app.js").header("Accept-Encoding", "gzip;q=0"));
+		assertEquals("var a = 1;", response.bodyText());
+		assertNull(response.headers.get("Content-Encoding"));
+		// A stale variant is ignored.
+		gzip.setLastModified(0);
+		response = serve(new FakeHttp.Request("GET", "/app.js").header("Accept-Encoding", "gzip"));
+		assertEquals("var a = 1;", response.bodyText());
+	}
+
+	@Test
+	public void testLargeFiles() throws IOException {
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			content.append(i % 10);
+		}
+		write("large.txt", content.toString());
+		FakeHttp.Response response = serve(new FakeHttp.Request("GET", "/large.txt").header("Range", "bytes=10-19"));
+		assertEquals("0123456789", response.bodyText());
+		assertEquals(0, this.resources.getCachedBytes());
+		FakeHttp.Request request = new FakeHttp.Request("GET", "/large.txt");
+		request.attributes.put(StaticResources.SENDFILE_SUPPORT, Boolean.TRUE);
+		response = serve(request);
+		assertEquals("", response.bodyText());
+		assertEquals(0L, request.attributes.get(StaticResources.SENDFILE_START));
+		assertEquals(1000L, request.attributes.get(StaticResources.SENDFILE_END));
+	}
+
+	@Test
+	public void testCacheEviction() throws IOException {
+		for (int i = 0; i < 5; i++) {
+			write("file" + i + ".txt", "0123456789012345678901234567890123456789");
+			serve(new FakeHttp.Request("GET", "/file" + i + ".txt"));
+			assertTrue(this.resources.getCachedBytes() <= 100);
+		}
+		assertEquals(80, this.resources.getCachedBytes());
+		// Changed files are read again.
+		write("file4.txt", "changed");
+		new File(folder.getRoot(), "file4.txt").setLastModified(System.currentTimeMillis() + 5000);
+		assertEquals("changed", serve(new FakeHttp.Request("GET", "/file4.txt")).bodyText());
+	}
+}
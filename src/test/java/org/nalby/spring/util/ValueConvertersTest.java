@@ -0,0 +1,65 @@
+package org.nalby.spring.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ValueConvertersTest {
+
+	@Test
+	public void testPrimitivesAndWrappers() {
+		assertEquals(100, ValueConverters.convert("100", int.class));
+		assertEquals(100, ValueConverters.convert(" 100 ", Integer.class));
+		assertEquals(100L, ValueConverters.convert("100", long.class));
+		assertEquals((short) 1, ValueConverters.convert("1", short.class));
+		assertEquals((byte) 1, ValueConverters.convert("1", Byte.class));
+		assertEquals(1.5d, ValueConverters.convert("1.5", double.class));
+		assertEquals(1.5f, ValueConverters.convert("1.5", Float.class));
+		assertEquals('c', ValueConverters.convert("c", char.class));
+		assertEquals(Boolean.TRUE, ValueConverters.convert("TRUE", boolean.class));
+		assertEquals(Boolean.FALSE, ValueConverters.convert("false", Boolean.class));
+		assertEquals("text", ValueConverters.convert("text", String.class));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadNumber() {
+		ValueConverters.convert("error.", int.class);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadBoolean() {
+		ValueConverters.convert("yes", boolean.class);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedType() {
+		ValueConverters.convert("text", Object.class);
+	}
+
+	@Test
+	public void testOtherTypes() {
+		assertEquals(TimeUnit.SECONDS, ValueConverters.convert("SECONDS", TimeUnit.class));
+		assertEquals(String.class, ValueConverters.convert("java.lang.String", Class.class));
+		assertEquals(Duration.ofSeconds(30), ValueConverters.convert("30s", Duration.class));
+		assertEquals(Duration.ofMillis(5), ValueConverters.convert("5ms", Duration.class));
+		assertEquals(Duration.ofMinutes(2), ValueConverters.convert("PT2M", Duration.class));
+		assertArrayEquals(new int[] {1, 2, 3}, (int[]) ValueConverters.convert("1, 2,3", int[].class));
+		assertArrayEquals(new String[] {"a", "b"}, (String[]) ValueConverters.convert("a, b", String[].class));
+		assertEquals(0, ((long[]) ValueConverters.convert("", long[].class)).length);
+	}
+
+	@Test
+	public void testConvertersCached() {
+		assertTrue(ValueConverters.forType(int.class) == ValueConverters.forType(Integer.class));
+		assertTrue(ValueConverters.forType(TimeUnit.class) == ValueConverters.forType(TimeUnit.class));
+		assertNull(ValueConverters.forType(int[][].class));
+		assertEquals(Integer.class, ValueConverters.wrap(int.class));
+		assertEquals(String.class, ValueConverters.wrap(String.class));
+	}
+}